@@ -0,0 +1,222 @@
+package net.xrrocha.scripter.app;
+
+import com.google.common.io.ByteStreams;
+import net.xrrocha.scripter.commons.Initializable;
+import net.xrrocha.scripter.commons.cluster.ConsistentHashRing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Routes script executions to the cluster nodes owning each script on a
+ * @see{ConsistentHashRing}. Requests are forwarded over persistent HTTP connections, pooled per
+ * node by the JDK's keep-alive cache; owners are tried in ring order until one accepts the
+ * connection. Once a request has been sent it's never retried elsewhere: the owner may already
+ * have run the script, and executions aren't necessarily idempotent.
+ */
+public class ScriptRouter implements Initializable {
+
+    /**
+     * Header marking forwarded requests so they're never forwarded again.
+     */
+    public static final String FORWARDED_HEADER = "X-Scripter-Forwarded-By";
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 2000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30000;
+
+    private static final Logger logger = LoggerFactory.getLogger(ScriptRouter.class);
+
+    private final String nodeId;
+    private final ConsistentHashRing ring;
+    private final Map<String, String> nodeUrls;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    /**
+     * The reflective, field-based constructor for JSON/Yaml field-based bean access.
+     */
+    private ScriptRouter() {
+        nodeId = null;
+        ring = null;
+        nodeUrls = null;
+        connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+    }
+
+    public ScriptRouter(@NotNull String nodeId,
+                        @NotNull ConsistentHashRing ring,
+                        @NotNull Map<String, String> nodeUrls) {
+        this(nodeId, ring, nodeUrls, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param nodeId               This node's id
+     * @param ring                 The cluster's consistent-hash ring
+     * @param nodeUrls             The base URL (e.g. <code>http://host:4567</code>) of each node
+     * @param connectTimeoutMillis The connection timeout
+     * @param readTimeoutMillis    The response timeout
+     */
+    public ScriptRouter(@NotNull String nodeId,
+                        @NotNull ConsistentHashRing ring,
+                        @NotNull Map<String, String> nodeUrls,
+                        int connectTimeoutMillis,
+                        int readTimeoutMillis) {
+        this.nodeId = nodeId;
+        this.ring = ring;
+        this.nodeUrls = nodeUrls;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        initialize();
+    }
+
+    /**
+     * Determine whether this node owns the given script.
+     *
+     * @param scriptId The script id
+     * @return Whether the script is placed on this node
+     */
+    public boolean isLocal(@NotNull String scriptId) {
+        return ring.isOwner(nodeId, scriptId);
+    }
+
+    /**
+     * Forward a script execution to the first reachable owner of the script.
+     *
+     * @param scriptId The script id
+     * @param body     The (possibly empty) Yaml-encoded parameters
+     * @return The owner's response
+     * @throws IllegalStateException if no owner could be reached or the reached owner failed to
+     *                               respond
+     */
+    public ForwardedResponse forward(@NotNull String scriptId, @Null String body) {
+
+        byte[] requestBytes = (body == null ? "" : body).getBytes(UTF_8);
+        List<String> owners = ring.owners(scriptId);
+        for (String owner : owners) {
+            final HttpURLConnection connection;
+            try {
+                connection = connect(owner, scriptId, requestBytes.length);
+            } catch (IOException e) {
+                logger.warn("Error connecting to '" + owner + "' for '" + scriptId + "': " + e);
+                continue;
+            }
+
+            try {
+                return exchange(connection, requestBytes);
+            } catch (IOException e) {
+                // The owner may have run the script already: failing over could run it twice
+                String errorMessage =
+                        "Error forwarding '" + scriptId + "' to '" + owner + "': " + e;
+                logger.error(errorMessage);
+                throw new IllegalStateException(errorMessage, e);
+            }
+        }
+
+        String errorMessage = "No owner of script '" + scriptId + "' reachable among " + owners;
+        logger.error(errorMessage);
+        throw new IllegalStateException(errorMessage);
+    }
+
+    /**
+     * Open (or reuse a kept-alive) connection to an owner. Nothing is sent yet, so failures are
+     * safe to retry on another owner.
+     */
+    HttpURLConnection connect(@NotNull String owner,
+                              @NotNull String scriptId,
+                              int contentLength) throws IOException {
+
+        URL url = new URL(nodeUrls.get(owner) + "/scripts/" + URLEncoder.encode(scriptId, "UTF-8"));
+        logger.debug("Forwarding '" + scriptId + "' to " + url);
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "text/vnd.yaml");
+        connection.setRequestProperty(FORWARDED_HEADER, nodeId);
+        connection.setFixedLengthStreamingMode(contentLength);
+        connection.connect();
+
+        return connection;
+    }
+
+    /**
+     * Send the request over an established connection and read the owner's response.
+     */
+    ForwardedResponse exchange(@NotNull HttpURLConnection connection,
+                               @NotNull byte[] requestBytes) throws IOException {
+
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(requestBytes);
+        }
+
+        int status = connection.getResponseCode();
+        InputStream responseStream =
+                status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+
+        // Responses must be fully read and closed for the connection to be reused
+        final String responseBody;
+        if (responseStream == null) {
+            responseBody = "";
+        } else {
+            try (InputStream in = responseStream) {
+                responseBody = new String(ByteStreams.toByteArray(in), UTF_8);
+            }
+        }
+
+        return new ForwardedResponse(status, connection.getContentType(), responseBody);
+    }
+
+    @Override
+    public void initialize() {
+        checkNotNull(nodeId, "Node id cannot be null");
+        checkNotNull(ring, "Ring cannot be null");
+        checkNotNull(nodeUrls, "Node URLs cannot be null");
+        checkArgument(ring.getNodeIds().contains(nodeId), "Node '" + nodeId + "' not in ring");
+        checkArgument(nodeUrls.keySet().containsAll(ring.getNodeIds()),
+                "One or more ring nodes has no URL");
+    }
+
+    /**
+     * The status, content type and body returned by an owner node.
+     */
+    public static class ForwardedResponse {
+
+        private final int status;
+        private final String contentType;
+        private final String body;
+
+        public ForwardedResponse(int status, @Null String contentType, @NotNull String body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+}
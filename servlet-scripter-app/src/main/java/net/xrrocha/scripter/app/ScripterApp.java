@@ -5,15 +5,20 @@ import net.xrrocha.scripter.commons.Initializable;
 import org.eclipse.jetty.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import spark.Response;
 
+import javax.validation.constraints.NotNull;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Pattern;
 import java.util.stream.StreamSupport;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
@@ -27,18 +32,55 @@ public class ScripterApp implements Initializable {
 
     private static final Logger logger = LoggerFactory.getLogger(ScripterApp.class);
     private final Scripter scripter;
+    private final ScriptRouter router;
+    private final List<String> prewarmedLanguages;
 
     private ScripterApp() {
         scripter = null;
+        router = null;
+        prewarmedLanguages = emptyList();
     }
 
     public ScripterApp(Scripter scripter) {
+        this(scripter, null);
+    }
+
+    /**
+     * Create a clustered app forwarding executions of scripts placed elsewhere to their owners.
+     *
+     * @param scripter The local scripter
+     * @param router   The (optional) cluster router
+     */
+    public ScripterApp(Scripter scripter, ScriptRouter router) {
+        this(scripter, router, null);
+    }
+
+    /**
+     * Create an app pre-warming the engines of the given languages upon startup.
+     *
+     * @param scripter           The local scripter
+     * @param router             The (optional) cluster router
+     * @param prewarmedLanguages The (optional) languages whose engines are pre-warmed
+     */
+    public ScripterApp(Scripter scripter, ScriptRouter router, List<String> prewarmedLanguages) {
         this.scripter = scripter;
+        this.router = router;
+        if (prewarmedLanguages != null) {
+            this.prewarmedLanguages = prewarmedLanguages;
+        } else {
+            this.prewarmedLanguages = emptyList();
+        }
         initialize();
     }
 
     public void start() {
 
+        // Engines warm up in the background while routes are being set up
+        if (!prewarmedLanguages.isEmpty()) {
+            logger.info("Pre-warming languages: " + prewarmedLanguages);
+            Scripter.prewarmLanguages(prewarmedLanguages);
+        }
+
         post("/scripts", (req, res) -> {
 
             String scriptYamlString = req.body();
@@ -82,6 +124,19 @@ public class ScripterApp implements Initializable {
 
         post("/scripts/:scriptId", (req, res) -> {
 
+            String scriptId = req.params(":scriptId");
+
+            // Forward to an owner unless placed here or already forwarded
+            if (router != null && req.headers(ScriptRouter.FORWARDED_HEADER) == null
+                    && !router.isLocal(scriptId)) {
+                ScriptRouter.ForwardedResponse response = router.forward(scriptId, req.body());
+                res.status(response.getStatus());
+                if (response.getContentType() != null) {
+                    res.header("Content-Type", response.getContentType());
+                }
+                return response.getBody();
+            }
+
             String paramYamlString = req.body();
             final Map<String, Object> params;
 
@@ -91,8 +146,14 @@ public class ScripterApp implements Initializable {
                 params = emptyMap();
             }
 
-            String scriptId = req.params(":scriptId");
-            Object result = scripter.executeScript(scriptId, params);
+            // Awaited, but run asynchronously so VIRTUAL_THREAD scripts get their own thread
+            final Object result;
+            try {
+                result = scripter.executeScriptAsync(scriptId, params).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ?
+                        (RuntimeException) e.getCause() : e;
+            }
 
             res.header("Content-Type", "text/vnd.yaml");
             if (result != null) {
@@ -105,6 +166,66 @@ public class ScripterApp implements Initializable {
             }
         });
 
+        post("/eval", (req, res) -> {
+
+            // Yaml map with 'language' (defaults to javascript), 'script' and 'variables'
+            final Object request;
+            try {
+                request = YAML.load(req.body());
+            } catch (RuntimeException e) {
+                return badRequest(res, "Malformed snippet request: " + e.getMessage());
+            }
+            if (!(request instanceof Map)) {
+                return badRequest(res, "Snippet request must be a map");
+            }
+            Map<?, ?> fields = (Map<?, ?>) request;
+
+            Object language = fields.containsKey("language") ?
+                    fields.get("language") : "javascript";
+            if (!(language instanceof String)) {
+                return badRequest(res, "Snippet 'language' must be a string");
+            }
+            Object source = fields.get("script");
+            if (!(source instanceof String)) {
+                return badRequest(res, "Snippet 'script' must be a string");
+            }
+            Object variables = fields.get("variables");
+            if (variables != null && !(variables instanceof Map)) {
+                return badRequest(res, "Snippet 'variables' must be a map");
+            }
+
+            @SuppressWarnings("unchecked")
+            Object result = scripter.evaluateSnippet((String) language, (String) source,
+                    (Map<String, Object>) variables);
+
+            res.header("Content-Type", "text/vnd.yaml");
+            if (result != null) {
+                res.status(HttpStatus.OK_200);
+                return YAML.dump(result);
+            } else {
+                res.status(HttpStatus.NO_CONTENT_204);
+                return "";
+            }
+        });
+
+        post("/scripts/:scriptId/rollback", (req, res) -> {
+
+            String scriptId = req.params(":scriptId");
+
+            return scripter.rollbackScript(scriptId)
+                    .map(script -> {
+
+                        res.status(HttpStatus.OK_200);
+                        res.header("Content-Type", "text/vnd.yaml");
+                        return script;
+                    })
+                    .orElseGet(() -> {
+
+                        res.status(HttpStatus.CONFLICT_409);
+                        return "";
+                    });
+        });
+
         get("/scripts/:scriptId", (req, res) -> {
 
             String scriptId = req.params(":scriptId");
@@ -123,6 +244,37 @@ public class ScripterApp implements Initializable {
                     });
         });
 
+        get("/replication", (req, res) -> {
+
+            return scripter.getReplicatedRegistry()
+                    .map(registry -> {
+
+                        Map<String, Object> metrics = new LinkedHashMap<>();
+                        metrics.put("nodeId", registry.getNodeId());
+                        metrics.put("replicationLagMillis", registry.getReplicationLagMillis());
+                        metrics.put("maxReplicationLagMillis",
+                                registry.getMaxReplicationLagMillis());
+                        metrics.put("appliedEvents", registry.getAppliedEventCount());
+                        metrics.put("discardedEvents", registry.getDiscardedEventCount());
+
+                        res.status(HttpStatus.OK_200);
+                        res.header("Content-Type", "text/vnd.yaml");
+                        return YAML.dump(metrics);
+                    })
+                    .orElseGet(() -> {
+
+                        res.status(HttpStatus.NOT_FOUND_404);
+                        return "";
+                    });
+        });
+
+        get("/classloaders/leaks", (req, res) -> {
+
+            res.status(HttpStatus.OK_200);
+            res.header("Content-Type", "text/vnd.yaml");
+            return YAML.dump(scripter.findLeakedClassLoaders());
+        });
+
         delete("/scripts/:scriptId", (req, res) -> {
             String scriptId = req.params(":scriptId");
             scripter.removeScript(scriptId);
@@ -132,6 +284,13 @@ public class ScripterApp implements Initializable {
 
     }
 
+    private static String badRequest(@NotNull Response res, @NotNull String errorMessage) {
+        logger.warn(errorMessage);
+        res.status(HttpStatus.BAD_REQUEST_400);
+        res.header("Content-Type", "text/plain");
+        return errorMessage;
+    }
+
     public void stop() {
 
     }
@@ -139,6 +298,7 @@ public class ScripterApp implements Initializable {
     @Override
     public void initialize() {
         checkNotNull(scripter, "Scripter cannot be null");
+        checkNotNull(prewarmedLanguages, "Pre-warmed languages cannot be null");
 
     }
 }
@@ -0,0 +1,110 @@
+package net.xrrocha.scripter.commons.classloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.NotNull;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Diagnostic tracking class loaders that have been disposed of and should therefore become
+ * unreachable. Each disposed class loader is watched through a weak reference; class loaders
+ * still reachable once a grace period has elapsed are reported as (probable) leaks, typically
+ * caused by lingering threads, thread locals or static caches referencing their classes.
+ */
+public class ClassLoaderLeakDetector {
+
+    public static final long DEFAULT_GRACE_MILLIS = 60000L;
+
+    private static final Logger logger = LoggerFactory.getLogger(ClassLoaderLeakDetector.class);
+
+    private final long graceMillis;
+    private final ReferenceQueue<ClassLoader> referenceQueue = new ReferenceQueue<>();
+    private final Set<DisposedClassLoader> disposedClassLoaders = ConcurrentHashMap.newKeySet();
+
+    public ClassLoaderLeakDetector() {
+        this(DEFAULT_GRACE_MILLIS);
+    }
+
+    /**
+     * @param graceMillis The time given to disposed class loaders to be collected
+     */
+    public ClassLoaderLeakDetector(long graceMillis) {
+        checkArgument(graceMillis >= 0L, "Grace period cannot be negative");
+        this.graceMillis = graceMillis;
+    }
+
+    /**
+     * Start watching a class loader that's no longer in use.
+     *
+     * @param name        The class loader's descriptive name
+     * @param classLoader The disposed class loader
+     */
+    public void disposed(@NotNull String name, @NotNull ClassLoader classLoader) {
+        checkNotNull(name, "Name cannot be null");
+        checkNotNull(classLoader, "Class loader cannot be null");
+
+        expunge();
+        disposedClassLoaders.add(new DisposedClassLoader(name, classLoader, referenceQueue));
+    }
+
+    /**
+     * Retrieve the names of the disposed class loaders still reachable past the grace period.
+     *
+     * @return The leaked class loader names, possibly empty
+     */
+    public List<String> findLeaks() {
+        expunge();
+
+        long deadline = System.currentTimeMillis() - graceMillis;
+        List<String> leaks = disposedClassLoaders.stream()
+                .filter(reference -> reference.get() != null)
+                .filter(reference -> reference.disposedAt <= deadline)
+                .map(reference -> reference.name)
+                .sorted()
+                .collect(toList());
+
+        if (!leaks.isEmpty()) {
+            logger.warn("Disposed class loaders still reachable: " + leaks);
+        }
+
+        return leaks;
+    }
+
+    /**
+     * The number of disposed class loaders not yet collected.
+     */
+    public int getPendingCount() {
+        expunge();
+        return disposedClassLoaders.size();
+    }
+
+    private void expunge() {
+        DisposedClassLoader reference;
+        while ((reference = (DisposedClassLoader) referenceQueue.poll()) != null) {
+            logger.debug("Class loader '{}' collected", reference.name);
+            disposedClassLoaders.remove(reference);
+        }
+    }
+
+    private static final class DisposedClassLoader extends WeakReference<ClassLoader> {
+
+        private final String name;
+        private final long disposedAt = System.currentTimeMillis();
+
+        private DisposedClassLoader(@NotNull String name,
+                                    @NotNull ClassLoader classLoader,
+                                    @NotNull ReferenceQueue<ClassLoader> referenceQueue) {
+            super(classLoader, referenceQueue);
+            this.name = name;
+        }
+    }
+}
@@ -1,23 +1,34 @@
 package net.xrrocha.scripter.commons.classloader;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.xrrocha.scripter.commons.Initializable;
+import net.xrrocha.scripter.commons.io.ArtifactCache;
 import net.xrrocha.scripter.commons.io.InputStreamFileCreator;
 import net.xrrocha.scripter.commons.io.InputStreamOpener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-import java.util.Set;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static net.xrrocha.scripter.commons.io.FileUtils.isValidDirectory;
 
 /**
@@ -27,10 +38,23 @@ import static net.xrrocha.scripter.commons.io.FileUtils.isValidDirectory;
  */
 public class ParentLastClassLoaderCreator implements Initializable, Serializable {
 
+    public static final int DEFAULT_DOWNLOAD_PARALLELISM = 4;
+    public static final long DEFAULT_DOWNLOAD_TIMEOUT_MILLIS = 60000L;
+    public static final int DEFAULT_DOWNLOAD_RETRIES = 2;
+
+    private static final long RETRY_BACKOFF_MILLIS = 250L;
+    private static final ThreadFactory DOWNLOAD_THREAD_FACTORY = new ThreadFactoryBuilder()
+            .setNameFormat("class-loader-download-%d")
+            .setDaemon(true)
+            .build();
+
     private static final Logger logger = LoggerFactory.getLogger(ParentLastClassLoaderCreator.class);
     private final Set<InputStreamFileCreator> jarUrls;
     private final Set<InputStreamFileCreator> resourceUrls;
     private final InputStreamOpener opener;
+    private final int downloadParallelism;
+    private final long downloadTimeoutMillis;
+    private final int downloadRetries;
 
     /**
      * The reflective, field-based constructor for JSON/Yaml field-based bean access.
@@ -39,15 +63,39 @@ public class ParentLastClassLoaderCreator implements Initializable, Serializable
         opener = null;
         jarUrls = null;
         resourceUrls = null;
+        downloadParallelism = DEFAULT_DOWNLOAD_PARALLELISM;
+        downloadTimeoutMillis = DEFAULT_DOWNLOAD_TIMEOUT_MILLIS;
+        downloadRetries = DEFAULT_DOWNLOAD_RETRIES;
     }
 
     public ParentLastClassLoaderCreator(@NotNull InputStreamOpener opener,
                                         @NotNull Set<InputStreamFileCreator> jarUrls,
                                         @NotNull Set<InputStreamFileCreator> resourceUrls) {
+        this(opener, jarUrls, resourceUrls, DEFAULT_DOWNLOAD_PARALLELISM,
+                DEFAULT_DOWNLOAD_TIMEOUT_MILLIS, DEFAULT_DOWNLOAD_RETRIES);
+    }
+
+    /**
+     * @param opener                The input stream opener
+     * @param jarUrls               The jars to place in the class path
+     * @param resourceUrls          The resources to place in the class path
+     * @param downloadParallelism   The maximum number of concurrent downloads
+     * @param downloadTimeoutMillis The time allotted to each download attempt
+     * @param downloadRetries       The number of times a failed download is retried
+     */
+    public ParentLastClassLoaderCreator(@NotNull InputStreamOpener opener,
+                                        @NotNull Set<InputStreamFileCreator> jarUrls,
+                                        @NotNull Set<InputStreamFileCreator> resourceUrls,
+                                        int downloadParallelism,
+                                        long downloadTimeoutMillis,
+                                        int downloadRetries) {
 
         this.opener = opener;
         this.jarUrls = jarUrls;
         this.resourceUrls = resourceUrls;
+        this.downloadParallelism = downloadParallelism;
+        this.downloadTimeoutMillis = downloadTimeoutMillis;
+        this.downloadRetries = downloadRetries;
 
         initialize();
     }
@@ -62,22 +110,50 @@ public class ParentLastClassLoaderCreator implements Initializable, Serializable
     public ClassLoader createClassLoader(@NotNull ClassLoader parentClassLoader,
                                          @NotNull File jarDirectory,
                                          @NotNull File resourceDirectory) {
-        List<URL> outputUrls = new ArrayList<>();
+        return createClassLoader(parentClassLoader, jarDirectory, resourceDirectory, null);
+    }
+
+    /**
+     * Creates a new URL class loader under the specified jar and resource directories, taking
+     * jar and resource contents from the given artifact cache where possible.
+     *
+     * @param parentClassLoader The (optional) class loader to delegate to
+     * @param jarDirectory      The directory to store jar files copied from URL
+     * @param resourceDirectory The directory to store resource files copied from URL
+     * @param artifactCache     The (optional) artifact cache
+     */
+    public ClassLoader createClassLoader(@NotNull ClassLoader parentClassLoader,
+                                         @NotNull File jarDirectory,
+                                         @NotNull File resourceDirectory,
+                                         @Null ArtifactCache artifactCache) {
+
+        // Jars and resources are all fetched together
+        Map<InputStreamFileCreator, File> directories = new LinkedHashMap<>();
 
         if (jarUrls != null && !jarUrls.isEmpty()) {
             checkNotNull(jarDirectory, "Jar directory cannot be null");
-            populateFiles(jarUrls, jarDirectory, outputUrls);
+            jarUrls.forEach(jarUrl -> directories.put(jarUrl, jarDirectory));
         }
 
         if (resourceUrls != null && !resourceUrls.isEmpty()) {
             checkArgument(isValidDirectory(resourceDirectory), "Resource directory cannot be null");
+            resourceUrls.forEach(resourceUrl -> directories.put(resourceUrl, resourceDirectory));
+        }
 
-            populateFiles(resourceUrls, resourceDirectory, null);
-            try {
+        Map<InputStreamFileCreator, File> files = populateFiles(directories, artifactCache);
+
+        List<URL> outputUrls = new ArrayList<>();
+        try {
+            if (jarUrls != null) {
+                for (InputStreamFileCreator jarUrl : jarUrls) {
+                    outputUrls.add(files.get(jarUrl).toURI().toURL());
+                }
+            }
+            if (resourceUrls != null && !resourceUrls.isEmpty()) {
                 outputUrls.add(resourceDirectory.toURI().toURL());
-            } catch (MalformedURLException e) {
-                throw new IllegalArgumentException(e);
             }
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
         }
 
         if (outputUrls.isEmpty()) {
@@ -90,33 +166,179 @@ public class ParentLastClassLoaderCreator implements Initializable, Serializable
         return new ParentLastUrlClassLoader(classpathUrls, parentClassLoader);
     }
 
-    void populateFiles(@NotNull Set<InputStreamFileCreator> fileCreators,
-                       @NotNull File directory,
-                       @NotNull List<URL> outputUrls) {
+    /**
+     * Compute a hash identifying this creator's jar and resource set (file paths, URLs and
+     * opener). Creators with equal hashes yield interchangeable class loaders.
+     *
+     * @return The hex-encoded SHA-256 hash
+     */
+    public String getContentHash() {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(opener == null ? "" : opener.getClass().getName(), UTF_8);
+        putFileCreators(hasher, "jars", jarUrls);
+        putFileCreators(hasher, "resources", resourceUrls);
+        return hasher.hash().toString();
+    }
 
-        directory.mkdirs();
-        if (!isValidDirectory(directory)) {
-            String errorMessage = "Can't write directory: " + directory;
-            logger.error(errorMessage);
-            throw new IllegalArgumentException(errorMessage);
+    /**
+     * Determine whether any jar or resource is to be fetched anew rather than reused. Such
+     * creators yield class loaders that mustn't be shared with creators having the same hash.
+     *
+     * @return Whether one or more files are to be recreated
+     */
+    public boolean isRecreate() {
+        return Stream.of(jarUrls, resourceUrls)
+                .filter(Objects::nonNull)
+                .flatMap(Set::stream)
+                .anyMatch(InputStreamFileCreator::isRecreate);
+    }
+
+    private static void putFileCreators(@NotNull Hasher hasher,
+                                        @NotNull String kind,
+                                        Set<InputStreamFileCreator> fileCreators) {
+        hasher.putChar('\0').putString(kind, UTF_8);
+        if (fileCreators != null) {
+            fileCreators.stream()
+                    .map(creator -> creator.getFilePath() + '\0' + creator.getUrlLocation() +
+                            '\0' + creator.getChecksum().orElse(""))
+                    .sorted()
+                    .forEach(entry -> hasher.putChar('\0').putString(entry, UTF_8));
+        }
+    }
+
+    /**
+     * Fetch all files concurrently, with up to <code>downloadParallelism</code> downloads in
+     * flight. Each download attempt is abandoned after <code>downloadTimeoutMillis</code> and
+     * retried up to <code>downloadRetries</code> times; the first file failing all its attempts
+     * fails the whole batch.
+     *
+     * @param directories   The directory under which to create each file
+     * @param artifactCache The (optional) artifact cache
+     * @return The created files
+     */
+    Map<InputStreamFileCreator, File> populateFiles(
+            @NotNull Map<InputStreamFileCreator, File> directories,
+            @Null ArtifactCache artifactCache) {
+
+        for (File directory : new HashSet<>(directories.values())) {
+            directory.mkdirs();
+            if (!isValidDirectory(directory)) {
+                String errorMessage = "Can't write directory: " + directory;
+                logger.error(errorMessage);
+                throw new IllegalArgumentException(errorMessage);
+            }
+        }
+
+        Map<InputStreamFileCreator, File> files = new LinkedHashMap<>();
+        if (directories.isEmpty()) {
+            return files;
         }
 
-        fileCreators.forEach(fileCreator -> {
-            File file = fileCreator.createFile(directory, opener);
-            if (outputUrls != null) {
+        ExecutorService fetchExecutor = Executors.newFixedThreadPool(
+                Math.min(downloadParallelism, directories.size()), DOWNLOAD_THREAD_FACTORY);
+        // Attempts run apart from their fetcher so that hung downloads can be abandoned
+        ExecutorService attemptExecutor = Executors.newCachedThreadPool(DOWNLOAD_THREAD_FACTORY);
+        try {
+            Map<InputStreamFileCreator, Future<File>> futures = new LinkedHashMap<>();
+            directories.forEach((fileCreator, directory) ->
+                    futures.put(fileCreator, fetchExecutor.submit(() ->
+                            fetchFile(fileCreator, directory, artifactCache, attemptExecutor))));
+
+            for (Map.Entry<InputStreamFileCreator, Future<File>> entry : futures.entrySet()) {
                 try {
-                    outputUrls.add(file.toURI().toURL());
-                } catch (MalformedURLException e) {
+                    files.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IllegalArgumentException) {
+                        throw (IllegalArgumentException) cause;
+                    }
+                    throw new IllegalArgumentException(cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                     throw new IllegalArgumentException(e);
                 }
             }
-        });
+        } finally {
+            fetchExecutor.shutdownNow();
+            attemptExecutor.shutdownNow();
+        }
+
+        return files;
+    }
+
+    File fetchFile(@NotNull InputStreamFileCreator fileCreator,
+                   @NotNull File directory,
+                   @Null ArtifactCache artifactCache,
+                   @NotNull ExecutorService attemptExecutor) throws InterruptedException {
+
+        File targetFile = new File(directory, fileCreator.getFilePath());
+        boolean validTargetFile = targetFile.isFile() && targetFile.canRead() &&
+                fileCreator.getChecksum()
+                        .map(checksum -> ArtifactCache.verify(targetFile, checksum))
+                        .orElse(true);
+        if (validTargetFile && !fileCreator.isRecreate()) {
+            logger.debug("Skipping existing file: {}", targetFile);
+            return targetFile;
+        }
+
+        Exception lastException = null;
+        for (int attempt = 0; attempt <= downloadRetries; attempt++) {
+            if (attempt > 0) {
+                logger.warn("Retrying '" + fileCreator.getUrlLocation() + "' (attempt " +
+                        (attempt + 1) + "): " + lastException);
+                Thread.sleep(RETRY_BACKOFF_MILLIS << (attempt - 1));
+            }
+
+            // Abandoned attempts may still be writing: each one downloads to its own directory
+            final File attemptDirectory;
+            try {
+                attemptDirectory =
+                        Files.createTempDirectory(directory.toPath(), ".fetch-").toFile();
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Can't create download directory", e);
+            }
+
+            Future<File> future = attemptExecutor.submit(() ->
+                    fileCreator.createFile(attemptDirectory, opener, artifactCache));
+            try {
+                File attemptFile = future.get(downloadTimeoutMillis, TimeUnit.MILLISECONDS);
+                targetFile.getParentFile().mkdirs();
+                Files.move(attemptFile.toPath(), targetFile.toPath(),
+                        ATOMIC_MOVE, REPLACE_EXISTING);
+                return targetFile;
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                lastException = e;
+            } catch (ExecutionException e) {
+                lastException = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } catch (IOException e) {
+                lastException = e;
+            } finally {
+                deleteAttemptDirectory(attemptDirectory);
+            }
+        }
+
+        String errorMessage = "Error fetching '" + fileCreator.getUrlLocation() + "' after " +
+                (downloadRetries + 1) + " attempts: " + lastException;
+        logger.error(errorMessage);
+        throw new IllegalArgumentException(errorMessage, lastException);
+    }
+
+    private static void deleteAttemptDirectory(@NotNull File attemptDirectory) {
+        try (Stream<Path> paths = Files.walk(attemptDirectory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException | UncheckedIOException e) {
+            logger.debug("Can't delete " + attemptDirectory + ": " + e);
+        }
     }
 
     @Override
     public void initialize() {
         checkArgument(jarUrls != null || resourceUrls != null,
                 "Both jar urls and resource urls are null");
+        checkArgument(downloadParallelism > 0, "Download parallelism must be positive");
+        checkArgument(downloadTimeoutMillis > 0, "Download timeout must be positive");
+        checkArgument(downloadRetries >= 0, "Download retries cannot be negative");
         if (jarUrls != null) {
             checkArgument(jarUrls.stream().allMatch(Objects::nonNull), "One or more jar urls is null");
         }
@@ -1,23 +1,97 @@
 package net.xrrocha.scripter.commons.classloader;
 
+import com.google.common.collect.Iterators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javax.validation.constraints.NotNull;
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.Collections;
-import java.util.Enumeration;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
 
 /**
  * Class loader with inverse delegation policy (Child-first).
  * <p>
  * This class exists despite Java 9's module support so as to enable Java 8 (and back) libraries to
  * be used by scripts.
+ * <p>
+ * The entries of all class path jars and directories are indexed upfront so that names this
+ * loader can't contain are delegated to the parent right away, without scanning the class path
+ * or raising exceptions. Class paths that can't be fully indexed (non-file URLs, jars with a
+ * manifest <code>Class-Path</code>) fall back to scanning.
+ * <p>
+ * Resource lookups on the class path are cached, both positively and negatively, until the class
+ * path changes. Resources found in the class path and in the parent are enumerated lazily,
+ * without being copied.
  */
 public class ParentLastUrlClassLoader extends URLClassLoader {
 
+    /**
+     * The maximum number of resource names cached; beyond it lookups are no longer cached.
+     */
+    static final int MAX_CACHED_RESOURCES = 4096;
+
+    private static final Logger logger = LoggerFactory.getLogger(ParentLastUrlClassLoader.class);
+
+    /*
+     * Lock per class name (rather than on the whole loader) so that concurrent first executions
+     * loading many classes don't serialize on the loader.
+     */
+    static {
+        registerAsParallelCapable();
+    }
+
+    /**
+     * The names of all entries in the class path or <code>null</code> if not indexable.
+     */
+    private volatile Set<String> entryIndex;
+
+    private final Map<String, URL> foundResources = new ConcurrentHashMap<>();
+    private final Set<String> missingResources = ConcurrentHashMap.newKeySet();
+    private final Map<String, List<URL>> foundResourceLists = new ConcurrentHashMap<>();
+
     public ParentLastUrlClassLoader(@NotNull URL[] urls, @NotNull ClassLoader parent) {
         super(urls, parent);
+        entryIndex = buildEntryIndex(urls);
+    }
+
+    /**
+     * Determine whether the class path may contain the given entry.
+     *
+     * @param entryName The <code>/</code>-separated entry name
+     * @return <code>false</code> only if the entry is known to be absent
+     */
+    boolean mayContain(@NotNull String entryName) {
+        Set<String> index = entryIndex;
+        return index == null || index.contains(entryName);
+    }
+
+    boolean isIndexed() {
+        return entryIndex != null;
+    }
+
+    /**
+     * Class path additions invalidate the index and the resource caches.
+     */
+    @Override
+    protected void addURL(@NotNull URL url) {
+        super.addURL(url);
+        entryIndex = null;
+        foundResources.clear();
+        missingResources.clear();
+        foundResourceLists.clear();
     }
 
     /**
@@ -39,6 +113,13 @@ public class ParentLastUrlClassLoader extends URLClassLoader {
              */
             Class c = findLoadedClass(name);
 
+            if (c == null && !mayContain(name.replace('.', '/') + ".class")) {
+                /*
+                 * Not in our class path: delegate right away.
+                 */
+                return super.loadClass(name, resolve);
+            }
+
             if (c == null) {
                 try {
                     /*
@@ -65,10 +146,13 @@ public class ParentLastUrlClassLoader extends URLClassLoader {
     @Override
     public URL getResource(@NotNull String name) {
 
-        URL url = findResource(name);
+        URL url = findCachedResource(name);
 
         if (url == null) {
-            return super.getResource(name);
+            /*
+             * Ask the parent directly: super.getResource() would search our class path again.
+             */
+            return getParent() == null ? super.getResource(name) : getParent().getResource(name);
         }
 
         return url;
@@ -77,13 +161,142 @@ public class ParentLastUrlClassLoader extends URLClassLoader {
     @Override
     public Enumeration<URL> getResources(@NotNull String name) throws IOException {
 
-        Enumeration<URL> childResources = findResources(name);
-        List<URL> localUrlList = Collections.list(childResources);
+        Iterator<URL> childResources = findCachedResources(name).iterator();
 
         if (getParent() != null) {
-            localUrlList.addAll(Collections.list(getParent().getResources(name)));
+            Iterator<URL> parentResources =
+                    Iterators.forEnumeration(getParent().getResources(name));
+            return Iterators.asEnumeration(Iterators.concat(childResources, parentResources));
+        }
+
+        return Iterators.asEnumeration(childResources);
+    }
+
+    private URL findCachedResource(@NotNull String name) {
+
+        if (!mayContain(name) || missingResources.contains(name)) {
+            return null;
+        }
+
+        URL url = foundResources.get(name);
+        if (url == null) {
+            url = findResource(name);
+            if (cacheable()) {
+                if (url == null) {
+                    missingResources.add(name);
+                } else {
+                    foundResources.put(name, url);
+                }
+            }
         }
 
-        return Collections.enumeration(localUrlList);
+        return url;
+    }
+
+    private List<URL> findCachedResources(@NotNull String name) throws IOException {
+
+        if (!mayContain(name) || missingResources.contains(name)) {
+            return Collections.emptyList();
+        }
+
+        List<URL> urls = foundResourceLists.get(name);
+        if (urls == null) {
+            urls = Collections.unmodifiableList(Collections.list(findResources(name)));
+            if (cacheable()) {
+                if (urls.isEmpty()) {
+                    missingResources.add(name);
+                } else {
+                    foundResourceLists.put(name, urls);
+                }
+            }
+        }
+
+        return urls;
+    }
+
+    private boolean cacheable() {
+        return foundResources.size() + missingResources.size() + foundResourceLists.size() <
+                MAX_CACHED_RESOURCES;
+    }
+
+    static Set<String> buildEntryIndex(@NotNull URL[] urls) {
+
+        Set<String> index = new HashSet<>();
+        try {
+            for (URL url : urls) {
+                if (!"file".equals(url.getProtocol())) {
+                    logger.debug("Not indexing non-file class path: {}", url);
+                    return null;
+                }
+
+                File file = new File(url.toURI());
+                if (file.isDirectory()) {
+                    indexDirectory(file.toPath(), index);
+                } else if (file.isFile()) {
+                    if (!indexJar(file, index)) {
+                        logger.debug("Not indexing jar with manifest class path: {}", file);
+                        return null;
+                    }
+                }
+            }
+        } catch (IOException | UncheckedIOException | URISyntaxException |
+                IllegalArgumentException e) {
+            logger.warn("Not indexing class path " + Arrays.toString(urls) + ": " + e);
+            return null;
+        }
+
+        return Collections.unmodifiableSet(index);
+    }
+
+    private static void indexDirectory(@NotNull Path directory, @NotNull Set<String> index)
+            throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.filter(path -> !path.equals(directory))
+                    .map(path -> directory.relativize(path).toString())
+                    .map(entryName -> entryName.replace(File.separatorChar, '/'))
+                    .forEach(entryName -> addEntry(entryName, index));
+        }
+    }
+
+    private static boolean indexJar(@NotNull File file, @NotNull Set<String> index)
+            throws IOException {
+        try (JarFile jarFile = new JarFile(file)) {
+            Manifest manifest = jarFile.getManifest();
+            if (manifest != null &&
+                    manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) != null) {
+                return false;
+            }
+
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                addEntry(entry.getName(), index);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Index an entry along with its parent directories, so that package lookups such as
+     * <code>com/acme/</code> reach the class path even when jars omit directory entries.
+     * Directories are indexed both with and without their trailing <code>/</code>, as both
+     * resolve.
+     */
+    private static void addEntry(@NotNull String entryName, @NotNull Set<String> index) {
+        boolean directory = entryName.endsWith("/");
+        String name = directory ? entryName.substring(0, entryName.length() - 1) : entryName;
+        if (name.isEmpty()) {
+            return;
+        }
+
+        index.add(name);
+        if (directory) {
+            index.add(entryName);
+        }
+
+        for (int slash = name.indexOf('/'); slash > 0; slash = name.indexOf('/', slash + 1)) {
+            index.add(name.substring(0, slash));
+            index.add(name.substring(0, slash + 1));
+        }
     }
 }
@@ -0,0 +1,116 @@
+package net.xrrocha.scripter.commons.cluster;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import net.xrrocha.scripter.commons.Initializable;
+
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Consistent-hash ring assigning keys to a subset of cluster nodes. Each node is placed on the
+ * ring at <code>virtualNodes</code> points to even out the load; a key is owned by the
+ * <code>replicas</code> distinct nodes found walking the ring clockwise from the key's hash.
+ * <p>
+ * Adding or removing a node only relocates the keys adjacent to its points. The ring is
+ * immutable: membership changes yield a new ring.
+ */
+public class ConsistentHashRing implements Initializable, Serializable {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private static final HashFunction hashFunction = Hashing.murmur3_128();
+
+    private final List<String> nodeIds;
+    private final int replicas;
+    private final int virtualNodes;
+    private NavigableMap<Long, String> ring;
+
+    /**
+     * The reflective, field-based constructor for JSON/Yaml field-based bean access.
+     */
+    private ConsistentHashRing() {
+        nodeIds = null;
+        replicas = 1;
+        virtualNodes = DEFAULT_VIRTUAL_NODES;
+    }
+
+    public ConsistentHashRing(@NotNull Collection<String> nodeIds, int replicas) {
+        this(nodeIds, replicas, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(@NotNull Collection<String> nodeIds, int replicas, int virtualNodes) {
+        checkNotNull(nodeIds, "Node ids cannot be null");
+        this.nodeIds = ImmutableList.copyOf(new TreeSet<>(nodeIds));
+        this.replicas = replicas;
+        this.virtualNodes = virtualNodes;
+        initialize();
+    }
+
+    /**
+     * Retrieve the nodes owning the given key, in order of preference.
+     *
+     * @param key The key
+     * @return The <code>min(replicas, nodes)</code> owner node ids
+     */
+    public List<String> owners(@NotNull String key) {
+        checkNotNull(key, "Key cannot be null");
+
+        int ownerCount = Math.min(replicas, nodeIds.size());
+        Set<String> owners = new LinkedHashSet<>(ownerCount);
+
+        long hash = hash(key);
+        Iterator<String> tail = ring.tailMap(hash, true).values().iterator();
+        Iterator<String> head = ring.headMap(hash, false).values().iterator();
+        while (owners.size() < ownerCount) {
+            owners.add(tail.hasNext() ? tail.next() : head.next());
+        }
+
+        return ImmutableList.copyOf(owners);
+    }
+
+    /**
+     * Determine whether the given node is among the owners of the given key.
+     *
+     * @param nodeId The node id
+     * @param key    The key
+     * @return Whether the node owns the key
+     */
+    public boolean isOwner(@NotNull String nodeId, @NotNull String key) {
+        return owners(key).contains(nodeId);
+    }
+
+    public List<String> getNodeIds() {
+        return nodeIds;
+    }
+
+    public int getReplicas() {
+        return replicas;
+    }
+
+    @Override
+    public void initialize() {
+        checkNotNull(nodeIds, "Node ids cannot be null");
+        checkArgument(!nodeIds.isEmpty(), "Node ids cannot be empty");
+        checkArgument(nodeIds.stream().allMatch(Objects::nonNull), "One or more node ids is null");
+        checkArgument(replicas > 0, "Replicas must be positive");
+        checkArgument(virtualNodes > 0, "Virtual nodes must be positive");
+
+        ring = new TreeMap<>();
+        for (String nodeId : nodeIds) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(nodeId + "#" + i), nodeId);
+            }
+        }
+    }
+
+    private static long hash(@NotNull String string) {
+        return hashFunction.hashString(string, UTF_8).asLong();
+    }
+}
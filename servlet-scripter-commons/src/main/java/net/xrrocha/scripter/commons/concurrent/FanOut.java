@@ -0,0 +1,305 @@
+package net.xrrocha.scripter.commons.concurrent;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.xrrocha.scripter.commons.Initializable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Bounded, named executor applying a (typically blocking) task to many items in parallel, such
+ * as running a remote command on each of hundreds of hosts.
+ * <p>
+ * At most <code>parallelism</code> tasks run at once and at most <code>queueCapacity</code> wait
+ * for a thread; beyond that, the submitting thread runs tasks itself, which throttles submission
+ * instead of piling up work. Each task is interrupted once it has run for longer than its
+ * timeout; tasks ignoring interruption are abandoned (and reported as timed out) once the
+ * fan-out as a whole has run out of time. Failures and timeouts don't abort the fan-out: they're
+ * collected alongside the successful results.
+ * <p>
+ * Pool threads are created with a neutral context class loader (rather than inheriting that of
+ * whichever script happened to start them) and run each task under its caller's context class
+ * loader, so they neither pin a script's class loader nor lend it to other scripts' tasks.
+ */
+public class FanOut implements Initializable, AutoCloseable {
+
+    public static final int DEFAULT_PARALLELISM = 16;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60000L;
+
+    private static final Logger logger = LoggerFactory.getLogger(FanOut.class);
+
+    /**
+     * Interrupts tasks exceeding their timeout. Shared by all fan-outs: it only ever runs
+     * (trivial) interruptions.
+     */
+    private static final ScheduledExecutorService WATCHDOG =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setThreadFactory(FanOut::newNeutralThread)
+                    .setNameFormat("fan-out-watchdog")
+                    .setDaemon(true)
+                    .build());
+
+    private final String name;
+    private final int parallelism;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * The reflective, field-based constructor for JSON/Yaml field-based bean access.
+     */
+    private FanOut() {
+        name = null;
+        parallelism = DEFAULT_PARALLELISM;
+        queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    }
+
+    public FanOut(@NotNull String name) {
+        this(name, DEFAULT_PARALLELISM, DEFAULT_QUEUE_CAPACITY, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param name          The fan-out name, used to name its threads
+     * @param parallelism   The maximum number of tasks running at once
+     * @param queueCapacity The maximum number of tasks waiting for a thread
+     * @param timeoutMillis The default per-task timeout
+     */
+    public FanOut(@NotNull String name, int parallelism, int queueCapacity, long timeoutMillis) {
+        this.name = name;
+        this.parallelism = parallelism;
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeoutMillis;
+        initialize();
+    }
+
+    /**
+     * Apply the given task to all items using the default per-task timeout.
+     *
+     * @see #map(Collection, Function, long)
+     */
+    public <T, R> FanOutResult<T, R> map(@NotNull Collection<T> items,
+                                         @NotNull Function<? super T, ? extends R> task) {
+        return map(items, task, timeoutMillis);
+    }
+
+    /**
+     * Apply the given task to all items, waiting for all of them to complete or fail.
+     *
+     * @param items         The (distinct) items to fan out over
+     * @param task          The task applied to each item
+     * @param timeoutMillis The time each task may run for before being interrupted
+     * @return The results and failures, keyed by item
+     */
+    public <T, R> FanOutResult<T, R> map(@NotNull Collection<T> items,
+                                         @NotNull Function<? super T, ? extends R> task,
+                                         long timeoutMillis) {
+        checkNotNull(items, "Items cannot be null");
+        checkNotNull(task, "Task cannot be null");
+        checkArgument(timeoutMillis > 0, "Timeout must be positive");
+
+        // Outcomes are keyed by item: duplicates would silently collapse into one
+        List<T> itemList = new ArrayList<>(items);
+        checkArgument(new HashSet<>(itemList).size() == itemList.size(),
+                "Items must be distinct");
+
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        List<Future<R>> futures = new ArrayList<>(itemList.size());
+        for (T item : itemList) {
+            futures.add(executor.submit(() ->
+                    apply(task, item, timeoutMillis, contextClassLoader)));
+        }
+
+        // Enough time for the pending tasks to run one batch after another, each to its timeout
+        long pendingCount = futures.stream().filter(future -> !future.isDone()).count();
+        long pendingBatches = (pendingCount + parallelism - 1) / parallelism;
+        long deadline = System.currentTimeMillis() + pendingBatches * timeoutMillis;
+
+        Map<T, R> results = new LinkedHashMap<>();
+        Map<T, Throwable> failures = new LinkedHashMap<>();
+        for (int i = 0; i < itemList.size(); i++) {
+            T item = itemList.get(i);
+            try {
+                long remainingMillis = Math.max(0L, deadline - System.currentTimeMillis());
+                results.put(item, futures.get(i).get(remainingMillis, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                // The task ignored its interruption (or never got a thread): abandon it
+                futures.get(i).cancel(true);
+                failures.put(item, new TimeoutException("Abandoned after " + timeoutMillis +
+                        "ms: " + item));
+            } catch (ExecutionException e) {
+                failures.put(item, e.getCause());
+            } catch (CancellationException e) {
+                failures.put(item, e);
+            } catch (InterruptedException e) {
+                logger.warn("Fan-out '" + name + "' interrupted; cancelling pending tasks");
+                Thread.currentThread().interrupt();
+                for (int j = i; j < itemList.size(); j++) {
+                    futures.get(j).cancel(true);
+                    failures.put(itemList.get(j), e);
+                }
+                break;
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            logger.debug("Fan-out '" + name + "': " + failures.size() + " of " +
+                    itemList.size() + " tasks failed");
+        }
+
+        return new FanOutResult<>(results, failures);
+    }
+
+    /**
+     * Run the task under the given context class loader, having it interrupted if it outlives
+     * its timeout. The interruption is cleared afterwards so that it doesn't leak into the next
+     * task run by the same thread.
+     */
+    private static <T, R> R apply(@NotNull Function<? super T, ? extends R> task,
+                                  T item,
+                                  long timeoutMillis,
+                                  ClassLoader contextClassLoader) throws TimeoutException {
+        Thread thread = Thread.currentThread();
+        ClassLoader threadClassLoader = thread.getContextClassLoader();
+        Deadline deadline = new Deadline(thread);
+        ScheduledFuture<?> alarm =
+                WATCHDOG.schedule(deadline::expire, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        R result = null;
+        RuntimeException failure = null;
+        try {
+            thread.setContextClassLoader(contextClassLoader);
+            result = task.apply(item);
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            alarm.cancel(false);
+            thread.setContextClassLoader(threadClassLoader);
+        }
+
+        if (deadline.complete()) {
+            throw new TimeoutException("Timed out after " + timeoutMillis + "ms: " + item);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * The number of tasks currently running.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public void close() {
+        logger.debug("Shutting down fan-out '" + name + "'");
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void initialize() {
+        checkNotNull(name, "Name cannot be null");
+        checkArgument(parallelism > 0, "Parallelism must be positive");
+        checkArgument(queueCapacity > 0, "Queue capacity must be positive");
+        checkArgument(timeoutMillis > 0, "Timeout must be positive");
+
+        executor = new ThreadPoolExecutor(parallelism, parallelism,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder()
+                        .setThreadFactory(FanOut::newNeutralThread)
+                        .setNameFormat("fan-out-" + name + "-%d")
+                        .setDaemon(true)
+                        .build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Create a thread whose context class loader is this library's rather than its creator's.
+     */
+    private static Thread newNeutralThread(@NotNull Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setContextClassLoader(FanOut.class.getClassLoader());
+        return thread;
+    }
+
+    /**
+     * The timeout of a running task. Expiring (on the watchdog thread) and completing (on the
+     * task's thread) exclude each other, so an interruption is either delivered before the task
+     * completes, and then cleared, or not at all.
+     */
+    private static final class Deadline {
+
+        private final Thread thread;
+        private boolean running = true;
+
+        Deadline(@NotNull Thread thread) {
+            this.thread = thread;
+        }
+
+        synchronized void expire() {
+            if (running) {
+                running = false;
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * Mark the task complete, clearing the interruption of an expired deadline. Must be
+         * called on the task's thread.
+         *
+         * @return <code>true</code> if the deadline expired before the task completed
+         */
+        synchronized boolean complete() {
+            boolean expired = !running;
+            running = false;
+            if (expired) {
+                Thread.interrupted();
+            }
+            return expired;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package net.xrrocha.scripter.commons.concurrent;
+
+import com.google.common.base.MoreObjects;
+
+import javax.validation.constraints.NotNull;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The outcome of a @see{FanOut}: the results of the tasks that succeeded and the errors of
+ * those that failed or timed out, both keyed by item in submission order.
+ */
+public class FanOutResult<T, R> {
+
+    private final Map<T, R> results;
+    private final Map<T, Throwable> failures;
+
+    public FanOutResult(@NotNull Map<T, R> results, @NotNull Map<T, Throwable> failures) {
+        this.results = Collections.unmodifiableMap(new LinkedHashMap<>(results));
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+    }
+
+    public Map<T, R> getResults() {
+        return results;
+    }
+
+    public Map<T, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * The items whose tasks were interrupted for exceeding their timeout.
+     */
+    public List<T> getTimedOut() {
+        return failures.entrySet().stream()
+                .filter(entry -> entry.getValue() instanceof TimeoutException)
+                .map(Map.Entry::getKey)
+                .collect(toList());
+    }
+
+    /**
+     * Determine whether all tasks succeeded.
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("results", results.size())
+                .add("failures", failures.keySet())
+                .toString();
+    }
+}
@@ -0,0 +1,92 @@
+package net.xrrocha.scripter.commons.concurrent;
+
+import javax.validation.constraints.NotNull;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Merges concurrent executions with equal keys into one: the first caller executes while the
+ * others wait for, and share, its result or failure. Nothing is retained once an execution
+ * completes: later callers execute anew.
+ *
+ * @param <K> The key type; keys must be immutable while in flight
+ * @param <V> The result type
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong executionCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * Execute, or join an in-flight execution with an equal key.
+     *
+     * @param key       The execution key
+     * @param execution The execution
+     * @return The (possibly shared) result
+     */
+    public V execute(@NotNull K key, @NotNull Supplier<V> execution) {
+        checkNotNull(key, "Key cannot be null");
+        checkNotNull(execution, "Execution cannot be null");
+
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> leaderCall = inFlight.putIfAbsent(key, call);
+        if (leaderCall != null) {
+            coalescedCount.incrementAndGet();
+            return await(leaderCall);
+        }
+
+        executionCount.incrementAndGet();
+        try {
+            V result = execution.get();
+            call.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    private V await(@NotNull CompletableFuture<V> call) {
+        try {
+            return call.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalArgumentException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for in-flight execution", e);
+        }
+    }
+
+    /**
+     * The number of executions actually run so far.
+     */
+    public long getExecutionCount() {
+        return executionCount.get();
+    }
+
+    /**
+     * The number of calls that joined an in-flight execution so far.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+}
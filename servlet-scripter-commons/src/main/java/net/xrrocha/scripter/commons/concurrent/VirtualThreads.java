@@ -0,0 +1,175 @@
+package net.xrrocha.scripter.commons.concurrent;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.NotNull;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Access to virtual threads (Java 21+) from code compiled for earlier Java versions. Virtual
+ * threads are looked up reflectively; on runtimes lacking them, callers fall back to platform
+ * threads.
+ */
+public final class VirtualThreads {
+
+    /**
+     * The JFR event recorded when a virtual thread blocks while pinned to its carrier (e.g. by
+     * engines synchronizing internally while blocking).
+     */
+    public static final String PINNED_EVENT_NAME = "jdk.VirtualThreadPinned";
+
+    /**
+     * The shortest pinning worth reporting.
+     */
+    public static final Duration PINNED_THRESHOLD = Duration.ofMillis(20);
+
+    // Probed lazily: a probe run during class initialization would wait on it
+    private static final Supplier<Optional<Method>> builderMethod =
+            Suppliers.memoize(VirtualThreads::lookupBuilderMethod);
+    private static final Supplier<Boolean> pinnedMonitor =
+            Suppliers.memoize(VirtualThreads::startPinnedMonitor);
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Determine whether the running JVM supports virtual threads. Support is probed by actually
+     * starting one, as preview releases (Java 19 and 20) expose the API but reject its use
+     * unless preview features are enabled.
+     */
+    public static boolean isSupported() {
+        return builderMethod.get().isPresent();
+    }
+
+    /**
+     * Create a thread factory yielding virtual threads, if supported.
+     *
+     * @param namePrefix The thread name prefix; threads are numbered from zero
+     * @return The virtual thread factory or empty if not supported
+     */
+    public static Optional<ThreadFactory> newThreadFactory(@NotNull String namePrefix) {
+        checkNotNull(namePrefix, "Name prefix cannot be null");
+        return builderMethod.get().map(ofVirtual -> {
+            try {
+                Object builder = ofVirtual.invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class)
+                        .invoke(builder, namePrefix, 0L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Error creating virtual thread factory", e);
+            }
+        });
+    }
+
+    /**
+     * Create an executor running each task on its own virtual thread or, if not supported, on
+     * (cached, daemon) platform threads.
+     *
+     * @param namePrefix The thread name prefix
+     * @return The new executor
+     */
+    public static ExecutorService newExecutor(@NotNull String namePrefix) {
+        Optional<ThreadFactory> threadFactory = newThreadFactory(namePrefix);
+        if (threadFactory.isPresent()) {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                        .invoke(null, threadFactory.get());
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Falling back to platform threads: " + e);
+            }
+        }
+
+        return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat(namePrefix + "%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Log virtual threads pinned to their carrier for longer than @see{PINNED_THRESHOLD}. Pinned
+     * threads are observed through a JFR event stream (looked up reflectively, like virtual
+     * threads themselves) started on first call; subsequent calls have no effect.
+     *
+     * @return Whether pinned threads are being monitored
+     */
+    public static boolean monitorPinnedThreads() {
+        return pinnedMonitor.get();
+    }
+
+    private static boolean startPinnedMonitor() {
+        if (!isSupported()) {
+            return false;
+        }
+
+        try {
+            Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            Object stream = streamClass.getConstructor().newInstance();
+            Object eventSettings =
+                    streamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT_NAME);
+            Class.forName("jdk.jfr.EventSettings")
+                    .getMethod("withThreshold", Duration.class)
+                    .invoke(eventSettings, PINNED_THRESHOLD);
+            Consumer<Object> pinnedEventConsumer =
+                    event -> logger.warn("Virtual thread pinned to its carrier: " + event);
+            streamClass.getMethod("onEvent", String.class, Consumer.class)
+                    .invoke(stream, PINNED_EVENT_NAME, pinnedEventConsumer);
+            // Streamed on a daemon thread so that monitoring doesn't keep the JVM alive
+            Method start = streamClass.getMethod("start");
+            new ThreadFactoryBuilder()
+                    .setNameFormat("virtual-thread-pinning-monitor")
+                    .setDaemon(true)
+                    .build()
+                    .newThread(() -> {
+                        try {
+                            start.invoke(stream);
+                        } catch (ReflectiveOperationException e) {
+                            logger.warn("Stopped monitoring pinned virtual threads: " + e);
+                        }
+                    })
+                    .start();
+            logger.info("Monitoring pinned virtual threads");
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Can't monitor pinned virtual threads: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Resolve <code>Thread.ofVirtual()</code> and probe it by starting a virtual thread.
+     */
+    private static Optional<Method> lookupBuilderMethod() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Thread probe = (Thread) Class.forName("java.lang.Thread$Builder")
+                    .getMethod("start", Runnable.class)
+                    .invoke(ofVirtual.invoke(null), (Runnable) () -> {
+                    });
+            probe.join();
+            return Optional.of(ofVirtual);
+        } catch (NoSuchMethodException e) {
+            logger.debug("Virtual threads not supported by this runtime");
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.info("Virtual threads not enabled in this runtime: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Optional.empty();
+    }
+}
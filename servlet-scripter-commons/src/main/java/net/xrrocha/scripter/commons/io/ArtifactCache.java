@@ -0,0 +1,353 @@
+package net.xrrocha.scripter.commons.io;
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import net.xrrocha.scripter.commons.Initializable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static net.xrrocha.scripter.commons.io.FileUtils.isValidDirectory;
+
+/**
+ * Content-addressed cache of downloaded artifacts (jars, resources). Each distinct content is
+ * stored once as a blob named after its SHA-256 hash; an index maps each URL to the blob last
+ * downloaded from it.
+ * <p>
+ * An artifact declaring a checksum is served from its blob, when present, without contacting its
+ * URL at all; otherwise its URL is looked up in the index. As the contents behind a URL may
+ * change, index entries expire after a time-to-live, past which the URL is downloaded again (a
+ * zero time-to-live caches checksummed artifacts only). Index entries are kept per opener as
+ * well, since the same location may resolve differently through differently configured openers.
+ * Downloads are verified against the declared checksum, if any, before being admitted.
+ * <p>
+ * Blobs are swept upon startup: those neither referenced by an unexpired index entry nor used
+ * for a given idle time are deleted, along with expired index entries. Files already created
+ * from deleted blobs are unaffected, as they're links or copies.
+ */
+public class ArtifactCache implements Initializable, Serializable {
+
+    public static final String BLOB_DIRECTORY_NAME = "blobs";
+    public static final String INDEX_DIRECTORY_NAME = "index";
+    public static final String CHECKSUM_PREFIX = "sha256:";
+    public static final long DEFAULT_INDEX_TTL_MILLIS = 24L * 60L * 60L * 1000L;
+    public static final long DEFAULT_MAX_BLOB_IDLE_MILLIS = 30L * DEFAULT_INDEX_TTL_MILLIS;
+
+    private static final Logger logger = LoggerFactory.getLogger(ArtifactCache.class);
+
+    private final File directory;
+    private final long indexTtlMillis;
+    private final long maxBlobIdleMillis;
+    private File blobDirectory;
+    private File indexDirectory;
+
+    /**
+     * The reflective, field-based constructor for JSON/Yaml field-based bean access.
+     */
+    private ArtifactCache() {
+        directory = null;
+        indexTtlMillis = DEFAULT_INDEX_TTL_MILLIS;
+        maxBlobIdleMillis = DEFAULT_MAX_BLOB_IDLE_MILLIS;
+    }
+
+    public ArtifactCache(@NotNull File directory) {
+        this(directory, DEFAULT_INDEX_TTL_MILLIS);
+    }
+
+    public ArtifactCache(@NotNull File directory, long indexTtlMillis) {
+        this(directory, indexTtlMillis, DEFAULT_MAX_BLOB_IDLE_MILLIS);
+    }
+
+    /**
+     * @param directory         The cache directory
+     * @param indexTtlMillis    The time an artifact with no declared checksum is reused for
+     *                          before being downloaded again
+     * @param maxBlobIdleMillis The time an unreferenced blob is kept since last used
+     */
+    public ArtifactCache(@NotNull File directory, long indexTtlMillis, long maxBlobIdleMillis) {
+        this.directory = directory;
+        this.indexTtlMillis = indexTtlMillis;
+        this.maxBlobIdleMillis = maxBlobIdleMillis;
+        initialize();
+    }
+
+    /**
+     * Retrieve the blob holding the contents of the given URL, downloading it if needed.
+     *
+     * @param urlLocation The artifact URL
+     * @param checksum    The (optional) expected checksum as <code>sha256:hex</code> or bare hex
+     * @param opener      The input stream opener
+     * @param refresh     Whether to download again an artifact with no declared checksum, even
+     *                    if its index entry hasn't expired yet
+     * @return The (read-only) blob file
+     * @throws IllegalArgumentException if the download fails or doesn't match the checksum
+     */
+    public File fetch(@NotNull String urlLocation,
+                      @Null String checksum,
+                      @NotNull InputStreamOpener opener,
+                      boolean refresh) {
+
+        checkNotNull(urlLocation, "Url cannot be null");
+        checkNotNull(opener, "Opener cannot be null");
+
+        final Optional<String> expectedHash =
+                Optional.ofNullable(checksum).map(ArtifactCache::toHash);
+
+        // A declared checksum identifies the blob by itself
+        if (expectedHash.isPresent()) {
+            File blob = blobFile(expectedHash.get());
+            if (blob.isFile()) {
+                logger.debug("Reusing blob '{}' for '{}'", blob.getName(), urlLocation);
+                return touch(blob);
+            }
+        } else if (!refresh) {
+            Optional<File> blob = indexedBlob(urlLocation, opener);
+            if (blob.isPresent()) {
+                logger.debug("Reusing indexed blob '{}' for '{}'", blob.get().getName(),
+                        urlLocation);
+                return touch(blob.get());
+            }
+        }
+
+        String hash = download(urlLocation, expectedHash, opener);
+        writeIndex(urlLocation, opener, hash);
+        return touch(blobFile(hash));
+    }
+
+    /**
+     * Delete the blobs neither referenced by an unexpired index entry nor used for longer than
+     * the maximum idle time, as well as expired index entries.
+     *
+     * @return The number of blobs deleted
+     */
+    public int sweep() {
+        long now = System.currentTimeMillis();
+
+        Set<String> referencedHashes = new HashSet<>();
+        File[] indexFiles = indexDirectory.listFiles(File::isFile);
+        for (File indexFile : indexFiles == null ? new File[0] : indexFiles) {
+            if (now - indexFile.lastModified() >= indexTtlMillis) {
+                logger.debug("Deleting expired index entry '{}'", indexFile.getName());
+                indexFile.delete();
+                continue;
+            }
+            try {
+                referencedHashes.add(
+                        new String(Files.readAllBytes(indexFile.toPath()), UTF_8).trim());
+            } catch (IOException e) {
+                logger.warn("Ignoring unreadable index entry '" + indexFile + "': " + e);
+            }
+        }
+
+        int deletedCount = 0;
+        File[] blobs = blobDirectory.listFiles(File::isFile);
+        for (File blob : blobs == null ? new File[0] : blobs) {
+            if (!referencedHashes.contains(blob.getName()) &&
+                    now - blob.lastModified() >= maxBlobIdleMillis) {
+                logger.debug("Deleting idle blob '{}'", blob.getName());
+                if (blob.delete()) {
+                    deletedCount++;
+                }
+            }
+        }
+        return deletedCount;
+    }
+
+    /**
+     * Place a cached blob at the given path, hard-linking it if possible and copying it
+     * otherwise.
+     *
+     * @param blob       The blob file
+     * @param targetFile The file to create
+     */
+    public static void linkOrCopy(@NotNull File blob, @NotNull File targetFile) {
+        try {
+            Files.deleteIfExists(targetFile.toPath());
+            try {
+                Files.createLink(targetFile.toPath(), blob.toPath());
+            } catch (UnsupportedOperationException | IOException e) {
+                logger.debug("Copying blob '{}' as it can't be linked: {}", blob, e.toString());
+                Files.copy(blob.toPath(), targetFile.toPath(), REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            String errorMessage = "Error creating '" + targetFile + "' from '" + blob + "': " + e;
+            logger.error(errorMessage, e);
+            throw new IllegalArgumentException(errorMessage, e);
+        }
+    }
+
+    /**
+     * Determine whether the given file matches the given checksum.
+     *
+     * @param file     The file to verify
+     * @param checksum The checksum as <code>sha256:hex</code> or bare hex
+     * @return Whether the file's SHA-256 hash matches
+     */
+    public static boolean verify(@NotNull File file, @NotNull String checksum) {
+        try {
+            return com.google.common.io.Files.asByteSource(file)
+                    .hash(Hashing.sha256()).toString().equals(toHash(checksum));
+        } catch (IOException e) {
+            logger.warn("Error verifying '" + file + "': " + e);
+            return false;
+        }
+    }
+
+    private String download(@NotNull String urlLocation,
+                            @NotNull Optional<String> expectedHash,
+                            @NotNull InputStreamOpener opener) {
+
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile("download-", ".tmp", blobDirectory);
+
+            final String hash;
+            InputStream urlStream = opener.openInputStream(urlLocation);
+            try (HashingInputStream in = new HashingInputStream(Hashing.sha256(), urlStream);
+                 OutputStream out = Files.newOutputStream(tempFile.toPath())) {
+                logger.debug("Downloading '{}'", urlLocation);
+                ByteStreams.copy(in, out);
+                hash = in.hash().toString();
+            }
+
+            if (expectedHash.isPresent() && !expectedHash.get().equals(hash)) {
+                String errorMessage = "Checksum mismatch for '" + urlLocation + "': expected " +
+                        expectedHash.get() + ", got " + hash;
+                logger.error(errorMessage);
+                throw new IllegalArgumentException(errorMessage);
+            }
+
+            File blob = blobFile(hash);
+            try {
+                Files.move(tempFile.toPath(), blob.toPath(), ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Concurrently downloaded: the contents are identical
+            }
+            blob.setReadOnly();
+
+            return hash;
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            String errorMessage = "Error downloading '" + urlLocation + "': " + e;
+            logger.error(errorMessage, e);
+            throw new IllegalArgumentException(errorMessage, e);
+        } finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private Optional<File> indexedBlob(@NotNull String urlLocation,
+                                       @NotNull InputStreamOpener opener) {
+        File indexFile = indexFile(urlLocation, opener);
+        if (!indexFile.isFile()) {
+            return Optional.empty();
+        }
+        if (System.currentTimeMillis() - indexFile.lastModified() >= indexTtlMillis) {
+            logger.debug("Index entry for '{}' expired", urlLocation);
+            return Optional.empty();
+        }
+
+        try {
+            File blob = blobFile(new String(Files.readAllBytes(indexFile.toPath()), UTF_8).trim());
+            return blob.isFile() ? Optional.of(blob) : Optional.empty();
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable index entry for '" + urlLocation + "': " + e);
+            return Optional.empty();
+        }
+    }
+
+    private void writeIndex(@NotNull String urlLocation,
+                            @NotNull InputStreamOpener opener,
+                            @NotNull String hash) {
+        File indexFile = indexFile(urlLocation, opener);
+        try {
+            File tempFile = File.createTempFile("index-", ".tmp", indexDirectory);
+            Files.write(tempFile.toPath(), hash.getBytes(UTF_8));
+            Files.move(tempFile.toPath(), indexFile.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Error indexing '" + urlLocation + "': " + e);
+        }
+    }
+
+    private File blobFile(@NotNull String hash) {
+        return new File(blobDirectory, hash);
+    }
+
+    private File indexFile(@NotNull String urlLocation, @NotNull InputStreamOpener opener) {
+        return new File(indexDirectory, Hashing.sha256().newHasher()
+                .putString(opener.getIdentity(), UTF_8).putByte((byte) 0)
+                .putString(urlLocation, UTF_8)
+                .hash().toString());
+    }
+
+    /**
+     * Record the use of a blob: sweeping deletes unreferenced blobs by last use.
+     */
+    private static File touch(@NotNull File blob) {
+        if (!blob.setLastModified(System.currentTimeMillis())) {
+            logger.debug("Couldn't record use of blob '{}'", blob.getName());
+        }
+        return blob;
+    }
+
+    static String toHash(@NotNull String checksum) {
+        String hash = checksum.trim().toLowerCase(Locale.ROOT);
+        if (hash.startsWith(CHECKSUM_PREFIX)) {
+            hash = hash.substring(CHECKSUM_PREFIX.length());
+        }
+        checkArgument(hash.matches("^[0-9a-f]{64}$"), "Invalid SHA-256 checksum: " + checksum);
+        return hash;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getIndexTtlMillis() {
+        return indexTtlMillis;
+    }
+
+    public long getMaxBlobIdleMillis() {
+        return maxBlobIdleMillis;
+    }
+
+    @Override
+    public void initialize() {
+        checkNotNull(directory, "Directory cannot be null");
+        checkArgument(indexTtlMillis >= 0, "Index time-to-live cannot be negative");
+        checkArgument(maxBlobIdleMillis >= 0, "Max blob idle time cannot be negative");
+
+        blobDirectory = new File(directory, BLOB_DIRECTORY_NAME);
+        indexDirectory = new File(directory, INDEX_DIRECTORY_NAME);
+        checkArgument(isValidDirectory(blobDirectory), "Invalid blob directory: " + blobDirectory);
+        checkArgument(isValidDirectory(indexDirectory),
+                "Invalid index directory: " + indexDirectory);
+
+        int deletedCount = sweep();
+        if (deletedCount > 0) {
+            logger.info("Deleted " + deletedCount + " idle blobs from '" + blobDirectory + "'");
+        }
+    }
+}
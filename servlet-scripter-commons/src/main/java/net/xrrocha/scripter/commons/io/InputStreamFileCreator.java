@@ -5,9 +5,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
 import java.io.File;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.util.Optional;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -15,7 +17,9 @@ import static net.xrrocha.scripter.commons.io.FileUtils.copyToFile;
 import static net.xrrocha.scripter.commons.io.FileUtils.isValidDirectory;
 
 /**
- * Creates a local file from URL contents.
+ * Creates a local file from URL contents. An optional SHA-256 <code>checksum</code> (as
+ * <code>sha256:hex</code>) verifies the contents and lets an @see{ArtifactCache} serve them
+ * without downloading.
  */
 public class InputStreamFileCreator implements Initializable, Serializable {
 
@@ -23,6 +27,7 @@ public class InputStreamFileCreator implements Initializable, Serializable {
     private final String filePath;
     private final String urlLocation;
     private final boolean recreate;
+    private final String checksum;
 
     /**
      * The reflective, field-based constructor for JSON/Yaml field-based bean access.
@@ -31,6 +36,7 @@ public class InputStreamFileCreator implements Initializable, Serializable {
         filePath = null;
         urlLocation = null;
         recreate = false;
+        checksum = null;
     }
 
     public InputStreamFileCreator(@NotNull String filePath,
@@ -41,10 +47,18 @@ public class InputStreamFileCreator implements Initializable, Serializable {
     public InputStreamFileCreator(@NotNull String filePath,
                                   @NotNull String urlLocation,
                                   boolean recreate) {
+        this(filePath, urlLocation, recreate, null);
+    }
+
+    public InputStreamFileCreator(@NotNull String filePath,
+                                  @NotNull String urlLocation,
+                                  boolean recreate,
+                                  @Null String checksum) {
 
         this.filePath = filePath;
         this.urlLocation = urlLocation;
         this.recreate = recreate;
+        this.checksum = checksum;
 
         initialize();
     }
@@ -57,13 +71,29 @@ public class InputStreamFileCreator implements Initializable, Serializable {
      * @return The newly created file populated from the input stream
      */
     public File createFile(@NotNull File directory, @NotNull InputStreamOpener opener) {
+        return createFile(directory, opener, null);
+    }
+
+    /**
+     * Creates a local file from <code>InputStream</code> contents, reusing the contents cached
+     * for the same URL or checksum, if any.
+     *
+     * @param directory     The directory under which to create files
+     * @param opener        The input stream opener
+     * @param artifactCache The (optional) artifact cache
+     * @return The newly created file populated from the input stream
+     */
+    public File createFile(@NotNull File directory,
+                           @NotNull InputStreamOpener opener,
+                           @Null ArtifactCache artifactCache) {
 
         checkArgument(isValidDirectory(directory),
                 "Bad base directory: null, non-existent or not a directory");
 
         File targetFile = new File(directory, filePath);
 
-        if (targetFile.isFile() && targetFile.canRead() && !recreate) {
+        if (targetFile.isFile() && targetFile.canRead() && !recreate &&
+                (checksum == null || ArtifactCache.verify(targetFile, checksum))) {
             logger.debug("Skipping existing file: {}", targetFile);
         } else {
 
@@ -82,20 +112,53 @@ public class InputStreamFileCreator implements Initializable, Serializable {
                 throw new IllegalArgumentException(errorMessage);
             }
 
+            if (artifactCache != null) {
+                File blob = artifactCache.fetch(urlLocation, checksum, opener, recreate);
+                logger.debug("Creating new file: '{}' from blob '{}'", targetFile, blob.getName());
+                ArtifactCache.linkOrCopy(blob, targetFile);
+                return targetFile;
+            }
+
             try (InputStream is = opener.openInputStream(urlLocation)) {
                 logger.debug("Creating new file: '{}' from '{}'", targetFile, urlLocation);
                 copyToFile(is, targetFile);
             } catch (Exception e) {
                 throw new IllegalArgumentException(e);
             }
+
+            if (checksum != null && !ArtifactCache.verify(targetFile, checksum)) {
+                targetFile.delete();
+                String errorMessage = "Checksum mismatch for '" + urlLocation + "'";
+                logger.error(errorMessage);
+                throw new IllegalArgumentException(errorMessage);
+            }
         }
 
         return targetFile;
     }
 
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public String getUrlLocation() {
+        return urlLocation;
+    }
+
+    public boolean isRecreate() {
+        return recreate;
+    }
+
+    public Optional<String> getChecksum() {
+        return Optional.ofNullable(checksum);
+    }
+
     @Override
     public void initialize() {
         checkNotNull(filePath, "Path cannot be null");
         checkNotNull(urlLocation, "Url cannot be null");
+        if (checksum != null) {
+            ArtifactCache.toHash(checksum);
+        }
     }
 }
@@ -16,4 +16,14 @@ public interface InputStreamOpener {
      * @return The <code>InputStream</code> containing the resource contents
      */
     InputStream openInputStream(@NotNull String location);
+
+    /**
+     * Identify the source this opener reads from, so that the same location opened through
+     * differently configured openers isn't mistaken for the same contents.
+     *
+     * @return The opener identity (by default, its class name)
+     */
+    default String getIdentity() {
+        return getClass().getName();
+    }
 }
@@ -52,6 +52,15 @@ public class ResourceInputStreamOpener implements InputStreamOpener, Initializab
         }
     }
 
+    /**
+     * Resources are relative to the class loader: openers on different class loaders differ.
+     */
+    @Override
+    public String getIdentity() {
+        return getClass().getName() + "@" +
+                Integer.toHexString(System.identityHashCode(classLoader));
+    }
+
     @Override
     public void initialize() {
         checkNotNull(classLoader, "Class loader cannot be null");
@@ -68,6 +68,11 @@ public class S3InputStreamOpener implements InputStreamOpener, Initializable, Se
         }
     }
 
+    @Override
+    public String getIdentity() {
+        return getClass().getName() + ":" + region + ":" + credentials.getAWSAccessKeyId();
+    }
+
     @Override
     public void initialize() {
         checkNotNull(region, "Region cannot be null");
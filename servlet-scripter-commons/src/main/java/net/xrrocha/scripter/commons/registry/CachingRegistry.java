@@ -56,6 +56,28 @@ public class CachingRegistry<K, V> implements Registry<K, V>, Initializable, Ser
         return previousValue;
     }
 
+    @Override
+    public void put(@NotNull K key, @NotNull V value) {
+
+        logger.debug("Putting '" + key + "' with '" + value + "'");
+
+        if (cache.containsKey(key) && value.equals(cache.get(key))) {
+            return;
+        }
+
+        delegate.put(key, value);
+        cache.put(key, value);
+    }
+
+    @Override
+    public void remove(@NotNull K key) {
+
+        logger.debug("Removing '" + key + "'");
+
+        cache.remove(key);
+        delegate.remove(key);
+    }
+
     @Override
     public Optional<V> deregister(@NotNull K key) {
 
@@ -64,6 +64,22 @@ public class ConvertingRegistry<K1, V1, K2, V2>
                 .map(valueConverter.reverse()::convert);
     }
 
+    /**
+     * Register a value without converting the value it replaces back to the exposed type.
+     */
+    @Override
+    public void put(@NotNull K1 key, @NotNull V1 value) {
+        delegate.put(keyConverter.convert(key), valueConverter.convert(value));
+    }
+
+    /**
+     * Deregister a value without converting it back to the exposed type.
+     */
+    @Override
+    public void remove(@NotNull K1 key) {
+        delegate.remove(keyConverter.convert(key));
+    }
+
     @Override
     public Iterable<Entry<K1, V1>> list() {
 
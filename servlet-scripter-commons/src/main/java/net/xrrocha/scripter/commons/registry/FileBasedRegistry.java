@@ -92,6 +92,49 @@ public class FileBasedRegistry
         }
     }
 
+    /**
+     * Write the given contents without reading the file being replaced, if any.
+     */
+    @Override
+    public void put(@NotNull String filename, @NotNull String contents) {
+        checkNotNull(filename, "Filename cannot be null");
+        checkNotNull(contents, "Contents cannot be null");
+        checkArgument(filenamePattern.matcher(filename).matches(),
+                "Invalid filename: " + filename);
+
+        logger.debug("Putting '" + filename + "' with '" + contents + "'");
+
+        File file = new File(directory, filename);
+
+        try {
+            Files.write(file.toPath(), contents.getBytes());
+        } catch (Exception e) {
+            String errorMessage = "Error creating file '" + filename + "': " + e;
+            logger.error(errorMessage, e);
+            throw new IllegalArgumentException(errorMessage, e);
+        }
+    }
+
+    /**
+     * Delete the given file without reading its contents.
+     */
+    @Override
+    public void remove(@NotNull String filename) {
+        checkNotNull(filename, "Filename cannot be null");
+        checkArgument(defaultFilenamePattern.matcher(filename).matches(),
+                "Invalid filename: " + filename);
+
+        logger.debug("Removing '" + filename + "'");
+
+        File file = new File(directory, filename);
+
+        if (file.exists() && !file.delete()) {
+            String errorMessage = "Can't delete file '" + filename + "'";
+            logger.error(errorMessage);
+            throw new IllegalArgumentException(errorMessage);
+        }
+    }
+
     @Override
     public Optional<String> deregister(@NotNull String filename) {
         checkNotNull(filename, "Filename cannot be null");
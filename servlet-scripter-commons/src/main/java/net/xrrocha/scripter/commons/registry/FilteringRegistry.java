@@ -0,0 +1,77 @@
+package net.xrrocha.scripter.commons.registry;
+
+import net.xrrocha.scripter.commons.Initializable;
+
+import javax.validation.constraints.NotNull;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Read-filtered view of another @see{Registry}: only keys satisfying the given predicate are
+ * visible through <code>lookup</code> and <code>list</code>. Updates pass through unfiltered.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class FilteringRegistry<K, V> implements Registry<K, V>, Initializable {
+
+    private final Registry<K, V> delegate;
+    private final Predicate<K> keyFilter;
+
+    /**
+     * The reflective, field-based constructor for JSON/Yaml field-based bean access.
+     */
+    private FilteringRegistry() {
+        delegate = null;
+        keyFilter = null;
+    }
+
+    public FilteringRegistry(@NotNull Registry<K, V> delegate, @NotNull Predicate<K> keyFilter) {
+        this.delegate = delegate;
+        this.keyFilter = keyFilter;
+        initialize();
+    }
+
+    @Override
+    public Optional<V> register(@NotNull K key, @NotNull V value) {
+        return delegate.register(key, value);
+    }
+
+    @Override
+    public void put(@NotNull K key, @NotNull V value) {
+        delegate.put(key, value);
+    }
+
+    @Override
+    public Optional<V> deregister(@NotNull K key) {
+        return delegate.deregister(key);
+    }
+
+    @Override
+    public void remove(@NotNull K key) {
+        delegate.remove(key);
+    }
+
+    @Override
+    public Optional<V> lookup(@NotNull K key) {
+        return keyFilter.test(key) ? delegate.lookup(key) : Optional.empty();
+    }
+
+    @Override
+    public Iterable<Entry<K, V>> list() {
+        return StreamSupport.stream(delegate.list().spliterator(), false)
+                .filter(entry -> keyFilter.test(entry.getKey()))
+                .collect(toList());
+    }
+
+    @Override
+    public void initialize() {
+        checkNotNull(delegate, "Delegate cannot be null");
+        checkNotNull(keyFilter, "Key filter cannot be null");
+    }
+}
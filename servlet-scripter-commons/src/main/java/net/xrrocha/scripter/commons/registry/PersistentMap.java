@@ -0,0 +1,108 @@
+package net.xrrocha.scripter.commons.registry;
+
+import com.google.common.collect.ImmutableMap;
+
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map.Entry;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable, structure-sharing hash map. Keys are spread over a fixed number of immutable
+ * buckets so that an update copies only the affected bucket and the (small) bucket array while
+ * all other buckets are shared with the originating map.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+final class PersistentMap<K, V> implements Serializable {
+
+    private static final int BUCKET_COUNT = 64;
+
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(emptyBuckets(), 0);
+
+    private final ImmutableMap<K, V>[] buckets;
+    private final int size;
+
+    private PersistentMap(@NotNull ImmutableMap<K, V>[] buckets, int size) {
+        this.buckets = buckets;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    V get(@NotNull K key) {
+        checkNotNull(key, "Key cannot be null");
+        return buckets[indexOf(key)].get(key);
+    }
+
+    PersistentMap<K, V> with(@NotNull K key, @NotNull V value) {
+        checkNotNull(key, "Key cannot be null");
+        checkNotNull(value, "Value cannot be null");
+
+        int index = indexOf(key);
+        ImmutableMap<K, V> bucket = buckets[index];
+
+        ImmutableMap.Builder<K, V> builder = ImmutableMap.builder();
+        bucket.forEach((bucketKey, bucketValue) -> {
+            if (!bucketKey.equals(key)) {
+                builder.put(bucketKey, bucketValue);
+            }
+        });
+        builder.put(key, value);
+
+        int newSize = bucket.containsKey(key) ? size : size + 1;
+        return new PersistentMap<>(replaceBucket(index, builder.build()), newSize);
+    }
+
+    PersistentMap<K, V> without(@NotNull K key) {
+        checkNotNull(key, "Key cannot be null");
+
+        int index = indexOf(key);
+        ImmutableMap<K, V> bucket = buckets[index];
+        if (!bucket.containsKey(key)) {
+            return this;
+        }
+
+        ImmutableMap.Builder<K, V> builder = ImmutableMap.builder();
+        bucket.forEach((bucketKey, bucketValue) -> {
+            if (!bucketKey.equals(key)) {
+                builder.put(bucketKey, bucketValue);
+            }
+        });
+
+        return new PersistentMap<>(replaceBucket(index, builder.build()), size - 1);
+    }
+
+    Stream<Entry<K, V>> entries() {
+        return Arrays.stream(buckets).flatMap(bucket -> bucket.entrySet().stream());
+    }
+
+    int size() {
+        return size;
+    }
+
+    private ImmutableMap<K, V>[] replaceBucket(int index, @NotNull ImmutableMap<K, V> bucket) {
+        ImmutableMap<K, V>[] newBuckets = Arrays.copyOf(buckets, buckets.length);
+        newBuckets[index] = bucket;
+        return newBuckets;
+    }
+
+    private int indexOf(@NotNull K key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (BUCKET_COUNT - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> ImmutableMap<K, V>[] emptyBuckets() {
+        ImmutableMap<K, V>[] buckets = (ImmutableMap<K, V>[]) new ImmutableMap[BUCKET_COUNT];
+        Arrays.fill(buckets, ImmutableMap.of());
+        return buckets;
+    }
+}
@@ -44,5 +44,26 @@ public interface Registry<K, V> {
      */
     Iterable<Entry<K, V>> list();
 
+    /**
+     * Register a value without retrieving the value it replaces, if any. Implementations for which
+     * materializing the previous value is expensive (such as converting or file-based registries)
+     * should override this.
+     *
+     * @param key   The key to be registered
+     * @param value The value to be registered
+     * @throws NullPointerException if the key or value are <code>null</code>
+     */
+    default void put(@NotNull K key, @NotNull V value) {
+        register(key, value);
+    }
+
+    /**
+     * Deregister a value without retrieving it.
+     *
+     * @param key The value key to be deregistered
+     */
+    default void remove(@NotNull K key) {
+        deregister(key);
+    }
 }
 
@@ -0,0 +1,267 @@
+package net.xrrocha.scripter.commons.registry;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.xrrocha.scripter.commons.Initializable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.NotNull;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Filesystem-based <code>String</code> key/value store spread over several directories, each one
+ * managed by its own @see{FileBasedRegistry}. Keys are assigned to shards by consistent hashing
+ * so that directories stay small for very large catalogs; shard directories may reside on
+ * different disks. Listing reads all shards in parallel on threads owned by the registry, which
+ * expire when idle.
+ * <p>
+ * Upon startup, files found in a shard other than the one their key hashes to (as left by a
+ * previous shard count) are moved into their current shard.
+ */
+public class ShardedRegistry
+        implements Registry<String, String>, Initializable, AutoCloseable, Serializable {
+
+    public static final String SHARD_DIRECTORY_FORMAT = "shard-%02d";
+    private static final int MAX_LISTING_THREADS = 16;
+    private static final long LISTING_THREAD_KEEP_ALIVE_SECONDS = 60L;
+    private static final Pattern SHARD_DIRECTORY_PATTERN = Pattern.compile("^shard-\\d+$");
+
+    private final File baseDirectory;
+    private final List<File> directories;
+    private final String filenameRegex;
+    private final Logger logger = LoggerFactory.getLogger(ShardedRegistry.class);
+    private List<FileBasedRegistry> shards;
+    private ExecutorService listingExecutor;
+
+    /**
+     * The reflective, field-based constructor for JSON/Yaml field-based bean access.
+     */
+    private ShardedRegistry() {
+        baseDirectory = null;
+        directories = null;
+        filenameRegex = null;
+    }
+
+    /**
+     * Shard under <code>shardCount</code> subdirectories of the given base directory. Files
+     * found directly under the base directory (as left by an unsharded registry) or under shard
+     * subdirectories beyond <code>shardCount</code> (as left by a larger shard count) are moved
+     * into their shard.
+     *
+     * @param baseDirectory The directory to create shard subdirectories under
+     * @param shardCount    The number of shards
+     * @param filenameRegex The (optional) regex all keys must match
+     */
+    public ShardedRegistry(@NotNull File baseDirectory, int shardCount, String filenameRegex) {
+        checkNotNull(baseDirectory, "Base directory cannot be null");
+        checkArgument(shardCount > 0, "Shard count must be positive");
+        this.baseDirectory = baseDirectory;
+        this.directories = IntStream.range(0, shardCount)
+                .mapToObj(index ->
+                        new File(baseDirectory, String.format(SHARD_DIRECTORY_FORMAT, index)))
+                .collect(toList());
+        this.filenameRegex = filenameRegex;
+        initialize();
+    }
+
+    /**
+     * Shard over the given, possibly unrelated, directories.
+     *
+     * @param directories   The shard directories
+     * @param filenameRegex The (optional) regex all keys must match
+     */
+    public ShardedRegistry(@NotNull List<File> directories, String filenameRegex) {
+        this.baseDirectory = null;
+        this.directories = directories;
+        this.filenameRegex = filenameRegex;
+        initialize();
+    }
+
+    @Override
+    public Optional<String> register(@NotNull String filename, @NotNull String contents) {
+        return shardFor(filename).register(filename, contents);
+    }
+
+    @Override
+    public void put(@NotNull String filename, @NotNull String contents) {
+        shardFor(filename).put(filename, contents);
+    }
+
+    @Override
+    public Optional<String> deregister(@NotNull String filename) {
+        return shardFor(filename).deregister(filename);
+    }
+
+    @Override
+    public void remove(@NotNull String filename) {
+        shardFor(filename).remove(filename);
+    }
+
+    @Override
+    public Optional<String> lookup(@NotNull String filename) {
+        return shardFor(filename).lookup(filename);
+    }
+
+    @Override
+    public Iterable<Entry<String, String>> list() {
+
+        List<CompletableFuture<List<Entry<String, String>>>> futures = shards.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() ->
+                        StreamSupport.stream(shard.list().spliterator(), false)
+                                .collect(toList()), listingExecutor))
+                .collect(toList());
+
+        List<Entry<String, String>> entries = new ArrayList<>();
+        futures.forEach(future -> entries.addAll(future.join()));
+
+        logger.debug("Listing " + entries.size() + " files in " + shards.size() + " shards");
+
+        return entries;
+    }
+
+    FileBasedRegistry shardFor(@NotNull String filename) {
+        checkNotNull(filename, "Filename cannot be null");
+        int index = Hashing.consistentHash(Hashing.murmur3_32().hashString(filename, UTF_8),
+                shards.size());
+        return shards.get(index);
+    }
+
+    /**
+     * Shut down the listing threads; listing afterwards fails.
+     */
+    @Override
+    public void close() {
+        listingExecutor.shutdownNow();
+    }
+
+    @Override
+    public void initialize() {
+        checkNotNull(directories, "Directories cannot be null");
+        checkArgument(!directories.isEmpty(), "Directories cannot be empty");
+        checkArgument(directories.stream().allMatch(Objects::nonNull),
+                "One or more directories is null");
+
+        shards = directories.stream()
+                .map(directory -> new FileBasedRegistry(directory, filenameRegex))
+                .collect(toList());
+
+        if (baseDirectory != null) {
+            migrateUnshardedFiles();
+            rehashShardedFiles(staleShardDirectories());
+        }
+        rehashShardedFiles(directories);
+
+        int listingThreads = Math.min(shards.size(), MAX_LISTING_THREADS);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(listingThreads, listingThreads,
+                LISTING_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("sharded-registry-listing-%d")
+                        .setDaemon(true)
+                        .build());
+        executor.allowCoreThreadTimeOut(true);
+        listingExecutor = executor;
+    }
+
+    void migrateUnshardedFiles() {
+
+        File[] files = baseDirectory.listFiles(File::isFile);
+        if (files == null) {
+            String errorMessage = "Error listing files under '" + baseDirectory + "'";
+            logger.error(errorMessage);
+            throw new IllegalArgumentException(errorMessage);
+        }
+
+        Pattern filenamePattern = Pattern.compile(
+                filenameRegex == null ? FileBasedRegistry.DEFAULT_FILENAME_REGEX : filenameRegex);
+
+        for (File file : files) {
+            if (!filenamePattern.matcher(file.getName()).matches()) {
+                continue;
+            }
+
+            File shardFile = new File(shardFor(file.getName()).getDirectory(), file.getName());
+            logger.info("Moving unsharded file '" + file + "' to '" + shardFile + "'");
+            moveFile(file, shardFile);
+        }
+    }
+
+    /**
+     * Move files sitting in the wrong shard (because the shard count changed since they were
+     * written) into the shard their key currently hashes to. A key present in both shards is
+     * rejected rather than silently overwritten.
+     *
+     * @param shardDirectories The directories to look for misplaced files in
+     */
+    void rehashShardedFiles(@NotNull List<File> shardDirectories) {
+
+        Pattern filenamePattern = Pattern.compile(
+                filenameRegex == null ? FileBasedRegistry.DEFAULT_FILENAME_REGEX : filenameRegex);
+
+        for (File directory : shardDirectories) {
+            File[] files = directory.listFiles(File::isFile);
+            if (files == null) {
+                continue;
+            }
+
+            for (File file : files) {
+                if (!filenamePattern.matcher(file.getName()).matches()) {
+                    continue;
+                }
+
+                File shardDirectory = shardFor(file.getName()).getDirectory();
+                if (!shardDirectory.equals(directory)) {
+                    File shardFile = new File(shardDirectory, file.getName());
+                    logger.info("Moving resharded file '" + file + "' to '" + shardFile + "'");
+                    moveFile(file, shardFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieve the shard subdirectories of the base directory left over by a larger shard count.
+     */
+    private List<File> staleShardDirectories() {
+        File[] shardDirectories = baseDirectory.listFiles(file -> file.isDirectory() &&
+                SHARD_DIRECTORY_PATTERN.matcher(file.getName()).matches() &&
+                !directories.contains(file));
+        return shardDirectories == null ? new ArrayList<>() : Arrays.asList(shardDirectories);
+    }
+
+    private void moveFile(@NotNull File file, @NotNull File shardFile) {
+        try {
+            Files.move(file.toPath(), shardFile.toPath());
+        } catch (IOException e) {
+            String errorMessage = "Error moving file '" + file + "': " + e;
+            logger.error(errorMessage, e);
+            throw new IllegalArgumentException(errorMessage, e);
+        }
+    }
+
+    public List<File> getDirectories() {
+        return directories;
+    }
+}
@@ -0,0 +1,353 @@
+package net.xrrocha.scripter.commons.registry;
+
+import net.xrrocha.scripter.commons.Initializable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.io.Serializable;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * In-memory, versioned implementation of @see{Registry}. Up to <code>maxVersions</code> values
+ * are retained per key so that a key can be rolled back to a previously registered value without
+ * having to re-create it.
+ * <p>
+ * All state lives in a single immutable, structure-sharing snapshot swapped atomically on each
+ * update: readers never lock and always observe a consistent, point-in-time view. Updates are
+ * serialized among themselves and written through to the delegate registry, which only ever
+ * holds the current value of each key.
+ * <p>
+ * Values dropping out of the registry (because they exceed <code>maxVersions</code>, are rolled
+ * back from or are deregistered) are handed to an optional eviction listener once they are no
+ * longer reachable from the current snapshot.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class VersionedRegistry<K, V> implements Registry<K, V>, Initializable, Serializable {
+
+    public static final int DEFAULT_MAX_VERSIONS = 4;
+
+    private final Registry<K, V> delegate;
+    private final int maxVersions;
+    private final Consumer<V> evictionListener;
+    private final AtomicReference<Snapshot<K, V>> currentSnapshot =
+            new AtomicReference<>(new Snapshot<>(PersistentMap.empty()));
+
+    private final Logger logger = LoggerFactory.getLogger(VersionedRegistry.class);
+
+    /**
+     * The reflective, field-based constructor for JSON/Yaml field-based bean access.
+     */
+    private VersionedRegistry() {
+        delegate = null;
+        maxVersions = DEFAULT_MAX_VERSIONS;
+        evictionListener = null;
+    }
+
+    public VersionedRegistry(@NotNull Registry<K, V> delegate) {
+        this(delegate, DEFAULT_MAX_VERSIONS);
+    }
+
+    public VersionedRegistry(@NotNull Registry<K, V> delegate, int maxVersions) {
+        this(delegate, maxVersions, null);
+    }
+
+    public VersionedRegistry(@NotNull Registry<K, V> delegate,
+                             int maxVersions,
+                             @Null Consumer<V> evictionListener) {
+        this.delegate = delegate;
+        this.maxVersions = maxVersions;
+        this.evictionListener = evictionListener;
+        initialize();
+    }
+
+    @Override
+    public Optional<V> register(@NotNull K key, @NotNull V value) {
+        checkNotNull(key, "Key cannot be null");
+        checkNotNull(value, "Value cannot be null");
+
+        logger.debug("Registering '" + key + "' with '" + value + "'");
+
+        final Optional<V> previousValue;
+        final List<V> evictedValues;
+        synchronized (currentSnapshot) {
+            Snapshot<K, V> snapshot = currentSnapshot.get();
+            previousValue = snapshot.lookup(key);
+            if (previousValue.isPresent() && previousValue.get().equals(value)) {
+                return previousValue;
+            }
+
+            delegate.put(key, value);
+            Snapshot<K, V> newSnapshot =
+                    snapshot.with(key, new Versions<>(value, snapshot.versionsOf(key))
+                            .truncate(maxVersions));
+            currentSnapshot.set(newSnapshot);
+
+            evictedValues = evictedValues(key, snapshot, newSnapshot);
+        }
+        notifyEviction(evictedValues);
+
+        return previousValue;
+    }
+
+    @Override
+    public void put(@NotNull K key, @NotNull V value) {
+        register(key, value);
+    }
+
+    @Override
+    public Optional<V> deregister(@NotNull K key) {
+        checkNotNull(key, "Key cannot be null");
+
+        logger.debug("Deregistering '" + key + "'");
+
+        final Optional<V> previousValue;
+        final List<V> evictedValues;
+        synchronized (currentSnapshot) {
+            Snapshot<K, V> snapshot = currentSnapshot.get();
+            delegate.remove(key);
+            Snapshot<K, V> newSnapshot = snapshot.without(key);
+            currentSnapshot.set(newSnapshot);
+
+            previousValue = snapshot.lookup(key);
+            evictedValues = evictedValues(key, snapshot, newSnapshot);
+        }
+        notifyEviction(evictedValues);
+
+        return previousValue;
+    }
+
+    @Override
+    public void remove(@NotNull K key) {
+        deregister(key);
+    }
+
+    @Override
+    public Optional<V> lookup(@NotNull K key) {
+        return currentSnapshot.get().lookup(key);
+    }
+
+    @Override
+    public Iterable<Entry<K, V>> list() {
+        return currentSnapshot.get().list();
+    }
+
+    /**
+     * Reinstate the value registered immediately before the current one. The current value is
+     * discarded and the reinstated one is written through to the delegate registry.
+     *
+     * @param key The key to roll back
+     * @return The reinstated value or empty if no previous version is retained
+     */
+    public Optional<V> rollback(@NotNull K key) {
+        checkNotNull(key, "Key cannot be null");
+
+        logger.debug("Rolling back '" + key + "'");
+
+        final V reinstatedValue;
+        final List<V> evictedValues;
+        synchronized (currentSnapshot) {
+            Snapshot<K, V> snapshot = currentSnapshot.get();
+            Versions<V> versions = snapshot.versionsOf(key);
+            if (versions == null || versions.previous == null) {
+                return Optional.empty();
+            }
+
+            reinstatedValue = versions.previous.value;
+            delegate.put(key, reinstatedValue);
+            Snapshot<K, V> newSnapshot = snapshot.with(key, versions.previous);
+            currentSnapshot.set(newSnapshot);
+
+            evictedValues = evictedValues(key, snapshot, newSnapshot);
+        }
+        notifyEviction(evictedValues);
+
+        return Optional.of(reinstatedValue);
+    }
+
+    /**
+     * Record a change already applied to the delegate registry (for instance, replicated from
+     * another node) without writing it through.
+     *
+     * @param key   The changed key
+     * @param value The new value or <code>null</code> if the key was deregistered
+     */
+    public void refresh(@NotNull K key, @Null V value) {
+        checkNotNull(key, "Key cannot be null");
+
+        logger.debug("Refreshing '" + key + "'");
+
+        final List<V> evictedValues;
+        synchronized (currentSnapshot) {
+            Snapshot<K, V> snapshot = currentSnapshot.get();
+            Snapshot<K, V> newSnapshot;
+            if (value == null) {
+                newSnapshot = snapshot.without(key);
+            } else {
+                newSnapshot = snapshot.with(key, new Versions<>(value, snapshot.versionsOf(key))
+                        .truncate(maxVersions));
+            }
+            currentSnapshot.set(newSnapshot);
+
+            evictedValues = evictedValues(key, snapshot, newSnapshot);
+        }
+        notifyEviction(evictedValues);
+    }
+
+    /**
+     * Retrieve a consistent, point-in-time view of this registry. Taking a snapshot is a single
+     * volatile read; the snapshot is unaffected by subsequent updates.
+     *
+     * @return The current snapshot
+     */
+    public Snapshot<K, V> snapshot() {
+        return currentSnapshot.get();
+    }
+
+    private List<V> evictedValues(@NotNull K key,
+                                  @NotNull Snapshot<K, V> oldSnapshot,
+                                  @NotNull Snapshot<K, V> newSnapshot) {
+        List<V> retainedValues = newSnapshot.versions(key);
+        return oldSnapshot.versions(key).stream()
+                .filter(value -> retainedValues.stream().noneMatch(retained -> retained == value))
+                .collect(toList());
+    }
+
+    private void notifyEviction(@NotNull List<V> evictedValues) {
+        if (evictionListener != null) {
+            evictedValues.forEach(value -> {
+                logger.debug("Evicting '" + value + "'");
+                evictionListener.accept(value);
+            });
+        }
+    }
+
+    @Override
+    public void initialize() {
+        checkNotNull(delegate, "Delegate can't be null");
+        checkArgument(maxVersions > 0, "Max versions must be positive");
+
+        // Pre-populate versions from delegate registry
+        Snapshot<K, V> snapshot = currentSnapshot.get();
+        for (Entry<K, V> entry : delegate.list()) {
+            snapshot = snapshot.with(entry.getKey(), new Versions<>(entry.getValue(), null));
+        }
+        currentSnapshot.set(snapshot);
+    }
+
+    /**
+     * Immutable, point-in-time view of a versioned registry.
+     *
+     * @param <K> The key type
+     * @param <V> The value type
+     */
+    public static final class Snapshot<K, V> implements Serializable {
+
+        private final PersistentMap<K, Versions<V>> versions;
+
+        private Snapshot(@NotNull PersistentMap<K, Versions<V>> versions) {
+            this.versions = versions;
+        }
+
+        /**
+         * Retrieve the current value for the given key.
+         *
+         * @param key The non-null value key
+         * @return The current value, if any
+         */
+        public Optional<V> lookup(@NotNull K key) {
+            return Optional.ofNullable(versionsOf(key)).map(keyVersions -> keyVersions.value);
+        }
+
+        /**
+         * Retrieve all retained values for the given key, most recent first.
+         *
+         * @param key The non-null value key
+         * @return The retained values, possibly empty
+         */
+        public List<V> versions(@NotNull K key) {
+            Versions<V> keyVersions = versionsOf(key);
+            if (keyVersions == null) {
+                return emptyList();
+            }
+
+            List<V> values = new ArrayList<>();
+            for (Versions<V> version = keyVersions; version != null; version = version.previous) {
+                values.add(version.value);
+            }
+            return values;
+        }
+
+        /**
+         * Retrieve all current key/value pairs.
+         *
+         * @return All current key/value pairs
+         */
+        public Iterable<Entry<K, V>> list() {
+            return versions.entries()
+                    .map(entry -> new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().value))
+                    .collect(toList());
+        }
+
+        public int size() {
+            return versions.size();
+        }
+
+        private Versions<V> versionsOf(@NotNull K key) {
+            return versions.get(key);
+        }
+
+        private Snapshot<K, V> with(@NotNull K key, @NotNull Versions<V> keyVersions) {
+            return new Snapshot<>(versions.with(key, keyVersions));
+        }
+
+        private Snapshot<K, V> without(@NotNull K key) {
+            return new Snapshot<>(versions.without(key));
+        }
+    }
+
+    /**
+     * Immutable, structure-sharing version history: each version points to its predecessor.
+     *
+     * @param <V> The value type
+     */
+    private static final class Versions<V> implements Serializable {
+
+        private final V value;
+        private final Versions<V> previous;
+
+        private Versions(@NotNull V value, Versions<V> previous) {
+            this.value = value;
+            this.previous = previous;
+        }
+
+        private Versions<V> truncate(int length) {
+            if (previous == null) {
+                return this;
+            }
+            if (length == 1) {
+                return new Versions<>(value, null);
+            }
+
+            Versions<V> truncatedPrevious = previous.truncate(length - 1);
+            if (truncatedPrevious == previous) {
+                return this;
+            }
+            return new Versions<>(value, truncatedPrevious);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package net.xrrocha.scripter.commons.registry.replication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * In-process @see{ReplicationTransport} connecting registries living in the same JVM, mainly for
+ * testing. Published events are retained and replayed to new subscribers.
+ * <p>
+ * Events are delivered on the given executor (synchronously on the publishing thread by default).
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class LoopbackReplicationTransport<K, V> implements ReplicationTransport<K, V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoopbackReplicationTransport.class);
+
+    private final Executor executor;
+    private final List<ReplicationEvent<K, V>> log = new ArrayList<>();
+    private final List<Consumer<ReplicationEvent<K, V>>> subscribers =
+            new CopyOnWriteArrayList<>();
+
+    public LoopbackReplicationTransport() {
+        this(Runnable::run);
+    }
+
+    public LoopbackReplicationTransport(@NotNull Executor executor) {
+        checkNotNull(executor, "Executor cannot be null");
+        this.executor = executor;
+    }
+
+    @Override
+    public void publish(@NotNull ReplicationEvent<K, V> event) {
+        checkNotNull(event, "Event cannot be null");
+
+        logger.debug("Publishing " + event);
+
+        synchronized (log) {
+            log.add(event);
+        }
+        subscribers.forEach(subscriber -> executor.execute(() -> subscriber.accept(event)));
+    }
+
+    @Override
+    public void subscribe(@NotNull Consumer<ReplicationEvent<K, V>> subscriber) {
+        checkNotNull(subscriber, "Subscriber cannot be null");
+
+        final List<ReplicationEvent<K, V>> events;
+        synchronized (log) {
+            subscribers.add(subscriber);
+            events = new ArrayList<>(log);
+        }
+        events.forEach(event -> executor.execute(() -> subscriber.accept(event)));
+    }
+}
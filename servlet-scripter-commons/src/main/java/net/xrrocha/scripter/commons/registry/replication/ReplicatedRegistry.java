@@ -0,0 +1,353 @@
+package net.xrrocha.scripter.commons.registry.replication;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.xrrocha.scripter.commons.Initializable;
+import net.xrrocha.scripter.commons.registry.Registry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * @see{Registry} replicated among several nodes. Each node keeps a full local copy in its
+ * delegate registry and reads never leave the node; registrations and deregistrations are
+ * applied locally and then published as @see{ReplicationEvent}s through a pluggable
+ * @see{ReplicationTransport}.
+ * <p>
+ * Nodes converge without a leader: each key holds the most recent event applied to it
+ * (deregistrations leave a tombstone behind) and an incoming event is applied only if it
+ * supersedes it (last writer wins on a Lamport clock). Duplicated or reordered events are thus
+ * harmless.
+ * <p>
+ * Given a state file, the version of the latest event applied to each key (tombstones included)
+ * is persisted so that, upon restart, the node resumes its clock where it left off: otherwise its
+ * first local writes could lose to the very events they replace, and replayed stale events could
+ * resurrect deregistered keys.
+ * <p>
+ * Replication listeners are notified on a single dispatcher thread, in the order events were
+ * applied, and never while holding this registry's lock: a listener may thus write to registries
+ * that in turn write through to this one without risking a lock-order deadlock.
+ * <p>
+ * Replication lag (the time elapsed between an event's origination and its application on this
+ * node) is tracked for monitoring.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class ReplicatedRegistry<K, V> implements Registry<K, V>, Initializable, AutoCloseable {
+
+    private final String nodeId;
+    private final Registry<K, V> delegate;
+    private final ReplicationTransport<K, V> transport;
+    private final File stateFile;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<K, ReplicationEvent<K, V>> latestEvents = new ConcurrentHashMap<>();
+    private final List<BiConsumer<K, Optional<V>>> replicationListeners =
+            new CopyOnWriteArrayList<>();
+    private ExecutorService listenerExecutor;
+    private ReplicationStateLog<K> stateLog;
+
+    private final AtomicLong appliedEventCount = new AtomicLong();
+    private final AtomicLong discardedEventCount = new AtomicLong();
+    private final AtomicLong maxReplicationLagMillis = new AtomicLong();
+    private volatile long replicationLagMillis;
+
+    private final Logger logger = LoggerFactory.getLogger(ReplicatedRegistry.class);
+
+    /**
+     * The reflective, field-based constructor for JSON/Yaml field-based bean access.
+     */
+    private ReplicatedRegistry() {
+        nodeId = null;
+        delegate = null;
+        transport = null;
+        stateFile = null;
+    }
+
+    public ReplicatedRegistry(@NotNull String nodeId,
+                              @NotNull Registry<K, V> delegate,
+                              @NotNull ReplicationTransport<K, V> transport) {
+        this(nodeId, delegate, transport, null);
+    }
+
+    /**
+     * @param nodeId    This node's id
+     * @param delegate  The local registry
+     * @param transport The replication transport
+     * @param stateFile The (optional) file event versions are persisted to
+     */
+    public ReplicatedRegistry(@NotNull String nodeId,
+                              @NotNull Registry<K, V> delegate,
+                              @NotNull ReplicationTransport<K, V> transport,
+                              @Null File stateFile) {
+        this.nodeId = nodeId;
+        this.delegate = delegate;
+        this.transport = transport;
+        this.stateFile = stateFile;
+        initialize();
+    }
+
+    @Override
+    public Optional<V> register(@NotNull K key, @NotNull V value) {
+        checkNotNull(key, "Key cannot be null");
+        checkNotNull(value, "Value cannot be null");
+
+        final Optional<V> previousValue;
+        final ReplicationEvent<K, V> event;
+        synchronized (latestEvents) {
+            previousValue = delegate.register(key, value);
+            event = record(key, value);
+        }
+        transport.publish(event);
+
+        return previousValue;
+    }
+
+    @Override
+    public void put(@NotNull K key, @NotNull V value) {
+        checkNotNull(key, "Key cannot be null");
+        checkNotNull(value, "Value cannot be null");
+
+        final ReplicationEvent<K, V> event;
+        synchronized (latestEvents) {
+            delegate.put(key, value);
+            event = record(key, value);
+        }
+        transport.publish(event);
+    }
+
+    @Override
+    public Optional<V> deregister(@NotNull K key) {
+        checkNotNull(key, "Key cannot be null");
+
+        final Optional<V> previousValue;
+        final ReplicationEvent<K, V> event;
+        synchronized (latestEvents) {
+            previousValue = delegate.deregister(key);
+            event = record(key, null);
+        }
+        transport.publish(event);
+
+        return previousValue;
+    }
+
+    @Override
+    public void remove(@NotNull K key) {
+        checkNotNull(key, "Key cannot be null");
+
+        final ReplicationEvent<K, V> event;
+        synchronized (latestEvents) {
+            delegate.remove(key);
+            event = record(key, null);
+        }
+        transport.publish(event);
+    }
+
+    @Override
+    public Optional<V> lookup(@NotNull K key) {
+        return delegate.lookup(key);
+    }
+
+    @Override
+    public Iterable<Entry<K, V>> list() {
+        return delegate.list();
+    }
+
+    /**
+     * Be notified of changes replicated from other nodes once they've been applied locally. The
+     * listener receives the changed key and its new value (empty upon deregistration).
+     *
+     * @param listener The replication listener
+     */
+    public void addReplicationListener(@NotNull BiConsumer<K, Optional<V>> listener) {
+        checkNotNull(listener, "Listener cannot be null");
+        replicationListeners.add(listener);
+    }
+
+    /**
+     * Wait for the replication listeners to be notified of all the events applied so far.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit    The time unit of the timeout argument
+     * @return <code>true</code> if all pending notifications were delivered in time
+     */
+    public boolean awaitNotifications(long timeout, @NotNull TimeUnit unit) {
+        try {
+            listenerExecutor.submit(() -> {
+            }).get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error awaiting notifications: " + e.getCause(),
+                    e.getCause());
+        }
+    }
+
+    void apply(@NotNull ReplicationEvent<K, V> event) {
+
+        if (event.getNodeId().equals(nodeId)) {
+            return;
+        }
+
+        K key = event.getKey();
+        synchronized (latestEvents) {
+            // The transport can't be unsubscribed from: events arriving once closed are dropped
+            if (listenerExecutor.isShutdown()) {
+                logger.debug("Ignoring " + event + " received after closing");
+                return;
+            }
+
+            clock.accumulateAndGet(event.getClock(), Math::max);
+
+            ReplicationEvent<K, V> latestEvent = latestEvents.get(key);
+            if (latestEvent != null && !event.supersedes(latestEvent)) {
+                logger.debug("Discarding stale " + event);
+                discardedEventCount.incrementAndGet();
+                return;
+            }
+
+            logger.debug("Applying " + event);
+            if (event.isRemoval()) {
+                delegate.remove(key);
+            } else {
+                delegate.put(key, event.getValue().get());
+            }
+            latestEvents.put(key, event);
+            if (stateLog != null) {
+                stateLog.append(event);
+            }
+
+            long lagMillis = Math.max(0L, System.currentTimeMillis() - event.getTimestamp());
+            replicationLagMillis = lagMillis;
+            maxReplicationLagMillis.accumulateAndGet(lagMillis, Math::max);
+            appliedEventCount.incrementAndGet();
+
+            // Queued while holding the lock so that listeners observe changes in order
+            listenerExecutor.execute(() -> notifyListeners(key, event.getValue()));
+        }
+    }
+
+    private void notifyListeners(@NotNull K key, @NotNull Optional<V> value) {
+        for (BiConsumer<K, Optional<V>> listener : replicationListeners) {
+            try {
+                listener.accept(key, value);
+            } catch (RuntimeException e) {
+                logger.error("Error notifying replication of '" + key + "': " + e, e);
+            }
+        }
+    }
+
+    private ReplicationEvent<K, V> record(@NotNull K key, V value) {
+        ReplicationEvent<K, V> event = new ReplicationEvent<>(nodeId, clock.incrementAndGet(),
+                System.currentTimeMillis(), key, value);
+        latestEvents.put(key, event);
+        if (stateLog != null) {
+            stateLog.append(event);
+        }
+        return event;
+    }
+
+    /**
+     * Rebuild the latest events and the clock from the persisted versions, taking the values
+     * from the delegate.
+     */
+    private void restoreState() {
+        stateLog = new ReplicationStateLog<>(stateFile);
+        stateLog.load().forEach((key, version) -> {
+            V value = version.isRemoval() ? null : delegate.lookup(key).orElse(null);
+            latestEvents.put(key, new ReplicationEvent<>(version.getNodeId(), version.getClock(),
+                    version.getTimestamp(), key, value));
+            clock.accumulateAndGet(version.getClock(), Math::max);
+        });
+        logger.debug("Restored " + latestEvents.size() + " event versions; clock at " +
+                clock.get());
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public File getStateFile() {
+        return stateFile;
+    }
+
+    /**
+     * The current value of this node's Lamport clock.
+     */
+    public long getClock() {
+        return clock.get();
+    }
+
+    /**
+     * The lag, in milliseconds, of the most recently applied remote event.
+     */
+    public long getReplicationLagMillis() {
+        return replicationLagMillis;
+    }
+
+    /**
+     * The largest lag, in milliseconds, observed so far.
+     */
+    public long getMaxReplicationLagMillis() {
+        return maxReplicationLagMillis.get();
+    }
+
+    public long getAppliedEventCount() {
+        return appliedEventCount.get();
+    }
+
+    public long getDiscardedEventCount() {
+        return discardedEventCount.get();
+    }
+
+    /**
+     * Stop applying replicated events and shut down the listener dispatcher thread. Pending
+     * notifications are discarded.
+     */
+    @Override
+    public void close() {
+        synchronized (latestEvents) {
+            listenerExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void initialize() {
+        checkNotNull(nodeId, "Node id cannot be null");
+        checkNotNull(delegate, "Delegate cannot be null");
+        checkNotNull(transport, "Transport cannot be null");
+
+        if (stateFile != null) {
+            restoreState();
+        }
+
+        listenerExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("replication-listener-" + nodeId.replace("%", "%%"))
+                .setDaemon(true)
+                .build());
+
+        transport.subscribe(this::apply);
+    }
+}
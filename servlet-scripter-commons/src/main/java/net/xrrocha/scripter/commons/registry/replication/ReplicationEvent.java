@@ -0,0 +1,85 @@
+package net.xrrocha.scripter.commons.registry.replication;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.io.Serializable;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A single registration or deregistration replicated among @see{ReplicatedRegistry} nodes.
+ * <p>
+ * Events are ordered by their logical (Lamport) clock and, for concurrent events, by the
+ * originating node id so that all nodes agree on which one wins (last writer wins).
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public final class ReplicationEvent<K, V> implements Serializable {
+
+    private final String nodeId;
+    private final long clock;
+    private final long timestamp;
+    private final K key;
+    private final V value;
+
+    public ReplicationEvent(@NotNull String nodeId,
+                            long clock,
+                            long timestamp,
+                            @NotNull K key,
+                            @Null V value) {
+        checkNotNull(nodeId, "Node id cannot be null");
+        checkNotNull(key, "Key cannot be null");
+        this.nodeId = nodeId;
+        this.clock = clock;
+        this.timestamp = timestamp;
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * Determine whether this event wins over another event on the same key.
+     *
+     * @param other The other event
+     * @return Whether this event is more recent
+     */
+    public boolean supersedes(@NotNull ReplicationEvent<K, V> other) {
+        if (clock != other.clock) {
+            return clock > other.clock;
+        }
+        return nodeId.compareTo(other.nodeId) > 0;
+    }
+
+    public boolean isRemoval() {
+        return value == null;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getClock() {
+        return clock;
+    }
+
+    /**
+     * The wall-clock time, in milliseconds, at which the event originated.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public K getKey() {
+        return key;
+    }
+
+    public Optional<V> getValue() {
+        return Optional.ofNullable(value);
+    }
+
+    @Override
+    public String toString() {
+        return (isRemoval() ? "REMOVE " : "PUT ") + key + "@" + nodeId + ":" + clock;
+    }
+}
@@ -0,0 +1,174 @@
+package net.xrrocha.scripter.commons.registry.replication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.NotNull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only record of the version (originating node, clock and whether it's a removal) of the
+ * latest @see{ReplicationEvent} applied to each key of a @see{ReplicatedRegistry}. Values aren't
+ * recorded: they live in the registry's delegate.
+ * <p>
+ * Each event costs a single append; superseded records are compacted away upon loading. A
+ * truncated trailing record (as left by a crash) is discarded. Keys must be serializable; the log
+ * is as trusted as the registry directory it lives in.
+ *
+ * @param <K> The key type
+ */
+class ReplicationStateLog<K> {
+
+    private static final int COMPACTION_SLACK = 16;
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationStateLog.class);
+
+    private final File file;
+
+    ReplicationStateLog(@NotNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the latest version of each key, compacting the log if mostly superseded.
+     *
+     * @return The versions by key
+     */
+    @SuppressWarnings("unchecked")
+    Map<K, Version> load() {
+        Map<K, Version> versions = new LinkedHashMap<>();
+        if (!file.isFile()) {
+            return versions;
+        }
+
+        int recordCount = 0;
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            while (true) {
+                byte[] record = new byte[in.readInt()];
+                in.readFully(record);
+                try (ObjectInputStream recordIn =
+                             new ObjectInputStream(new ByteArrayInputStream(record))) {
+                    versions.put((K) recordIn.readObject(), (Version) recordIn.readObject());
+                }
+                recordCount++;
+            }
+        } catch (EOFException e) {
+            // Done, possibly past a truncated record
+        } catch (IOException | ClassNotFoundException | ClassCastException |
+                NegativeArraySizeException e) {
+            logger.warn("Ignoring replication state past record " + recordCount + " of '" +
+                    file + "': " + e);
+        }
+
+        if (recordCount > 2 * versions.size() + COMPACTION_SLACK) {
+            rewrite(versions);
+        }
+        return versions;
+    }
+
+    /**
+     * Record the version of an event just applied (or originated).
+     *
+     * @param event The event
+     */
+    void append(@NotNull ReplicationEvent<K, ?> event) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), CREATE, WRITE, APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(encode(event.getKey(), new Version(event)));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            logger.warn("Error recording replication state in '" + file + "': " + e);
+        }
+    }
+
+    private void rewrite(@NotNull Map<K, Version> versions) {
+        logger.debug("Compacting replication state '" + file + "' down to " + versions.size() +
+                " keys");
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            for (Map.Entry<K, Version> entry : versions.entrySet()) {
+                baos.write(encode(entry.getKey(), entry.getValue()));
+            }
+            Files.write(tempFile.toPath(), baos.toByteArray());
+            Files.move(tempFile.toPath(), file.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Error compacting replication state '" + file + "': " + e);
+        }
+    }
+
+    private static byte[] encode(@NotNull Object key, @NotNull Version version)
+            throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(record)) {
+            out.writeObject(key);
+            out.writeObject(version);
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeInt(record.size());
+            record.writeTo(out);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * The version of a replication event, sans key and value.
+     */
+    static final class Version implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String nodeId;
+        private final long clock;
+        private final long timestamp;
+        private final boolean removal;
+
+        Version(@NotNull ReplicationEvent<?, ?> event) {
+            this.nodeId = event.getNodeId();
+            this.clock = event.getClock();
+            this.timestamp = event.getTimestamp();
+            this.removal = event.isRemoval();
+        }
+
+        String getNodeId() {
+            return nodeId;
+        }
+
+        long getClock() {
+            return clock;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        boolean isRemoval() {
+            return removal;
+        }
+    }
+}
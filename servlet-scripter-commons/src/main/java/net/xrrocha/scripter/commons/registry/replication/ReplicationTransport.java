@@ -0,0 +1,31 @@
+package net.xrrocha.scripter.commons.registry.replication;
+
+import javax.validation.constraints.NotNull;
+import java.util.function.Consumer;
+
+/**
+ * Channel carrying @see{ReplicationEvent}s among @see{ReplicatedRegistry} nodes.
+ * <p>
+ * Delivery may be asynchronous, duplicated or out of order: nodes resolve conflicts by
+ * themselves. Implementations retaining published events may replay them to new subscribers so
+ * that late-joining nodes catch up.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public interface ReplicationTransport<K, V> {
+
+    /**
+     * Send an event to all subscribed nodes, including (possibly) its originator.
+     *
+     * @param event The event to send
+     */
+    void publish(@NotNull ReplicationEvent<K, V> event);
+
+    /**
+     * Receive all events subsequently published by any node.
+     *
+     * @param subscriber The event consumer
+     */
+    void subscribe(@NotNull Consumer<ReplicationEvent<K, V>> subscriber);
+}
@@ -0,0 +1,57 @@
+package net.xrrocha.scripter.commons.classloader;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class ClassLoaderLeakDetectorTest {
+
+    @Test
+    public void reportsReachableClassLoaders() {
+        ClassLoaderLeakDetector detector = new ClassLoaderLeakDetector(0L);
+
+        ClassLoader classLoader = new URLClassLoader(new URL[]{});
+        detector.disposed("leaked", classLoader);
+
+        assertEquals(singletonList("leaked"), detector.findLeaks());
+        assertEquals(1, detector.getPendingCount());
+
+        // Keep the class loader reachable up to here
+        assertNotNull(classLoader);
+    }
+
+    @Test
+    public void honorsGracePeriod() {
+        ClassLoaderLeakDetector detector = new ClassLoaderLeakDetector(60000L);
+
+        ClassLoader classLoader = new URLClassLoader(new URL[]{});
+        detector.disposed("recent", classLoader);
+
+        assertEquals(emptyList(), detector.findLeaks());
+        assertEquals(1, detector.getPendingCount());
+
+        // Keep the class loader reachable up to here
+        assertNotNull(classLoader);
+    }
+
+    @Test
+    public void forgetsCollectedClassLoaders() throws InterruptedException {
+        ClassLoaderLeakDetector detector = new ClassLoaderLeakDetector(0L);
+
+        detector.disposed("collected", new URLClassLoader(new URL[]{}));
+
+        for (int i = 0; i < 50 && detector.getPendingCount() > 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assertEquals(0, detector.getPendingCount());
+        assertEquals(emptyList(), detector.findLeaks());
+    }
+}
@@ -1,14 +1,27 @@
 package net.xrrocha.scripter.commons.classloader;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
 import net.xrrocha.scripter.commons.io.InputStreamFileCreator;
+import net.xrrocha.scripter.commons.io.InputStreamOpener;
 import net.xrrocha.scripter.commons.io.StringInputStreamOpener;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.net.URLClassLoader;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static net.xrrocha.scripter.commons.io.FileUtils.TEMP_DIRECTORY;
+import static net.xrrocha.scripter.commons.io.FileUtils.purge;
+import static org.junit.Assert.*;
 
 public class ParentLastClassLoaderCreatorTest {
 
@@ -63,4 +76,169 @@ public class ParentLastClassLoaderCreatorTest {
                 }} // resourceUrls
         );
     }
+
+    @Test
+    public void hashesJarAndResourceSets() {
+        InputStreamFileCreator otherCreator = new InputStreamFileCreator("other.txt", "other");
+
+        ParentLastClassLoaderCreator classLoaderCreator = new ParentLastClassLoaderCreator(
+                new StringInputStreamOpener(), // opener
+                ImmutableSet.of(creator, otherCreator), // jarUrls
+                null // resourceUrls
+        );
+
+        assertEquals(classLoaderCreator.getContentHash(), new ParentLastClassLoaderCreator(
+                new StringInputStreamOpener(), // opener
+                ImmutableSet.of(otherCreator, creator), // jarUrls
+                null // resourceUrls
+        ).getContentHash());
+
+        assertNotEquals(classLoaderCreator.getContentHash(), new ParentLastClassLoaderCreator(
+                new StringInputStreamOpener(), // opener
+                ImmutableSet.of(creator), // jarUrls
+                ImmutableSet.of(otherCreator) // resourceUrls
+        ).getContentHash());
+    }
+
+    @Test
+    public void fetchesFilesConcurrently() {
+        CountDownLatch allStarted = new CountDownLatch(3);
+        InputStreamOpener opener = location -> {
+            allStarted.countDown();
+            try {
+                // Only completes if all three downloads are in flight at once
+                assertTrue(allStarted.await(30, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return new ByteArrayInputStream(location.getBytes());
+        };
+
+        ParentLastClassLoaderCreator classLoaderCreator = new ParentLastClassLoaderCreator(
+                opener,
+                ImmutableSet.of(new InputStreamFileCreator("one.jar", "one")), // jarUrls
+                ImmutableSet.of(
+                        new InputStreamFileCreator("two.txt", "two"),
+                        new InputStreamFileCreator("three.txt", "three")), // resourceUrls
+                3, // downloadParallelism
+                60000L, // downloadTimeoutMillis
+                0 // downloadRetries
+        );
+
+        File directory = newDirectory();
+        URLClassLoader classLoader = (URLClassLoader) classLoaderCreator.createClassLoader(
+                getClass().getClassLoader(),
+                directory,
+                new File(directory, "resources"));
+        assertEquals(2, classLoader.getURLs().length);
+        assertNotNull(classLoader.getResource("three.txt"));
+    }
+
+    @Test
+    public void retriesFailedAndHungDownloads() {
+        Set<String> attempted = ConcurrentHashMap.newKeySet();
+        InputStreamOpener opener = location -> {
+            if (attempted.add(location)) {
+                if (location.equals("hung")) {
+                    try {
+                        Thread.sleep(60000L);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                throw new IllegalStateException("First attempt fails");
+            }
+            return new ByteArrayInputStream(location.getBytes());
+        };
+
+        ParentLastClassLoaderCreator classLoaderCreator = new ParentLastClassLoaderCreator(
+                opener,
+                ImmutableSet.of(
+                        new InputStreamFileCreator("failing.jar", "failing"),
+                        new InputStreamFileCreator("hung.jar", "hung")), // jarUrls
+                null, // resourceUrls
+                2, // downloadParallelism
+                100L, // downloadTimeoutMillis
+                1 // downloadRetries
+        );
+
+        File directory = newDirectory();
+        URLClassLoader classLoader = (URLClassLoader) classLoaderCreator.createClassLoader(
+                getClass().getClassLoader(),
+                directory,
+                new File(directory, "resources"));
+        assertEquals(2, classLoader.getURLs().length);
+    }
+
+    @Test
+    public void keepsAbandonedDownloadsApartFromRetries() throws Exception {
+        Set<String> attempted = ConcurrentHashMap.newKeySet();
+        CountDownLatch abandonedDone = new CountDownLatch(1);
+        InputStreamOpener opener = location -> {
+            if (attempted.add(location)) {
+                // Outlives its timeout, ignoring cancellation, and only then writes
+                return new InputStream() {
+                    private final ByteArrayInputStream stale =
+                            new ByteArrayInputStream("stale".getBytes());
+
+                    @Override
+                    public int read() {
+                        Uninterruptibles.sleepUninterruptibly(300, TimeUnit.MILLISECONDS);
+                        int next = stale.read();
+                        if (next < 0) {
+                            abandonedDone.countDown();
+                        }
+                        return next;
+                    }
+                };
+            }
+            return new ByteArrayInputStream("fresh".getBytes());
+        };
+
+        ParentLastClassLoaderCreator classLoaderCreator = new ParentLastClassLoaderCreator(
+                opener,
+                ImmutableSet.of(new InputStreamFileCreator("slow.jar", "slow")), // jarUrls
+                null, // resourceUrls
+                1, // downloadParallelism
+                100L, // downloadTimeoutMillis
+                1 // downloadRetries
+        );
+
+        File directory = newDirectory();
+        classLoaderCreator.createClassLoader(
+                getClass().getClassLoader(),
+                directory,
+                new File(directory, "resources"));
+
+        assertTrue(abandonedDone.await(30, TimeUnit.SECONDS));
+        Thread.sleep(100L);
+        File jarFile = new File(directory, "slow.jar");
+        assertEquals("fresh", new String(Files.readAllBytes(jarFile.toPath()), UTF_8));
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failsAfterExhaustingRetries() {
+        ParentLastClassLoaderCreator classLoaderCreator = new ParentLastClassLoaderCreator(
+                location -> {
+                    throw new IllegalStateException("Always fails");
+                },
+                ImmutableSet.of(new InputStreamFileCreator("failing.jar", "failing")), // jarUrls
+                null, // resourceUrls
+                1, // downloadParallelism
+                1000L, // downloadTimeoutMillis
+                1 // downloadRetries
+        );
+
+        File directory = newDirectory();
+        classLoaderCreator.createClassLoader(
+                getClass().getClassLoader(),
+                directory,
+                new File(directory, "resources"));
+    }
+
+    private File newDirectory() {
+        File directory = new File(TEMP_DIRECTORY, "class-loader-" + System.nanoTime());
+        purge(directory);
+        return directory;
+    }
 }
@@ -6,12 +6,12 @@ import org.junit.Test;
 
 import java.io.*;
 import java.net.URL;
-import java.util.Collections;
-import java.util.List;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
 
 public class ParentLastUrlClassLoaderTest {
 
@@ -87,6 +87,181 @@ public class ParentLastUrlClassLoaderTest {
         assertEquals(2, childResources.size());
     }
 
+    @Test
+    public void indexesJarAndDirectoryEntries() throws Exception {
+        String name = "índice";
+        String resourceContents = "Voici l'" + name;
+        String classEntry = packageName.replace('.', '/') + "/" + className + ".class";
+
+        ParentLastUrlClassLoader jarClassLoader =
+                (ParentLastUrlClassLoader) createJarClassLoader(name, // classLoaderName
+                        resourceContents, // resourceContents
+                        Thread.currentThread().getContextClassLoader()); // parentClassLoader
+        assertTrue(jarClassLoader.isIndexed());
+        assertTrue(jarClassLoader.mayContain(classEntry));
+        assertTrue(jarClassLoader.mayContain(resourceName));
+        assertFalse(jarClassLoader.mayContain("java/lang/String.class"));
+
+        ParentLastUrlClassLoader directoryClassLoader =
+                (ParentLastUrlClassLoader) createDirectoryClassLoader(name, // classLoaderName
+                        resourceContents, // resourceContents
+                        Thread.currentThread().getContextClassLoader()); // parentClassLoader
+        assertTrue(directoryClassLoader.isIndexed());
+        assertTrue(directoryClassLoader.mayContain(classEntry));
+        assertTrue(directoryClassLoader.mayContain(resourceName));
+        assertFalse(directoryClassLoader.mayContain("a/b/c/missing.txt"));
+    }
+
+    @Test
+    public void findsPackageDirectoriesInClassPath() throws Exception {
+        String name = "paquete";
+        String packageDirectory = packageName.replace('.', '/') + "/";
+
+        ParentLastUrlClassLoader jarClassLoader =
+                (ParentLastUrlClassLoader) createJarClassLoader(name, // classLoaderName
+                        "Voici le " + name, // resourceContents
+                        Thread.currentThread().getContextClassLoader()); // parentClassLoader
+        ParentLastUrlClassLoader directoryClassLoader =
+                (ParentLastUrlClassLoader) createDirectoryClassLoader(name, // classLoaderName
+                        "Voici le " + name, // resourceContents
+                        Thread.currentThread().getContextClassLoader()); // parentClassLoader
+
+        for (ParentLastUrlClassLoader classLoader : Arrays.asList(jarClassLoader,
+                directoryClassLoader)) {
+            assertTrue(classLoader.mayContain("net/"));
+            assertTrue(classLoader.mayContain(packageDirectory));
+            assertTrue(classLoader.mayContain("a/b"));
+            assertFalse(classLoader.mayContain("org/"));
+        }
+
+        URL directoryUrl = directoryClassLoader.getResource(packageDirectory);
+        assertNotNull(directoryUrl);
+        assertEquals("file", directoryUrl.getProtocol());
+        assertTrue(Collections.list(directoryClassLoader.getResources(packageDirectory))
+                .contains(directoryUrl));
+    }
+
+    @Test
+    public void delegatesUnindexedNamesToParent() throws Exception {
+        ClassLoader parentClassLoader = Thread.currentThread().getContextClassLoader();
+        ClassLoader childClassLoader = createJarClassLoader("délégué", // classLoaderName
+                "Voici le délégué", // resourceContents
+                parentClassLoader); // parentClassLoader
+
+        assertSame(String.class, childClassLoader.loadClass("java.lang.String"));
+        assertSame(ParentLastUrlClassLoaderTest.class,
+                childClassLoader.loadClass(ParentLastUrlClassLoaderTest.class.getName()));
+        assertNull(childClassLoader.getResource("a/b/c/missing.txt"));
+        assertFalse(childClassLoader.getResources("a/b/c/missing.txt").hasMoreElements());
+    }
+
+    @Test
+    public void doesNotIndexNonFileUrls() throws Exception {
+        ParentLastUrlClassLoader classLoader =
+                new ParentLastUrlClassLoader(new URL[]{new URL("http://localhost/lib.jar")},
+                        Thread.currentThread().getContextClassLoader());
+        assertFalse(classLoader.isIndexed());
+        assertTrue(classLoader.mayContain("java/lang/String.class"));
+    }
+
+    @Test
+    public void cachesResourceLookupsUntilClassPathChanges() throws Exception {
+        File firstDirectory = Files.createTempDirectory("plcl").toFile();
+        File secondDirectory = Files.createTempDirectory("plcl").toFile();
+        File resourceFile = new File(secondDirectory, resourceName);
+        resourceFile.getParentFile().mkdirs();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(resourceFile), UTF_8)) {
+            out.write("Voici la ressource");
+        }
+
+        CountingClassLoader classLoader = new CountingClassLoader(new URL[]{},
+                Thread.currentThread().getContextClassLoader());
+        classLoader.addURL(firstDirectory.toURI().toURL());
+        assertFalse(classLoader.isIndexed());
+
+        assertNull(classLoader.getResource(resourceName));
+        assertNull(classLoader.getResource(resourceName));
+        assertFalse(classLoader.getResources(resourceName).hasMoreElements());
+        assertEquals(1, classLoader.lookups);
+
+        classLoader.addURL(secondDirectory.toURI().toURL());
+        assertNotNull(classLoader.getResource(resourceName));
+        assertNotNull(classLoader.getResource(resourceName));
+        assertEquals(2, classLoader.lookups);
+        assertEquals("Voici la ressource", readResourceFile(classLoader, resourceName));
+
+        assertEquals(1, Collections.list(classLoader.getResources(resourceName)).size());
+        assertEquals(1, Collections.list(classLoader.getResources(resourceName)).size());
+        assertEquals(3, classLoader.lookups);
+    }
+
+    @Test
+    public void locksPerClassName() {
+        CountingClassLoader classLoader = new CountingClassLoader(new URL[]{},
+                Thread.currentThread().getContextClassLoader());
+
+        Object lock = classLoader.lockFor("a.b.C");
+        assertNotSame(classLoader, lock);
+        assertSame(lock, classLoader.lockFor("a.b.C"));
+        assertNotSame(lock, classLoader.lockFor("a.b.D"));
+    }
+
+    @Test
+    public void loadsClassesConcurrently() throws Exception {
+        int classCount = 64;
+        int threadCount = 8;
+
+        JavaSourceDirectory javaSourceDirectory = new JavaSourceDirectory(
+                Files.createTempDirectory("plcl").toFile());
+        for (int i = 0; i < classCount; i++) {
+            javaSourceDirectory.addJavaClass(packageName, className + i,
+                    String.format(codeTemplate, i));
+        }
+        assertTrue(javaSourceDirectory.compile());
+        File jarFile = File.createTempFile("plcl", ".jar");
+        javaSourceDirectory.buildJarLibrary(new FileOutputStream(jarFile));
+        ClassLoader classLoader = new ParentLastUrlClassLoader(new URL[]{jarFile.toURI().toURL()},
+                Thread.currentThread().getContextClassLoader());
+
+        // All threads load all classes at once, each in a different order
+        CyclicBarrier barrier = new CyclicBarrier(threadCount);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Map<String, Class<?>>>> futures = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                List<Integer> indexes = new ArrayList<>();
+                for (int i = 0; i < classCount; i++) {
+                    indexes.add(i);
+                }
+                Collections.shuffle(indexes, new Random(t));
+
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    Map<String, Class<?>> classes = new HashMap<>();
+                    for (int i : indexes) {
+                        String name = packageName + "." + className + i;
+                        classes.put(name, classLoader.loadClass(name));
+                    }
+                    return classes;
+                }));
+            }
+
+            Map<String, Class<?>> loadedClasses = futures.get(0).get(30, TimeUnit.SECONDS);
+            assertEquals(classCount, loadedClasses.size());
+            for (Future<Map<String, Class<?>>> future : futures) {
+                Map<String, Class<?>> classes = future.get(30, TimeUnit.SECONDS);
+                loadedClasses.forEach((name, loadedClass) -> {
+                    assertSame(loadedClass, classes.get(name));
+                    assertSame(classLoader, loadedClass.getClassLoader());
+                });
+            }
+            assertEquals("7", loadedClasses.get(packageName + "." + className + 7)
+                    .getDeclaredConstructor().newInstance().toString());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test(expected = ClassNotFoundException.class)
     public void findClassThrowsClassNotFoundException() throws Exception {
         new ParentLastUrlClassLoader(new URL[]{new File(".").toURI().toURL()},
@@ -165,4 +340,38 @@ public class ParentLastUrlClassLoaderTest {
         return sourceDirectory;
     }
 
+
+    static class CountingClassLoader extends ParentLastUrlClassLoader {
+
+        static {
+            registerAsParallelCapable();
+        }
+
+        private int lookups;
+
+        CountingClassLoader(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        Object lockFor(String className) {
+            return getClassLoadingLock(className);
+        }
+
+        @Override
+        public void addURL(URL url) {
+            super.addURL(url);
+        }
+
+        @Override
+        public URL findResource(String name) {
+            lookups++;
+            return super.findResource(name);
+        }
+
+        @Override
+        public Enumeration<URL> findResources(String name) throws IOException {
+            lookups++;
+            return super.findResources(name);
+        }
+    }
 }
@@ -0,0 +1,58 @@
+package net.xrrocha.scripter.commons.cluster;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ConsistentHashRingTest {
+
+    @Test
+    public void assignsDistinctOwners() {
+        ConsistentHashRing ring = new ConsistentHashRing(ImmutableList.of("a", "b", "c"), 2);
+        for (int i = 0; i < 100; i++) {
+            List<String> owners = ring.owners("script" + i);
+            assertEquals(2, owners.size());
+            assertNotEquals(owners.get(0), owners.get(1));
+            assertEquals(owners, ring.owners("script" + i));
+        }
+        assertEquals(3, new ConsistentHashRing(ImmutableList.of("a", "b", "c"), 5)
+                .owners("script").size());
+    }
+
+    @Test
+    public void spreadsKeysEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(ImmutableList.of("a", "b", "c", "d"), 1);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 4000; i++) {
+            counts.merge(ring.owners("script" + i).get(0), 1, Integer::sum);
+        }
+        assertEquals(4, counts.size());
+        counts.values().forEach(count -> assertTrue(count > 500 && count < 1500));
+    }
+
+    @Test
+    public void relocatesFewKeysOnMembershipChange() {
+        ConsistentHashRing ring = new ConsistentHashRing(ImmutableList.of("a", "b", "c"), 1);
+        ConsistentHashRing grownRing =
+                new ConsistentHashRing(ImmutableList.of("a", "b", "c", "d"), 1);
+        int relocated = 0;
+        for (int i = 0; i < 1000; i++) {
+            String owner = grownRing.owners("script" + i).get(0);
+            if (!owner.equals(ring.owners("script" + i).get(0))) {
+                assertEquals("d", owner);
+                relocated++;
+            }
+        }
+        assertTrue(relocated > 0 && relocated < 500);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyRing() {
+        new ConsistentHashRing(ImmutableList.of(), 1);
+    }
+}
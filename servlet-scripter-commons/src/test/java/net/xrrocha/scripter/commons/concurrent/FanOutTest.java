@@ -0,0 +1,144 @@
+package net.xrrocha.scripter.commons.concurrent;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class FanOutTest {
+
+    @Test
+    public void collectsPartialResults() {
+        try (FanOut fanOut = new FanOut("partial", 4, 4, 10000L)) {
+            FanOutResult<Integer, String> result = fanOut.map(ImmutableList.of(1, 2, 3, 4), n -> {
+                if (n == 2) {
+                    throw new IllegalStateException("Unreachable host");
+                }
+                if (n == 3) {
+                    try {
+                        Thread.sleep(60000L);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return "host" + n;
+            }, 200L);
+
+            assertFalse(result.isComplete());
+            assertEquals(ImmutableList.of(1, 4),
+                    ImmutableList.copyOf(result.getResults().keySet()));
+            assertEquals("host4", result.getResults().get(4));
+            assertTrue(result.getFailures().get(2) instanceof IllegalStateException);
+            assertTrue(result.getFailures().get(3) instanceof TimeoutException);
+            assertEquals(ImmutableList.of(3), result.getTimedOut());
+        }
+    }
+
+    @Test
+    public void boundsParallelismAndThrottlesCaller() {
+        int parallelism = 2;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+
+        List<Integer> items = IntStream.range(0, 32).boxed().collect(Collectors.toList());
+        try (FanOut fanOut = new FanOut("bounded", parallelism, 1, 10000L)) {
+            FanOutResult<Integer, Integer> result = fanOut.map(items, n -> {
+                String threadName = Thread.currentThread().getName();
+                threadNames.add(threadName);
+                if (threadName.startsWith("fan-out-bounded-")) {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                }
+                try {
+                    Thread.sleep(5L);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    if (threadName.startsWith("fan-out-bounded-")) {
+                        running.decrementAndGet();
+                    }
+                }
+                return n * n;
+            });
+
+            assertTrue(result.isComplete());
+            assertEquals(items, ImmutableList.copyOf(result.getResults().keySet()));
+            assertEquals(Integer.valueOf(961), result.getResults().get(31));
+        }
+
+        assertTrue(maxRunning.get() <= parallelism);
+        // Once the queue is full, the submitting thread runs tasks itself
+        assertTrue(threadNames.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void abandonsUninterruptibleTasks() {
+        try (FanOut fanOut = new FanOut("uninterruptible", 2, 2, 10000L)) {
+            long startTime = System.currentTimeMillis();
+            FanOutResult<Integer, String> result = fanOut.map(ImmutableList.of(1, 2), n -> {
+                if (n == 2) {
+                    long endTime = System.currentTimeMillis() + 5000L;
+                    while (System.currentTimeMillis() < endTime) {
+                        try {
+                            Thread.sleep(10L);
+                        } catch (InterruptedException e) {
+                            // Ignored on purpose
+                        }
+                    }
+                }
+                return "host" + n;
+            }, 200L);
+
+            assertTrue(System.currentTimeMillis() - startTime < 5000L);
+            assertEquals("host1", result.getResults().get(1));
+            assertEquals(ImmutableList.of(2), result.getTimedOut());
+        }
+    }
+
+    @Test
+    public void runsTasksUnderCallerContextClassLoader() throws Exception {
+        ClassLoader callerClassLoader = Thread.currentThread().getContextClassLoader();
+        try (FanOut fanOut = new FanOut("contextual", 2, 2, 10000L);
+             URLClassLoader scriptClassLoader =
+                     new URLClassLoader(new URL[0], callerClassLoader)) {
+
+            // Pool threads are started from within a "script"
+            Thread.currentThread().setContextClassLoader(scriptClassLoader);
+            FanOutResult<Integer, ClassLoader> scriptResult = fanOut.map(ImmutableList.of(1, 2),
+                    n -> Thread.currentThread().getContextClassLoader());
+            Thread.currentThread().setContextClassLoader(callerClassLoader);
+            assertTrue(scriptResult.getResults().values().stream()
+                    .allMatch(classLoader -> classLoader == scriptClassLoader));
+
+            // ...yet don't lend its class loader to later tasks
+            FanOutResult<Integer, ClassLoader> result = fanOut.map(ImmutableList.of(1, 2),
+                    n -> Thread.currentThread().getContextClassLoader());
+            assertTrue(result.getResults().values().stream()
+                    .allMatch(classLoader -> classLoader == callerClassLoader));
+        } finally {
+            Thread.currentThread().setContextClassLoader(callerClassLoader);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDuplicateItems() {
+        try (FanOut fanOut = new FanOut("duplicates")) {
+            fanOut.map(ImmutableList.of(1, 2, 1), n -> n);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveParallelism() {
+        new FanOut("invalid", 0, 1, 1000L);
+    }
+}
@@ -0,0 +1,108 @@
+package net.xrrocha.scripter.commons.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+
+    @Test
+    public void mergesConcurrentCallsWithEqualKeys() throws Exception {
+        int callerCount = 8;
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(callerCount);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < callerCount; i++) {
+                futures.add(executor.submit(() -> singleFlight.execute("dashboard", () -> {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return executions.incrementAndGet();
+                })));
+            }
+
+            // Let all callers join before the execution completes
+            while (singleFlight.getCoalescedCount() < callerCount - 1) {
+                Thread.sleep(10L);
+            }
+            release.countDown();
+
+            for (Future<Integer> future : futures) {
+                assertEquals(Integer.valueOf(1), future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1L, singleFlight.getExecutionCount());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void executesSequentialCallsAnew() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+
+        assertEquals(Integer.valueOf(1), singleFlight.execute("key", executions::incrementAndGet));
+        assertEquals(Integer.valueOf(2), singleFlight.execute("key", executions::incrementAndGet));
+        assertEquals(0L, singleFlight.getCoalescedCount());
+    }
+
+    @Test
+    public void sharesFailuresWithoutRetainingThem() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                throw new IllegalArgumentException("Backend down");
+            }));
+            while (singleFlight.getInFlightCount() == 0) {
+                Thread.sleep(10L);
+            }
+
+            Future<String> follower =
+                    executor.submit(() -> singleFlight.execute("key", () -> "unexpected"));
+            while (singleFlight.getCoalescedCount() == 0) {
+                Thread.sleep(10L);
+            }
+            release.countDown();
+
+            for (Future<String> future : Arrays.asList(leader, follower)) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                    fail("Failure not propagated");
+                } catch (ExecutionException e) {
+                    assertEquals("Backend down", e.getCause().getMessage());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals("recovered", singleFlight.execute("key", () -> "recovered"));
+    }
+}
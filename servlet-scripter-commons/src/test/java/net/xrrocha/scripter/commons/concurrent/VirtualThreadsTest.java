@@ -0,0 +1,48 @@
+package net.xrrocha.scripter.commons.concurrent;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void detectsRuntimeSupport() throws Exception {
+        boolean hasVirtualThreadApi = true;
+        try {
+            Thread.class.getMethod("ofVirtual");
+        } catch (NoSuchMethodException e) {
+            hasVirtualThreadApi = false;
+        }
+
+        // The API may be present yet disabled (preview releases)
+        if (!hasVirtualThreadApi) {
+            assertFalse(VirtualThreads.isSupported());
+        }
+        assertEquals(VirtualThreads.isSupported(),
+                VirtualThreads.newThreadFactory("test-").isPresent());
+
+        if (VirtualThreads.isSupported()) {
+            Thread thread = VirtualThreads.newThreadFactory("test-").get().newThread(() -> {
+            });
+            assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(thread));
+        } else {
+            assertFalse(VirtualThreads.monitorPinnedThreads());
+        }
+    }
+
+    @Test
+    public void runsTasksOnNamedThreads() throws Exception {
+        ExecutorService executor = VirtualThreads.newExecutor("virtual-test-");
+        try {
+            String threadName = executor.submit(() -> Thread.currentThread().getName())
+                    .get(10, TimeUnit.SECONDS);
+            assertTrue(threadName.startsWith("virtual-test-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
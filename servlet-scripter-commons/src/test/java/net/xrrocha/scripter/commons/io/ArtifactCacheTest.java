@@ -0,0 +1,157 @@
+package net.xrrocha.scripter.commons.io;
+
+import com.google.common.hash.Hashing;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static net.xrrocha.scripter.commons.io.FileUtils.TEMP_DIRECTORY;
+import static net.xrrocha.scripter.commons.io.FileUtils.purge;
+import static org.junit.Assert.*;
+
+public class ArtifactCacheTest {
+
+    private static final String CONTENTS = "Some jar contents";
+    private static final String CHECKSUM =
+            "sha256:" + Hashing.sha256().hashString(CONTENTS, UTF_8).toString();
+
+    private final File directory =
+            new File(TEMP_DIRECTORY, "artifacts-" + System.currentTimeMillis());
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final InputStreamOpener opener = location -> {
+        downloads.incrementAndGet();
+        return new ByteArrayInputStream(CONTENTS.getBytes(UTF_8));
+    };
+
+    @Before
+    public void purgeDirectory() {
+        purge(directory);
+    }
+
+    @Test
+    public void downloadsEachUrlOnce() throws Exception {
+        ArtifactCache cache = new ArtifactCache(directory);
+
+        File blob = cache.fetch("http://repo/lib.jar", null, opener, false);
+        assertEquals(blob, cache.fetch("http://repo/lib.jar", null, opener, false));
+        assertEquals(1, downloads.get());
+        assertEquals(CONTENTS, new String(Files.readAllBytes(blob.toPath()), UTF_8));
+
+        // Refreshing an artifact without checksum downloads it again
+        cache.fetch("http://repo/lib.jar", null, opener, true);
+        assertEquals(2, downloads.get());
+    }
+
+    @Test
+    public void downloadsAgainOnceIndexEntryExpires() {
+        ArtifactCache cache = new ArtifactCache(directory, 60000L);
+
+        cache.fetch("http://repo/lib.jar", null, opener, false);
+        File[] indexFiles = new File(directory, ArtifactCache.INDEX_DIRECTORY_NAME).listFiles();
+        assertEquals(1, indexFiles.length);
+        assertTrue(indexFiles[0].setLastModified(System.currentTimeMillis() - 120000L));
+
+        cache.fetch("http://repo/lib.jar", null, opener, false);
+        assertEquals(2, downloads.get());
+        cache.fetch("http://repo/lib.jar", null, opener, false);
+        assertEquals(2, downloads.get());
+
+        // A zero time-to-live only caches checksummed artifacts
+        ArtifactCache uncachedIndex = new ArtifactCache(directory, 0L);
+        uncachedIndex.fetch("http://repo/lib.jar", null, opener, false);
+        assertEquals(3, downloads.get());
+    }
+
+    @Test
+    public void servesChecksummedArtifactsWithoutDownloading() {
+        ArtifactCache cache = new ArtifactCache(directory);
+
+        File blob = cache.fetch("http://repo/lib.jar", CHECKSUM, opener, false);
+        assertEquals(blob, cache.fetch("http://mirror/lib.jar", CHECKSUM, opener, true));
+        assertEquals(1, downloads.get());
+    }
+
+    @Test
+    public void keysIndexEntriesByOpener() throws Exception {
+        File resourceDirectory = new File(directory, "resources");
+        assertTrue(resourceDirectory.mkdirs());
+        Files.write(new File(resourceDirectory, "lib.jar").toPath(), CONTENTS.getBytes(UTF_8));
+        URL[] classPath = new URL[]{resourceDirectory.toURI().toURL()};
+        InputStreamOpener firstOpener =
+                new ResourceInputStreamOpener(new URLClassLoader(classPath, null));
+        InputStreamOpener secondOpener =
+                new ResourceInputStreamOpener(new URLClassLoader(classPath, null));
+
+        ArtifactCache cache = new ArtifactCache(directory);
+        cache.fetch("lib.jar", null, firstOpener, false);
+        cache.fetch("lib.jar", null, firstOpener, false);
+        assertEquals(1, new File(directory, ArtifactCache.INDEX_DIRECTORY_NAME).list().length);
+
+        // Same location, different class loader: not served from the first opener's entry
+        cache.fetch("lib.jar", null, secondOpener, false);
+        assertEquals(2, new File(directory, ArtifactCache.INDEX_DIRECTORY_NAME).list().length);
+    }
+
+    @Test
+    public void sweepsIdleUnreferencedBlobs() {
+        InputStreamOpener otherOpener =
+                location -> new ByteArrayInputStream("Other contents".getBytes(UTF_8));
+        long longAgo = System.currentTimeMillis() - 120000L;
+
+        ArtifactCache cache = new ArtifactCache(directory, 60000L, 60000L);
+        File idleBlob = cache.fetch("http://repo/lib.jar", CHECKSUM, opener, false);
+        File indexDirectory = new File(directory, ArtifactCache.INDEX_DIRECTORY_NAME);
+        assertTrue(indexDirectory.listFiles()[0].setLastModified(longAgo));
+        assertTrue(idleBlob.setLastModified(longAgo));
+
+        File referencedBlob = cache.fetch("http://repo/other.jar", null, otherOpener, false);
+        assertTrue(referencedBlob.setLastModified(longAgo));
+
+        // Restarted: the expired entry and its idle blob are gone, the referenced blob stays
+        new ArtifactCache(directory, 60000L, 60000L);
+        assertFalse(idleBlob.exists());
+        assertTrue(referencedBlob.isFile());
+        assertEquals(1, indexDirectory.list().length);
+
+        // Unreferenced but recently used blobs are kept
+        assertTrue(referencedBlob.setLastModified(longAgo));
+        cache.fetch("http://repo/other.jar", null, otherOpener, false);
+        assertEquals(0, new ArtifactCache(directory, 0L, 60000L).sweep());
+        assertTrue(referencedBlob.isFile());
+        assertEquals(0, indexDirectory.list().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsChecksumMismatch() {
+        String otherChecksum = Hashing.sha256().hashString("other", UTF_8).toString();
+        new ArtifactCache(directory).fetch("http://repo/lib.jar", otherChecksum, opener, false);
+    }
+
+    @Test
+    public void createsFilesFromBlobs() throws Exception {
+        ArtifactCache cache = new ArtifactCache(directory);
+        File targetDirectory = new File(directory, "target");
+
+        InputStreamFileCreator creator =
+                new InputStreamFileCreator("lib/lib.jar", "http://repo/lib.jar", true, CHECKSUM);
+        File file1 = creator.createFile(new File(targetDirectory, "one"), opener, cache);
+        File file2 = creator.createFile(new File(targetDirectory, "two"), opener, cache);
+
+        assertEquals(1, downloads.get());
+        assertEquals(CONTENTS, new String(Files.readAllBytes(file1.toPath()), UTF_8));
+        assertEquals(CONTENTS, new String(Files.readAllBytes(file2.toPath()), UTF_8));
+        assertTrue(ArtifactCache.verify(file2, CHECKSUM));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedChecksum() {
+        new InputStreamFileCreator("lib.jar", "http://repo/lib.jar", false, "md5:1234");
+    }
+}
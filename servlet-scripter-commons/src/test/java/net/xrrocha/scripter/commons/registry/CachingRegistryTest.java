@@ -20,6 +20,23 @@ public class CachingRegistryTest {
         verify(delegate, times(0)).register(key, value);
     }
 
+    @Test
+    public void putsWithoutRegistering() {
+        Registry<String, String> delegate = (Registry<String, String>) mock(Registry.class);
+        CachingRegistry registry = new CachingRegistry<>(delegate);
+        String key = "name";
+        String value = "scripter";
+        registry.put(key, value);
+        verify(delegate, times(1)).put(key, value);
+        verify(delegate, times(0)).register(key, value);
+        reset(delegate);
+        registry.put(key, value);
+        verify(delegate, times(0)).put(key, value);
+        registry.remove(key);
+        verify(delegate, times(1)).remove(key);
+        verify(delegate, times(0)).deregister(key);
+    }
+
     @Test
     public void deregisters() {
         Registry<String, String> delegate = (Registry<String, String>) mock(Registry.class);
@@ -0,0 +1,47 @@
+package net.xrrocha.scripter.commons.registry;
+
+import com.google.common.base.Converter;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConvertingRegistryTest {
+
+    @Test
+    public void putsAndRemovesWithoutBackwardConversion() {
+        Map<String, String> map = new HashMap<>();
+        AtomicInteger backwardConversions = new AtomicInteger();
+        Registry<String, Integer> registry = new ConvertingRegistry<>(
+                new MapBasedRegistry<>(map),
+                Converter.identity(),
+                new Converter<Integer, String>() {
+                    @Override
+                    protected String doForward(Integer integer) {
+                        return integer.toString();
+                    }
+
+                    @Override
+                    protected Integer doBackward(String string) {
+                        backwardConversions.incrementAndGet();
+                        return Integer.valueOf(string);
+                    }
+                });
+
+        registry.put("answer", 41);
+        registry.put("answer", 42);
+        assertEquals("42", map.get("answer"));
+        assertEquals(0, backwardConversions.get());
+
+        assertEquals(Optional.of(42), registry.lookup("answer"));
+        assertEquals(1, backwardConversions.get());
+
+        registry.remove("answer");
+        assertEquals(0, map.size());
+        assertEquals(1, backwardConversions.get());
+    }
+}
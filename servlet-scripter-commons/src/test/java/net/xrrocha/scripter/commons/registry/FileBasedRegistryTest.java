@@ -95,6 +95,21 @@ public class FileBasedRegistryTest {
         assertFalse(file.exists());
     }
 
+    @Test
+    public void putsAndRemovesEntry() throws Exception {
+        String filename = "content.txt";
+        File file = new File(directory, filename);
+        assertFalse(file.exists());
+        registry.put(filename, "This is content #1");
+        registry.put(filename, "This is content #2");
+        assertTrue(file.isFile());
+        assertEquals("This is content #2", CharStreams.toString(new FileReader(file)));
+        registry.remove(filename);
+        assertFalse(file.exists());
+        registry.remove(filename);
+        assertFalse(file.exists());
+    }
+
     @Test
     public void listsAllEntries() throws Exception {
 
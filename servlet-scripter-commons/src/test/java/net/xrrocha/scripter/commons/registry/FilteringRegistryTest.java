@@ -0,0 +1,31 @@
+package net.xrrocha.scripter.commons.registry;
+
+import com.google.common.collect.Iterables;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class FilteringRegistryTest {
+
+    @Test
+    public void filtersReadsOnly() {
+        Map<String, String> map = new HashMap<>();
+        FilteringRegistry<String, String> registry =
+                new FilteringRegistry<>(new MapBasedRegistry<>(map), key -> key.startsWith("a"));
+
+        registry.register("apple", "red");
+        registry.put("banana", "yellow");
+        assertEquals(2, map.size());
+
+        assertEquals(Optional.of("red"), registry.lookup("apple"));
+        assertEquals(Optional.empty(), registry.lookup("banana"));
+        assertEquals(1, Iterables.size(registry.list()));
+
+        registry.remove("banana");
+        assertFalse(map.containsKey("banana"));
+    }
+}
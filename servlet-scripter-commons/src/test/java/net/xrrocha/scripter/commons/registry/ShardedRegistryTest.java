@@ -0,0 +1,106 @@
+package net.xrrocha.scripter.commons.registry;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toSet;
+import static net.xrrocha.scripter.commons.io.FileUtils.TEMP_DIRECTORY;
+import static net.xrrocha.scripter.commons.io.FileUtils.purge;
+import static org.junit.Assert.*;
+
+public class ShardedRegistryTest {
+
+    private static final File directory =
+            new File(TEMP_DIRECTORY, "sharded-" + System.currentTimeMillis());
+
+    @Before
+    public void purgeRegistryDirectory() {
+        purge(directory);
+        assertFalse(directory.exists());
+        assertTrue(directory.mkdir());
+    }
+
+    @Test
+    public void spreadsEntriesAcrossShards() {
+        ShardedRegistry registry = new ShardedRegistry(directory, 4, null);
+        for (int i = 0; i < 64; i++) {
+            registry.register("content" + i + ".txt", "This is content #" + i);
+        }
+
+        assertEquals(4, registry.getDirectories().size());
+        for (File shardDirectory : registry.getDirectories()) {
+            String[] shardFiles = shardDirectory.list();
+            assertNotNull(shardFiles);
+            assertTrue(shardFiles.length > 0 && shardFiles.length < 64);
+        }
+
+        assertEquals(Optional.of("This is content #7"), registry.lookup("content7.txt"));
+        assertEquals(64, Iterables.size(registry.list()));
+    }
+
+    @Test
+    public void listsAllShards() {
+        ShardedRegistry registry = new ShardedRegistry(ImmutableList.of(
+                new File(directory, "disk1"),
+                new File(directory, "disk2")), null);
+        registry.put("content1.txt", "This is content #1");
+        registry.put("content2.txt", "This is content #2");
+        registry.put("content3.txt", "This is content #3");
+        registry.remove("content2.txt");
+
+        Set<String> filenames =
+                Lists.newArrayList(registry.list()).stream().map(Entry::getKey).collect(toSet());
+        assertEquals(2, filenames.size());
+        assertTrue(filenames.contains("content1.txt") && filenames.contains("content3.txt"));
+        assertEquals(Optional.of("This is content #3"), registry.deregister("content3.txt"));
+    }
+
+    @Test
+    public void migratesUnshardedFiles() throws Exception {
+        Files.write(new File(directory, "content.txt").toPath(), "This is content".getBytes());
+
+        ShardedRegistry registry = new ShardedRegistry(directory, 2, null);
+
+        assertFalse(new File(directory, "content.txt").exists());
+        assertEquals(Optional.of("This is content"), registry.lookup("content.txt"));
+    }
+
+    @Test
+    public void rehashesFilesUponShardCountChange() {
+        ShardedRegistry registry = new ShardedRegistry(directory, 4, null);
+        for (int i = 0; i < 16; i++) {
+            registry.register("content" + i + ".txt", "This is content #" + i);
+        }
+
+        for (int shardCount : new int[]{2, 8}) {
+            ShardedRegistry reshardedRegistry = new ShardedRegistry(directory, shardCount, null);
+            assertEquals(16, Iterables.size(reshardedRegistry.list()));
+            for (int i = 0; i < 16; i++) {
+                String filename = "content" + i + ".txt";
+                assertEquals(Optional.of("This is content #" + i),
+                        reshardedRegistry.lookup(filename));
+                assertTrue(new File(reshardedRegistry.shardFor(filename).getDirectory(), filename)
+                        .isFile());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void validatesKeys() {
+        new ShardedRegistry(directory, 2, "^[a-z]+\\.yaml$").register("content.txt", "content");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveShardCount() {
+        new ShardedRegistry(directory, 0, null);
+    }
+}
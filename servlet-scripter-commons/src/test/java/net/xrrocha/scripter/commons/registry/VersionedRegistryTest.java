@@ -0,0 +1,125 @@
+package net.xrrocha.scripter.commons.registry;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class VersionedRegistryTest {
+
+    @Test
+    public void populatesFromDelegate() {
+        Map<String, String> map = new HashMap<>();
+        map.put("name", "scripter");
+        VersionedRegistry<String, String> registry =
+                new VersionedRegistry<>(new MapBasedRegistry<>(map));
+        assertEquals(Optional.of("scripter"), registry.lookup("name"));
+        assertEquals(1, Iterables.size(registry.list()));
+    }
+
+    @Test
+    public void retainsUpToMaxVersions() {
+        Map<String, String> map = new HashMap<>();
+        VersionedRegistry<String, String> registry =
+                new VersionedRegistry<>(new MapBasedRegistry<>(map), 3);
+        assertEquals(Optional.empty(), registry.register("name", "v1"));
+        assertEquals(Optional.of("v1"), registry.register("name", "v2"));
+        registry.put("name", "v3");
+        registry.put("name", "v4");
+        assertEquals("v4", map.get("name"));
+        assertEquals(ImmutableList.of("v4", "v3", "v2"), registry.snapshot().versions("name"));
+    }
+
+    @Test
+    public void rollsBackToPreviousVersion() {
+        Map<String, String> map = new HashMap<>();
+        VersionedRegistry<String, String> registry =
+                new VersionedRegistry<>(new MapBasedRegistry<>(map));
+        registry.register("name", "v1");
+        registry.register("name", "v2");
+        assertEquals(Optional.of("v1"), registry.rollback("name"));
+        assertEquals(Optional.of("v1"), registry.lookup("name"));
+        assertEquals("v1", map.get("name"));
+        assertEquals(Optional.empty(), registry.rollback("name"));
+        assertEquals(Optional.empty(), registry.rollback("nonExistent"));
+    }
+
+    @Test
+    public void snapshotsAreUnaffectedByUpdates() {
+        VersionedRegistry<String, String> registry =
+                new VersionedRegistry<>(new MapBasedRegistry<>(new HashMap<>()));
+        for (int i = 0; i < 256; i++) {
+            registry.register("key" + i, "value" + i);
+        }
+        VersionedRegistry.Snapshot<String, String> snapshot = registry.snapshot();
+
+        registry.register("key0", "newValue");
+        registry.deregister("key1");
+
+        assertEquals(256, snapshot.size());
+        assertEquals(Optional.of("value0"), snapshot.lookup("key0"));
+        assertEquals(Optional.of("value1"), snapshot.lookup("key1"));
+        assertEquals(Optional.of("newValue"), registry.lookup("key0"));
+        assertEquals(Optional.empty(), registry.lookup("key1"));
+        assertEquals(255, registry.snapshot().size());
+    }
+
+    @Test
+    public void deregistersAllVersions() {
+        Map<String, String> map = new HashMap<>();
+        VersionedRegistry<String, String> registry =
+                new VersionedRegistry<>(new MapBasedRegistry<>(map));
+        registry.register("name", "v1");
+        registry.register("name", "v2");
+        assertEquals(Optional.of("v2"), registry.deregister("name"));
+        assertFalse(map.containsKey("name"));
+        assertTrue(registry.snapshot().versions("name").isEmpty());
+    }
+
+    @Test
+    public void refreshesWithoutWritingThrough() {
+        Map<String, String> map = new HashMap<>();
+        VersionedRegistry<String, String> registry =
+                new VersionedRegistry<>(new MapBasedRegistry<>(map));
+        registry.register("name", "v1");
+        registry.refresh("name", "v2");
+        assertEquals(Optional.of("v2"), registry.lookup("name"));
+        assertEquals("v1", map.get("name"));
+        registry.refresh("name", null);
+        assertEquals(Optional.empty(), registry.lookup("name"));
+        assertEquals("v1", map.get("name"));
+    }
+
+    @Test
+    public void notifiesEvictedVersions() {
+        List<String> evictedValues = new ArrayList<>();
+        VersionedRegistry<String, String> registry = new VersionedRegistry<>(
+                new MapBasedRegistry<>(new HashMap<>()), 2, evictedValues::add);
+        registry.register("name", "v1");
+        registry.register("name", "v2");
+        assertTrue(evictedValues.isEmpty());
+        registry.register("name", "v3");
+        assertEquals(ImmutableList.of("v1"), evictedValues);
+        registry.rollback("name");
+        assertEquals(ImmutableList.of("v1", "v3"), evictedValues);
+        registry.deregister("name");
+        assertEquals(ImmutableList.of("v1", "v3", "v2"), evictedValues);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void rejectsNullDelegate() {
+        new VersionedRegistry<>(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveMaxVersions() {
+        new VersionedRegistry<>(new MapBasedRegistry<>(new HashMap<>()), 0);
+    }
+}
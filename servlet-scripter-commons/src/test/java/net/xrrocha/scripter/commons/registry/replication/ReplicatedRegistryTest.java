@@ -0,0 +1,199 @@
+package net.xrrocha.scripter.commons.registry.replication;
+
+import com.google.common.collect.Iterables;
+import net.xrrocha.scripter.commons.registry.MapBasedRegistry;
+import net.xrrocha.scripter.commons.registry.VersionedRegistry;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class ReplicatedRegistryTest {
+
+    @Test
+    public void replicatesRegistrationsAndDeregistrations() {
+        LoopbackReplicationTransport<String, String> transport =
+                new LoopbackReplicationTransport<>();
+        ReplicatedRegistry<String, String> node1 = newNode("node1", transport);
+        ReplicatedRegistry<String, String> node2 = newNode("node2", transport);
+
+        List<String> replicatedKeys = new ArrayList<>();
+        node2.addReplicationListener((key, value) -> replicatedKeys.add(key));
+
+        node1.register("one", "uno");
+        assertEquals(Optional.of("uno"), node2.lookup("one"));
+
+        node1.put("two", "dos");
+        node2.remove("one");
+        assertEquals(Optional.empty(), node1.lookup("one"));
+        assertEquals(Optional.of("dos"), node2.lookup("two"));
+
+        assertTrue(node2.awaitNotifications(5, TimeUnit.SECONDS));
+        assertEquals(2, replicatedKeys.size());
+        assertEquals(2, node2.getAppliedEventCount());
+        assertTrue(node2.getMaxReplicationLagMillis() >= node2.getReplicationLagMillis());
+    }
+
+    @Test
+    public void replaysHistoryToLateJoiners() {
+        LoopbackReplicationTransport<String, String> transport =
+                new LoopbackReplicationTransport<>();
+        ReplicatedRegistry<String, String> node1 = newNode("node1", transport);
+        node1.register("one", "uno");
+        node1.register("two", "dos");
+        node1.deregister("two");
+
+        ReplicatedRegistry<String, String> node2 = newNode("node2", transport);
+        assertEquals(Optional.of("uno"), node2.lookup("one"));
+        assertEquals(Optional.empty(), node2.lookup("two"));
+    }
+
+    @Test
+    public void lastWriterWins() {
+        List<ReplicationEvent<String, String>> published = new ArrayList<>();
+        ReplicationTransport<String, String> transport = new ReplicationTransport<String, String>() {
+            @Override
+            public void publish(ReplicationEvent<String, String> event) {
+                published.add(event);
+            }
+
+            @Override
+            public void subscribe(Consumer<ReplicationEvent<String, String>> subscriber) {
+            }
+        };
+        ReplicatedRegistry<String, String> node = newNode("node1", transport);
+
+        // Out-of-order delivery: the older event arrives last and is discarded
+        ReplicationEvent<String, String> newer =
+                new ReplicationEvent<>("node2", 2, System.currentTimeMillis(), "key", "newer");
+        ReplicationEvent<String, String> older =
+                new ReplicationEvent<>("node2", 1, System.currentTimeMillis(), "key", "older");
+        node.apply(newer);
+        node.apply(older);
+        assertEquals(Optional.of("newer"), node.lookup("key"));
+        assertEquals(1, node.getDiscardedEventCount());
+
+        // Local writes are ordered after everything seen so far
+        node.register("key", "local");
+        assertTrue(published.get(0).supersedes(newer));
+
+        // Concurrent events on the same clock are resolved by node id
+        node.apply(new ReplicationEvent<>("node0", published.get(0).getClock(),
+                System.currentTimeMillis(), "key", null));
+        assertEquals(Optional.of("local"), node.lookup("key"));
+        node.apply(new ReplicationEvent<>("node9", published.get(0).getClock(),
+                System.currentTimeMillis(), "key", null));
+        assertEquals(Optional.empty(), node.lookup("key"));
+    }
+
+    @Test
+    public void survivesConcurrentWritesFromListeningNodes() throws InterruptedException {
+        LoopbackReplicationTransport<String, String> transport =
+                new LoopbackReplicationTransport<>();
+        ReplicatedRegistry<String, String> node1 = newNode("node1", transport);
+        ReplicatedRegistry<String, String> node2 = newNode("node2", transport);
+
+        // Listeners write back into registries that write through to the replicated ones
+        VersionedRegistry<String, String> versioned1 = newVersionedRegistry(node1);
+        VersionedRegistry<String, String> versioned2 = newVersionedRegistry(node2);
+
+        int keyCount = 200;
+        Thread writer1 = new Thread(() -> {
+            for (int i = 0; i < keyCount; i++) {
+                versioned1.put("one-" + i, "uno");
+            }
+        });
+        Thread writer2 = new Thread(() -> {
+            for (int i = 0; i < keyCount; i++) {
+                versioned2.put("two-" + i, "dos");
+            }
+        });
+        writer1.start();
+        writer2.start();
+        writer1.join(10000L);
+        writer2.join(10000L);
+        assertFalse("Writers deadlocked", writer1.isAlive() || writer2.isAlive());
+
+        assertTrue(node1.awaitNotifications(5, TimeUnit.SECONDS));
+        assertTrue(node2.awaitNotifications(5, TimeUnit.SECONDS));
+        assertEquals(2 * keyCount, Iterables.size(versioned1.list()));
+        assertEquals(2 * keyCount, Iterables.size(versioned2.list()));
+    }
+
+    @Test
+    public void resumesClockAndVersionsAcrossRestarts() throws IOException {
+        List<ReplicationEvent<String, String>> published = new ArrayList<>();
+        ReplicationTransport<String, String> transport = new ReplicationTransport<String, String>() {
+            @Override
+            public void publish(ReplicationEvent<String, String> event) {
+                published.add(event);
+            }
+
+            @Override
+            public void subscribe(Consumer<ReplicationEvent<String, String>> subscriber) {
+            }
+        };
+        MapBasedRegistry<String, String> delegate = new MapBasedRegistry<>(new HashMap<>());
+        File stateFile = new File(Files.createTempDirectory("replication").toFile(), "state");
+
+        ReplicatedRegistry<String, String> node =
+                new ReplicatedRegistry<>("node1", delegate, transport, stateFile);
+        ReplicationEvent<String, String> remotePut =
+                new ReplicationEvent<>("node2", 5, System.currentTimeMillis(), "one", "uno");
+        node.apply(remotePut);
+        node.register("two", "dos");
+        node.remove("one");
+        for (int i = 0; i < 32; i++) {
+            node.put("two", "dos-" + i);
+        }
+        long clock = node.getClock();
+        node.close();
+        long length = stateFile.length();
+
+        ReplicatedRegistry<String, String> restarted =
+                new ReplicatedRegistry<>("node1", delegate, transport, stateFile);
+        assertEquals(clock, restarted.getClock());
+        // Superseded records are compacted away upon loading
+        assertTrue(stateFile.length() < length);
+
+        // A replayed put doesn't resurrect the key removed after it
+        restarted.apply(remotePut);
+        assertEquals(Optional.empty(), restarted.lookup("one"));
+        assertEquals(1, restarted.getDiscardedEventCount());
+
+        // Local writes are ordered after those made before restarting
+        restarted.put("two", "tres");
+        assertEquals(clock + 1, published.get(published.size() - 1).getClock());
+        restarted.apply(new ReplicationEvent<>("node2", clock, System.currentTimeMillis(),
+                "two", "stale"));
+        assertEquals(Optional.of("tres"), restarted.lookup("two"));
+        restarted.close();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void rejectsNullNodeId() {
+        newNode(null, new LoopbackReplicationTransport<>());
+    }
+
+    private ReplicatedRegistry<String, String> newNode(String nodeId,
+                                                      ReplicationTransport<String, String> transport) {
+        return new ReplicatedRegistry<>(nodeId, new MapBasedRegistry<>(new HashMap<>()), transport);
+    }
+
+    private VersionedRegistry<String, String> newVersionedRegistry(
+            ReplicatedRegistry<String, String> node) {
+        VersionedRegistry<String, String> versionedRegistry = new VersionedRegistry<>(node);
+        node.addReplicationListener((key, value) ->
+                versionedRegistry.refresh(key, value.orElse(null)));
+        return versionedRegistry;
+    }
+}
@@ -0,0 +1,318 @@
+package net.xrrocha.scripter;
+
+import net.xrrocha.scripter.commons.classloader.ClassLoaderLeakDetector;
+import net.xrrocha.scripter.commons.classloader.ParentLastClassLoaderCreator;
+import net.xrrocha.scripter.commons.io.ArtifactCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static net.xrrocha.scripter.commons.io.FileUtils.isValidDirectory;
+
+/**
+ * Reference-counted cache of script class loaders shared among scripts declaring identical jar
+ * and resource sets. Each distinct set is downloaded once, under a directory named after its
+ * content hash, and loaded by a single class loader; the class loader is closed once the last
+ * script using it is disposed of.
+ * <p>
+ * Jar and resource contents are taken from a content-addressed @see{ArtifactCache} so that an
+ * artifact referenced by several distinct sets is still downloaded only once. Sets requiring
+ * one or more files to be recreated are never shared: each gets a fresh directory and class
+ * loader of its own.
+ * <p>
+ * Class loaders are created outside this cache's lock: concurrent requests for the same set wait
+ * for a single creation while requests for other sets proceed. Identical sets under different
+ * parent class loaders get distinct class loaders sharing one directory; their files are
+ * identical and each is moved into place atomically, so concurrent creations don't interfere. A
+ * directory is deleted once the last class loader using it is closed.
+ * <p>
+ * Released class loaders are torn down deterministically: threads still using them as their
+ * context class loader are reset to the parent and the class loader is closed, releasing its open
+ * jar files. Released class loaders are then watched by a @see{ClassLoaderLeakDetector}.
+ */
+class ClassLoaderCache {
+
+    /**
+     * The subdirectory (of the class loader directory) holding shared jar and resource sets. Script
+     * ids start with a letter so they can't clash with it.
+     */
+    static final String SHARED_DIRECTORY_NAME = "_shared";
+
+    private static final Logger logger = LoggerFactory.getLogger(ClassLoaderCache.class);
+
+    private final File sharedDirectory;
+    private final ArtifactCache artifactCache;
+    private final ClassLoaderLeakDetector leakDetector;
+    // Keyed by parent class loader identity, then by content hash. Entries are removed upon
+    // release of their last reference, so parents aren't held beyond their scripts' lifetime
+    private final Map<ClassLoader, Map<String, CompletableFuture<SharedClassLoader>>> classLoaders =
+            new IdentityHashMap<>();
+    // The number of (created or being created) class loaders using each directory
+    private final Map<String, Integer> directoryUsers = new HashMap<>();
+
+    ClassLoaderCache(@NotNull File baseClassLoaderDirectory, @Null ArtifactCache artifactCache) {
+        this(baseClassLoaderDirectory, artifactCache, new ClassLoaderLeakDetector());
+    }
+
+    ClassLoaderCache(@NotNull File baseClassLoaderDirectory,
+                     @Null ArtifactCache artifactCache,
+                     @NotNull ClassLoaderLeakDetector leakDetector) {
+        checkNotNull(baseClassLoaderDirectory, "Base class loader directory cannot be null");
+        checkNotNull(leakDetector, "Leak detector cannot be null");
+        this.artifactCache = artifactCache;
+        this.leakDetector = leakDetector;
+        this.sharedDirectory = new File(baseClassLoaderDirectory, SHARED_DIRECTORY_NAME);
+        checkArgument(isValidDirectory(sharedDirectory),
+                "Invalid shared class loader directory: " + sharedDirectory);
+    }
+
+    /**
+     * Acquire a reference to the class loader for the given creator's jar and resource set,
+     * creating it if needed.
+     *
+     * @param creator           The class loader creator
+     * @param parentClassLoader The parent class loader
+     * @return The key to release the class loader with, along with the class loader itself
+     */
+    SharedClassLoader acquire(@NotNull ParentLastClassLoaderCreator creator,
+                              @NotNull ClassLoader parentClassLoader) {
+
+        // Recreated files must be fetched anew, not taken from a class loader sharing the hash
+        String contentHash = creator.isRecreate() ?
+                creator.getContentHash() + "-" + UUID.randomUUID() :
+                creator.getContentHash();
+        while (true) {
+            CompletableFuture<SharedClassLoader> newClassLoader = new CompletableFuture<>();
+            final CompletableFuture<SharedClassLoader> futureClassLoader;
+            synchronized (this) {
+                futureClassLoader = classLoaders
+                        .computeIfAbsent(parentClassLoader, parent -> new HashMap<>())
+                        .computeIfAbsent(contentHash, hash -> newClassLoader);
+                if (futureClassLoader == newClassLoader) {
+                    directoryUsers.merge(contentHash, 1, Integer::sum);
+                }
+            }
+
+            if (futureClassLoader == newClassLoader) {
+                create(creator, parentClassLoader, contentHash, newClassLoader);
+            }
+
+            final SharedClassLoader sharedClassLoader;
+            try {
+                sharedClassLoader = futureClassLoader.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalArgumentException(e.getCause());
+            }
+
+            synchronized (this) {
+                // Unless released (and closed) by its last user since completion
+                if (lookup(parentClassLoader, contentHash) == futureClassLoader) {
+                    sharedClassLoader.references++;
+                    return sharedClassLoader;
+                }
+            }
+        }
+    }
+
+    private void create(@NotNull ParentLastClassLoaderCreator creator,
+                        @NotNull ClassLoader parentClassLoader,
+                        @NotNull String contentHash,
+                        @NotNull CompletableFuture<SharedClassLoader> futureClassLoader) {
+
+        File classLoaderDirectory = new File(sharedDirectory, contentHash);
+        File resourceDirectory = new File(classLoaderDirectory, "resources");
+        logger.debug("Creating shared class loader under '" + classLoaderDirectory + "'");
+        try {
+            ClassLoader classLoader = creator.createClassLoader(
+                    parentClassLoader,
+                    classLoaderDirectory,
+                    resourceDirectory,
+                    artifactCache);
+            String key = contentHash + "@" + System.identityHashCode(parentClassLoader);
+            futureClassLoader.complete(
+                    new SharedClassLoader(key, contentHash, classLoader, parentClassLoader));
+        } catch (RuntimeException e) {
+            // Failed creations aren't cached: later requests try again
+            synchronized (this) {
+                remove(parentClassLoader, contentHash, futureClassLoader);
+                releaseDirectory(contentHash);
+            }
+            futureClassLoader.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Release a reference to a shared class loader, closing it if it was the last one.
+     *
+     * @param sharedClassLoader The previously acquired class loader
+     */
+    void release(@NotNull SharedClassLoader sharedClassLoader) {
+
+        synchronized (this) {
+            if (--sharedClassLoader.references > 0) {
+                return;
+            }
+            CompletableFuture<SharedClassLoader> futureClassLoader =
+                    lookup(sharedClassLoader.parentClassLoader, sharedClassLoader.contentHash);
+            if (futureClassLoader != null && futureClassLoader.getNow(null) == sharedClassLoader) {
+                remove(sharedClassLoader.parentClassLoader, sharedClassLoader.contentHash,
+                        futureClassLoader);
+            }
+        }
+
+        logger.debug("Closing shared class loader '" + sharedClassLoader.key + "'");
+        clearContextClassLoader(sharedClassLoader.classLoader, sharedClassLoader.parentClassLoader);
+        if (sharedClassLoader.classLoader instanceof Closeable) {
+            try {
+                ((Closeable) sharedClassLoader.classLoader).close();
+            } catch (IOException e) {
+                logger.warn("Error closing class loader '" + sharedClassLoader.key + "': " + e, e);
+            }
+        }
+
+        leakDetector.disposed(sharedClassLoader.key, sharedClassLoader.classLoader);
+
+        synchronized (this) {
+            releaseDirectory(sharedClassLoader.contentHash);
+        }
+    }
+
+    /**
+     * Delete a class loader directory once no class loader uses it. Deletion happens while
+     * holding this cache's lock (which callers must hold) so that no new class loader starts
+     * populating it meanwhile.
+     */
+    private void releaseDirectory(@NotNull String contentHash) {
+        if (directoryUsers.merge(contentHash, -1, Integer::sum) > 0) {
+            return;
+        }
+        directoryUsers.remove(contentHash);
+
+        File classLoaderDirectory = new File(sharedDirectory, contentHash);
+        logger.debug("Deleting class loader directory '" + classLoaderDirectory + "'");
+        if (!classLoaderDirectory.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(classLoaderDirectory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.warn("Error deleting class loader directory '" + classLoaderDirectory + "': " +
+                    e);
+        }
+    }
+
+    // Must be called holding this cache's lock
+    private CompletableFuture<SharedClassLoader> lookup(@NotNull ClassLoader parentClassLoader,
+                                                        @NotNull String contentHash) {
+        Map<String, CompletableFuture<SharedClassLoader>> parentClassLoaders =
+                classLoaders.get(parentClassLoader);
+        return parentClassLoaders == null ? null : parentClassLoaders.get(contentHash);
+    }
+
+    // Must be called holding this cache's lock
+    private void remove(@NotNull ClassLoader parentClassLoader,
+                        @NotNull String contentHash,
+                        @NotNull CompletableFuture<SharedClassLoader> futureClassLoader) {
+        Map<String, CompletableFuture<SharedClassLoader>> parentClassLoaders =
+                classLoaders.get(parentClassLoader);
+        if (parentClassLoaders != null &&
+                parentClassLoaders.remove(contentHash, futureClassLoader) &&
+                parentClassLoaders.isEmpty()) {
+            classLoaders.remove(parentClassLoader);
+        }
+    }
+
+    /**
+     * Retrieve the keys of released class loaders that should have been collected by now but
+     * are still reachable.
+     *
+     * @return The leaked class loader keys, possibly empty
+     */
+    List<String> findLeaks() {
+        return leakDetector.findLeaks();
+    }
+
+    synchronized int size() {
+        return classLoaders.values().stream().mapToInt(Map::size).sum();
+    }
+
+    /**
+     * Reset the context class loader of live threads still referencing a released class loader.
+     * Executions restore their thread's context class loader and the scripter's own pools don't
+     * inherit it, so this only touches threads a script started and left behind; threads are
+     * enumerated without capturing their stacks.
+     */
+    static void clearContextClassLoader(@NotNull ClassLoader classLoader,
+                                        @NotNull ClassLoader parentClassLoader) {
+        for (Thread thread : liveThreads()) {
+            if (thread.getContextClassLoader() == classLoader) {
+                logger.warn("Resetting context class loader of thread '" + thread.getName() +
+                        "' left behind by a released script");
+                thread.setContextClassLoader(parentClassLoader);
+            }
+        }
+    }
+
+    private static Thread[] liveThreads() {
+        ThreadGroup rootGroup = Thread.currentThread().getThreadGroup();
+        while (rootGroup.getParent() != null) {
+            rootGroup = rootGroup.getParent();
+        }
+
+        // Threads started meanwhile would be silently left out of a full array
+        Thread[] threads = new Thread[rootGroup.activeCount() + 1];
+        int threadCount;
+        while ((threadCount = rootGroup.enumerate(threads, true)) == threads.length) {
+            threads = new Thread[threads.length * 2];
+        }
+        return Arrays.copyOf(threads, threadCount);
+    }
+
+    /**
+     * A class loader along with its cache key and reference count.
+     */
+    static final class SharedClassLoader {
+
+        private final String key;
+        private final String contentHash;
+        private final ClassLoader classLoader;
+        private final ClassLoader parentClassLoader;
+        private int references;
+
+        private SharedClassLoader(@NotNull String key,
+                                  @NotNull String contentHash,
+                                  @NotNull ClassLoader classLoader,
+                                  @NotNull ClassLoader parentClassLoader) {
+            this.key = key;
+            this.contentHash = contentHash;
+            this.classLoader = classLoader;
+            this.parentClassLoader = parentClassLoader;
+        }
+
+        ClassLoader getClassLoader() {
+            return classLoader;
+        }
+    }
+}
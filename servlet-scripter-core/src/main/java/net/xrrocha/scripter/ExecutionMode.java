@@ -0,0 +1,13 @@
+package net.xrrocha.scripter;
+
+/**
+ * Threads script executions run on.
+ * <p>
+ * <code>VIRTUAL_THREAD</code> suits scripts mostly blocking on remote I/O executed through
+ * <code>Scripter.executeScriptAsync</code>, as used by the HTTP route and the script scheduler; it
+ * falls back to <code>CALLER_THREAD</code> on runtimes lacking virtual threads.
+ * <code>Scripter.executeScript</code> always runs on the caller's thread.
+ */
+public enum ExecutionMode {
+    CALLER_THREAD, VIRTUAL_THREAD
+}
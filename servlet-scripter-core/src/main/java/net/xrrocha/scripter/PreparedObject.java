@@ -1,15 +1,28 @@
 package net.xrrocha.scripter;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Base class for prepared scripts and services.
+ * <p>
+ * Prepared objects are reference-counted: the script registry holds one reference until the
+ * object is retired (replaced beyond the retained versions or removed) and each in-flight
+ * execution holds another. Once the count drops to zero the object's resources (script engine,
+ * class loader) are released and the object can no longer be acquired.
  */
 public abstract class PreparedObject implements Serializable {
 
+    private static final Logger logger = LoggerFactory.getLogger(PreparedObject.class);
+
     /**
      * The originating script.
      */
@@ -20,11 +33,82 @@ public abstract class PreparedObject implements Serializable {
      */
     private final String yamlString;
 
+    /**
+     * The (optional) resources to release upon disposal.
+     */
+    private final AutoCloseable resources;
+
+    /**
+     * The number of outstanding references, starting with the registry's own.
+     */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private final AtomicBoolean retired = new AtomicBoolean(false);
+
     public PreparedObject(@NotNull Script script, @NotNull String yamlString) {
+        this(script, yamlString, null);
+    }
+
+    public PreparedObject(@NotNull Script script,
+                          @NotNull String yamlString,
+                          @Null AutoCloseable resources) {
         checkNotNull(script, "Script cannot be null");
         checkNotNull(yamlString, "Yaml string cannot be null");
         this.script = script;
         this.yamlString = yamlString;
+        this.resources = resources;
+    }
+
+    /**
+     * Acquire a reference for the duration of an execution.
+     *
+     * @return <code>false</code> if this object has already been disposed of
+     */
+    public boolean acquire() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release a previously acquired reference, disposing of this object if it was the last one.
+     */
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            dispose();
+        }
+    }
+
+    /**
+     * Release the registry's own reference. In-flight executions (if any) complete normally and
+     * the last one to finish disposes of this object.
+     */
+    public void retire() {
+        if (retired.compareAndSet(false, true)) {
+            logger.debug("Retiring '{}'", script.getId());
+            release();
+        }
+    }
+
+    public boolean isDisposed() {
+        return references.get() == 0;
+    }
+
+    void dispose() {
+        logger.debug("Disposing of '{}'", script.getId());
+        if (resources != null) {
+            try {
+                resources.close();
+            } catch (Exception e) {
+                logger.warn("Error releasing resources for '" + script.getId() + "': " + e, e);
+            }
+        }
     }
 
     @Override
@@ -1,8 +1,12 @@
 package net.xrrocha.scripter;
 
+import net.xrrocha.scripter.cache.ResultCache;
+import net.xrrocha.scripter.commons.concurrent.SingleFlight;
+
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Null;
 import java.util.Map;
+import java.util.Optional;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -16,15 +20,42 @@ public class PreparedScript extends PreparedObject {
      */
     private final ScriptExecutor scriptExecutor;
 
+    /**
+     * The results of this script version, if cached.
+     */
+    private final ResultCache resultCache;
+
+    /**
+     * The in-flight executions of this script version, if coalesced.
+     */
+    private final SingleFlight<Map<String, Object>, Object> singleFlight;
+
     public PreparedScript(@NotNull Script script,
                           @NotNull String yamlString,
                           @NotNull ScriptExecutor scriptExecutor) {
-        super(script, yamlString);
+        this(script, yamlString, scriptExecutor, null);
+    }
+
+    public PreparedScript(@NotNull Script script,
+                          @NotNull String yamlString,
+                          @NotNull ScriptExecutor scriptExecutor,
+                          @Null AutoCloseable resources) {
+        super(script, yamlString, resources);
         checkNotNull(scriptExecutor, "Script executor cannot bee null");
         this.scriptExecutor = scriptExecutor;
+        this.resultCache = script.getCache().map(ResultCache::new).orElse(null);
+        this.singleFlight = script.isCoalesce() ? new SingleFlight<>() : null;
     }
 
     public Object executeScript(@Null Map<String, Object> invocationVariables) {
         return scriptExecutor.executeScript(invocationVariables);
     }
+
+    public Optional<ResultCache> getResultCache() {
+        return Optional.ofNullable(resultCache);
+    }
+
+    public Optional<SingleFlight<Map<String, Object>, Object>> getSingleFlight() {
+        return Optional.ofNullable(singleFlight);
+    }
 }
@@ -1,6 +1,7 @@
 package net.xrrocha.scripter;
 
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -17,7 +18,14 @@ public class PreparedService extends PreparedObject {
     public PreparedService(@NotNull Script script,
                            @NotNull String yamlString,
                            @NotNull Object service) {
-        super(script, yamlString);
+        this(script, yamlString, service, null);
+    }
+
+    public PreparedService(@NotNull Script script,
+                           @NotNull String yamlString,
+                           @NotNull Object service,
+                           @Null AutoCloseable resources) {
+        super(script, yamlString, resources);
         checkNotNull(service, "Service cannot bee null");
         this.service = service;
     }
@@ -1,11 +1,15 @@
 package net.xrrocha.scripter;
 
 import com.google.common.base.MoreObjects;
+import net.xrrocha.scripter.cache.CachePolicy;
 import net.xrrocha.scripter.commons.Initializable;
 import net.xrrocha.scripter.commons.classloader.ParentLastClassLoaderCreator;
+import net.xrrocha.scripter.schedule.ScriptSchedule;
 
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
 import java.io.Serializable;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -13,9 +17,12 @@ import java.util.UUID;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
+import static net.xrrocha.scripter.ScriptUsage.INVOCABLE_FUNCTION;
 import static net.xrrocha.scripter.ScriptUsage.INVOCABLE_SCRIPT;
+import static net.xrrocha.scripter.ScriptUsage.REUSABLE_SERVICE;
 
 /**
  * Script definition.
@@ -30,6 +37,13 @@ public class Script implements Initializable, Serializable {
     private final Set<String> services;
     private final Map<String, Object> globalVariables;
     private final String script;
+    private final String entryPoint;
+    private final List<String> parameters;
+    private final String serviceInterface;
+    private final ExecutionMode executionMode;
+    private final ScriptSchedule schedule;
+    private final CachePolicy cache;
+    private final boolean coalesce;
 
     /**
      * The reflective, field-based constructor for JSON/Yaml field-based bean access.
@@ -43,6 +57,13 @@ public class Script implements Initializable, Serializable {
         services = emptySet();
         globalVariables = emptyMap();
         script = null;
+        entryPoint = null;
+        parameters = emptyList();
+        serviceInterface = null;
+        executionMode = null;
+        schedule = null;
+        cache = null;
+        coalesce = false;
     }
 
     public Script(@NotNull String id,
@@ -53,46 +74,85 @@ public class Script implements Initializable, Serializable {
                   @NotNull Set<String> services,
                   @NotNull Map<String, Object> globalVariables,
                   @NotNull String script) {
+        this(builder()
+                .id(id)
+                .language(language)
+                .usage(usage)
+                .description(description)
+                .classLoaderCreator(classLoaderCreator)
+                .services(services)
+                .globalVariables(globalVariables)
+                .script(script));
+    }
 
-        if (id != null) {
-            this.id = id;
+    private Script(@NotNull Builder builder) {
+
+        if (builder.id != null) {
+            this.id = builder.id;
         } else {
             this.id = UUID.randomUUID().toString();
         }
 
-        if (language != null) {
-            this.language = language;
+        if (builder.language != null) {
+            this.language = builder.language;
         } else {
             this.language = "javascript";
         }
 
-        if (usage != null) {
-            this.usage = usage;
+        if (builder.usage != null) {
+            this.usage = builder.usage;
         } else {
             this.usage = INVOCABLE_SCRIPT;
         }
 
-        this.script = script;
+        this.script = builder.script;
 
-        this.description = description;
+        this.description = builder.description;
 
-        if (services != null) {
-            this.services = services;
+        if (builder.services != null) {
+            this.services = builder.services;
         } else {
             this.services = emptySet();
         }
 
-        if (globalVariables != null) {
-            this.globalVariables = globalVariables;
+        if (builder.globalVariables != null) {
+            this.globalVariables = builder.globalVariables;
         } else {
             this.globalVariables = emptyMap();
         }
 
-        this.classLoaderCreator = classLoaderCreator;
+        this.classLoaderCreator = builder.classLoaderCreator;
+
+        this.entryPoint = builder.entryPoint;
+
+        if (builder.parameters != null) {
+            this.parameters = builder.parameters;
+        } else {
+            this.parameters = emptyList();
+        }
+
+        this.serviceInterface = builder.serviceInterface;
+
+        this.executionMode = builder.executionMode;
+
+        this.schedule = builder.schedule;
+
+        this.cache = builder.cache;
+
+        this.coalesce = builder.coalesce;
 
         initialize();
     }
 
+    /**
+     * Start building a script. Unset attributes take the same defaults as when loaded from Yaml.
+     *
+     * @return The script builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
     @Override
     public void initialize() {
 
@@ -135,11 +195,68 @@ public class Script implements Initializable, Serializable {
                 throw new IllegalArgumentException("One or more variable names are null or empty");
             }
         }
+
+        if (usage == INVOCABLE_FUNCTION) {
+            checkArgument(entryPoint != null && !entryPoint.trim().isEmpty(),
+                    "Invocable function scripts require an entry point");
+        }
+
+        if (parameters != null) {
+            boolean validParameters =
+                    parameters.stream().allMatch(name -> name != null && !name.trim().isEmpty());
+            checkArgument(validParameters, "One or more parameter names are null or empty");
+        }
+
+        if (serviceInterface != null) {
+            checkArgument(usage == REUSABLE_SERVICE,
+                    "Only reusable services can declare a service interface");
+            checkArgument(!serviceInterface.trim().isEmpty(), "Service interface cannot be blank");
+        }
+
+        if (schedule != null) {
+            checkArgument(usage != REUSABLE_SERVICE, "Reusable services cannot be scheduled");
+        }
+
+        if (cache != null) {
+            checkArgument(usage != REUSABLE_SERVICE, "Reusable services cannot be cached");
+        }
+
+        if (coalesce) {
+            checkArgument(usage != REUSABLE_SERVICE, "Reusable services cannot be coalesced");
+        }
+    }
+
+    /**
+     * Create a copy of this script with a different language and body, such as the result of
+     * transpiling it. All other attributes are preserved.
+     *
+     * @param language The new language name
+     * @param script   The new script body
+     * @return The script copy
+     */
+    public Script withSource(@NotNull String language, @NotNull String script) {
+        return builder()
+                .id(id)
+                .language(language)
+                .usage(usage)
+                .description(description)
+                .classLoaderCreator(classLoaderCreator)
+                .services(services)
+                .globalVariables(globalVariables)
+                .script(script)
+                .entryPoint(entryPoint)
+                .parameters(parameters)
+                .serviceInterface(serviceInterface)
+                .executionMode(executionMode)
+                .schedule(schedule)
+                .cache(cache)
+                .coalesce(coalesce)
+                .build();
     }
 
     @Override
     public String toString() {
-        return MoreObjects.toStringHelper(this)
+        MoreObjects.ToStringHelper toStringHelper = MoreObjects.toStringHelper(this)
                 .add("id", id)
                 .add("language", language)
                 .add("usage", usage)
@@ -147,8 +264,36 @@ public class Script implements Initializable, Serializable {
                 .add("parentLastClassLoaderCreator", classLoaderCreator)
                 .add("services", services)
                 .add("globalVariables", globalVariables)
-                .add("script", script)
-                .toString();
+                .add("script", script);
+
+        // Only invocable function scripts carry an entry point
+        if (entryPoint != null) {
+            toStringHelper
+                    .add("entryPoint", entryPoint)
+                    .add("parameters", parameters);
+        }
+
+        if (serviceInterface != null) {
+            toStringHelper.add("serviceInterface", serviceInterface);
+        }
+
+        if (executionMode != null) {
+            toStringHelper.add("executionMode", executionMode);
+        }
+
+        if (schedule != null) {
+            toStringHelper.add("schedule", schedule);
+        }
+
+        if (cache != null) {
+            toStringHelper.add("cache", cache);
+        }
+
+        if (coalesce) {
+            toStringHelper.add("coalesce", coalesce);
+        }
+
+        return toStringHelper.toString();
     }
 
     public String getId() {
@@ -182,4 +327,163 @@ public class Script implements Initializable, Serializable {
     public Optional<ParentLastClassLoaderCreator> getClassLoaderCreator() {
         return Optional.ofNullable(classLoaderCreator);
     }
+
+    public Optional<String> getEntryPoint() {
+        return Optional.ofNullable(entryPoint);
+    }
+
+    public Optional<String> getServiceInterface() {
+        return Optional.ofNullable(serviceInterface);
+    }
+
+    public Optional<ExecutionMode> getExecutionMode() {
+        return Optional.ofNullable(executionMode);
+    }
+
+    public Optional<ScriptSchedule> getSchedule() {
+        return Optional.ofNullable(schedule);
+    }
+
+    public Optional<CachePolicy> getCache() {
+        return Optional.ofNullable(cache);
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    public List<String> getParameters() {
+        return parameters == null ? emptyList() : parameters;
+    }
+
+    /**
+     * Script builder, so that optional attributes need not be passed positionally.
+     */
+    public static class Builder {
+
+        private String id;
+        private String language;
+        private ScriptUsage usage;
+        private String description;
+        private ParentLastClassLoaderCreator classLoaderCreator;
+        private Set<String> services;
+        private Map<String, Object> globalVariables;
+        private String script;
+        private String entryPoint;
+        private List<String> parameters;
+        private String serviceInterface;
+        private ExecutionMode executionMode;
+        private ScriptSchedule schedule;
+        private CachePolicy cache;
+        private boolean coalesce;
+
+        private Builder() {
+        }
+
+        public Builder id(@Null String id) {
+            this.id = id;
+            return this;
+        }
+
+        public Builder language(@Null String language) {
+            this.language = language;
+            return this;
+        }
+
+        public Builder usage(@Null ScriptUsage usage) {
+            this.usage = usage;
+            return this;
+        }
+
+        public Builder description(@Null String description) {
+            this.description = description;
+            return this;
+        }
+
+        public Builder classLoaderCreator(@Null ParentLastClassLoaderCreator classLoaderCreator) {
+            this.classLoaderCreator = classLoaderCreator;
+            return this;
+        }
+
+        public Builder services(@Null Set<String> services) {
+            this.services = services;
+            return this;
+        }
+
+        public Builder globalVariables(@Null Map<String, Object> globalVariables) {
+            this.globalVariables = globalVariables;
+            return this;
+        }
+
+        public Builder script(@NotNull String script) {
+            this.script = script;
+            return this;
+        }
+
+        /**
+         * @param entryPoint The name of the function invoked upon each execution of an
+         *                   <code>INVOCABLE_FUNCTION</code> script
+         */
+        public Builder entryPoint(@Null String entryPoint) {
+            this.entryPoint = entryPoint;
+            return this;
+        }
+
+        /**
+         * @param parameters The names of the invocation variables passed, in order, as the
+         *                   function's arguments; if empty, the function receives all variables
+         *                   as a single map
+         */
+        public Builder parameters(@Null List<String> parameters) {
+            this.parameters = parameters;
+            return this;
+        }
+
+        /**
+         * @param serviceInterface The fully qualified name of the Java interface dependent scripts
+         *                         see a <code>REUSABLE_SERVICE</code> through
+         */
+        public Builder serviceInterface(@Null String serviceInterface) {
+            this.serviceInterface = serviceInterface;
+            return this;
+        }
+
+        /**
+         * @param executionMode The threads this script's executions run on, overriding the
+         *                      scripter's default
+         */
+        public Builder executionMode(@Null ExecutionMode executionMode) {
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        /**
+         * @param schedule The schedule this script is run on, if any
+         */
+        public Builder schedule(@Null ScriptSchedule schedule) {
+            this.schedule = schedule;
+            return this;
+        }
+
+        /**
+         * @param cache The policy this script's results are cached by, if any
+         */
+        public Builder cache(@Null CachePolicy cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * @param coalesce Whether concurrent executions with equal invocation variables share a
+         *                 single evaluation; only safe for scripts free of side effects
+         */
+        public Builder coalesce(boolean coalesce) {
+            this.coalesce = coalesce;
+            return this;
+        }
+
+        public Script build() {
+            return new Script(this);
+        }
+    }
 }
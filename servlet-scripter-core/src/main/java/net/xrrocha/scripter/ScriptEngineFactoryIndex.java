@@ -0,0 +1,118 @@
+package net.xrrocha.scripter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.validation.constraints.NotNull;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Index of the <code>ScriptEngineFactory</code>s available on the class path, keyed by language
+ * name. Unlike <code>ScriptEngineManager</code>, which instantiates every factory upfront,
+ * factories are discovered lazily through <code>ServiceLoader</code> metadata: the first lookup
+ * of a language only instantiates factories until one declaring that name is found.
+ */
+class ScriptEngineFactoryIndex {
+
+    /**
+     * The (valid in all supported languages) snippet evaluated when pre-warming engines.
+     */
+    static final String PREWARM_SNIPPET = "1";
+
+    private static final Logger logger = LoggerFactory.getLogger(ScriptEngineFactoryIndex.class);
+
+    private final Map<String, ScriptEngineFactory> factories = new ConcurrentHashMap<>();
+    private final Iterator<ScriptEngineFactory> pendingFactories;
+
+    ScriptEngineFactoryIndex(@NotNull ClassLoader classLoader) {
+        checkNotNull(classLoader, "Class loader cannot be null");
+        pendingFactories = ServiceLoader.load(ScriptEngineFactory.class, classLoader).iterator();
+    }
+
+    /**
+     * Retrieve the factory for the given language, discovering factories as needed.
+     *
+     * @param language The language name (as in <code>ScriptEngineFactory.getNames()</code>)
+     * @return The language's factory, if any
+     */
+    Optional<ScriptEngineFactory> lookup(@NotNull String language) {
+        ScriptEngineFactory factory = factories.get(language);
+        if (factory != null) {
+            return Optional.of(factory);
+        }
+
+        synchronized (pendingFactories) {
+            while (!factories.containsKey(language) && hasPendingFactory()) {
+                try {
+                    ScriptEngineFactory pendingFactory = pendingFactories.next();
+                    logger.debug("Discovered script engine factory: " +
+                            pendingFactory.getClass().getName());
+                    pendingFactory.getNames().forEach(name ->
+                            factories.putIfAbsent(name, pendingFactory));
+                } catch (ServiceConfigurationError | RuntimeException | LinkageError e) {
+                    logger.warn("Skipping unloadable script engine factory: " + e);
+                }
+            }
+        }
+
+        return Optional.ofNullable(factories.get(language));
+    }
+
+    /**
+     * Create an engine for each given language and evaluate a trivial snippet with it so that
+     * the first real script doesn't pay engine bootstrap and warm-up costs.
+     *
+     * @param languages The languages to pre-warm
+     * @param executor  The executor to pre-warm on
+     * @return A future completed once all languages are pre-warmed
+     */
+    CompletableFuture<Void> prewarm(@NotNull Collection<String> languages,
+                                    @NotNull Executor executor) {
+        checkNotNull(languages, "Languages cannot be null");
+        checkNotNull(executor, "Executor cannot be null");
+
+        return CompletableFuture.allOf(languages.stream()
+                .map(language -> CompletableFuture.runAsync(() -> prewarm(language), executor))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    private void prewarm(@NotNull String language) {
+        Optional<ScriptEngineFactory> factory = lookup(language);
+        if (!factory.isPresent()) {
+            logger.warn("Not pre-warming unknown language: " + language);
+            return;
+        }
+
+        try {
+            long startTime = System.currentTimeMillis();
+            ScriptEngine scriptEngine = factory.get().getScriptEngine();
+            scriptEngine.eval(PREWARM_SNIPPET);
+            logger.info("Pre-warmed " + language + " in " +
+                    (System.currentTimeMillis() - startTime) + "ms");
+        } catch (Exception e) {
+            logger.warn("Error pre-warming " + language + ": " + e, e);
+        }
+    }
+
+    private boolean hasPendingFactory() {
+        while (true) {
+            try {
+                return pendingFactories.hasNext();
+            } catch (ServiceConfigurationError e) {
+                logger.warn("Skipping unloadable script engine factory: " + e);
+            }
+        }
+    }
+}
@@ -2,7 +2,10 @@ package net.xrrocha.scripter;
 
 /**
  * Types of script usage.
+ * <p>
+ * <code>INVOCABLE_FUNCTION</code> scripts are evaluated once upon preparation; each execution
+ * then invokes the script's declared entry point function rather than re-evaluating its body.
  */
 public enum ScriptUsage {
-    INVOCABLE_SCRIPT, REUSABLE_SERVICE
+    INVOCABLE_SCRIPT, REUSABLE_SERVICE, INVOCABLE_FUNCTION
 }
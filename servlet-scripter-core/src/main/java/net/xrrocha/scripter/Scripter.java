@@ -1,13 +1,37 @@
 package net.xrrocha.scripter;
 
 import com.google.common.base.Converter;
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
+import net.xrrocha.scripter.ClassLoaderCache.SharedClassLoader;
+import net.xrrocha.scripter.cache.ResultCache;
 import net.xrrocha.scripter.commons.Initializable;
-import net.xrrocha.scripter.commons.registry.CachingRegistry;
+import net.xrrocha.scripter.commons.cluster.ConsistentHashRing;
+import net.xrrocha.scripter.commons.classloader.ParentLastClassLoaderCreator;
+import net.xrrocha.scripter.commons.concurrent.SingleFlight;
+import net.xrrocha.scripter.commons.concurrent.VirtualThreads;
+import net.xrrocha.scripter.commons.io.ArtifactCache;
 import net.xrrocha.scripter.commons.registry.ConvertingRegistry;
 import net.xrrocha.scripter.commons.registry.FileBasedRegistry;
+import net.xrrocha.scripter.commons.registry.FilteringRegistry;
 import net.xrrocha.scripter.commons.registry.Registry;
+import net.xrrocha.scripter.commons.registry.ShardedRegistry;
+import net.xrrocha.scripter.commons.registry.VersionedRegistry;
+import net.xrrocha.scripter.commons.registry.replication.ReplicatedRegistry;
+import net.xrrocha.scripter.commons.registry.replication.ReplicationTransport;
+import net.xrrocha.scripter.compiler.CompiledScriptCache;
+import net.xrrocha.scripter.compiler.GroovyScriptCompiler;
+import net.xrrocha.scripter.compiler.ScriptCompiler;
 import net.xrrocha.scripter.configurer.ScriptEngineConfigurer;
+import net.xrrocha.scripter.schedule.ScriptSchedule;
+import net.xrrocha.scripter.schedule.ScriptScheduler;
+import net.xrrocha.scripter.service.FanOutService;
+import net.xrrocha.scripter.snapshot.ScriptCatalogSnapshot;
 import net.xrrocha.scripter.transformer.ScriptTransformer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,9 +44,18 @@ import java.io.Serializable;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.emptyMap;
 import static java.util.stream.Collectors.*;
 import static net.xrrocha.scripter.commons.YamlUtils.YAML;
@@ -32,23 +65,57 @@ import static net.xrrocha.scripter.commons.io.FileUtils.isValidDirectory;
 /**
  * The scripting support workhorse.
  */
-public class Scripter implements Initializable, Serializable {
+public class Scripter implements Initializable, AutoCloseable, Serializable {
 
     public static final String SCRIPT_DIRECTORY_NAME = "scripts";
     public static final String CLASS_LOADER_DIRECTORY_NAME = "class-loaders";
+    public static final String ARTIFACT_DIRECTORY_NAME = "artifacts";
+    public static final String COMPILED_SCRIPT_DIRECTORY_NAME = "compiled";
     public static final String SCRIPTER_DIRECTORY_NAME = "servlet-scripter";
+    public static final String SCRIPT_FILENAME_REGEX = "^[a-zA-Z][-_a-zA-Z0-9]*\\.yaml$";
+    public static final int DEFAULT_SNIPPET_CACHE_SIZE = 256;
+    /**
+     * The name under which scripts reference the built-in @see{FanOutService}.
+     */
+    public static final String FAN_OUT_SERVICE_NAME = "fanOut";
+    public static final String SCHEDULE_STATE_FILENAME = "schedule.properties";
+    public static final String REPLICATION_STATE_FILENAME = "replication.state";
     private static final File DEFAULT_REGISTRY_DIRECTORY =
             new File(HOME_DIRECTORY, SCRIPTER_DIRECTORY_NAME);
-    private static final Map<String, ScriptEngineFactory> scriptEngineFactories =
-            new ScriptEngineManager().getEngineFactories().stream()
-                    .flatMap(factory -> factory.getNames().stream().map(name -> new SimpleEntry<>(name, factory)))
-                    .collect(toMap(Entry::getKey, Entry::getValue));
+    // Scripter may be loaded on a thread with no context class loader (e.g. native threads)
+    private static final ScriptEngineFactoryIndex scriptEngineFactories =
+            new ScriptEngineFactoryIndex(Optional
+                    .ofNullable(Thread.currentThread().getContextClassLoader())
+                    .orElse(Scripter.class.getClassLoader()));
+    private static final ThreadFactory PREWARM_THREAD_FACTORY = new ThreadFactoryBuilder()
+            .setNameFormat("script-engine-prewarm-%d")
+            .setDaemon(true)
+            .build();
     private static final Logger logger = LoggerFactory.getLogger(Scripter.class);
     private final File registryDirectory;
     private final Map<String, ScriptTransformer> transformers;
     private final Map<String, ScriptEngineConfigurer> configurers;
-    private Registry<String, PreparedObject> scriptRegistry;
+    private final int maxScriptVersions;
+    private final int scriptShards;
+    private final boolean useCatalogSnapshot;
+    private final String nodeId;
+    private final ReplicationTransport<String, String> replicationTransport;
+    private final Predicate<String> scriptPlacement;
+    private final List<ScriptCompiler> scriptCompilers;
+    private final ExecutionMode defaultExecutionMode;
+    private final ConsistentHashRing clusterRing;
+    private ScriptCatalogSnapshot catalogSnapshot;
+    private Registry<String, String> catalogRegistry;
+    private ReplicatedRegistry<String, String> replicatedRegistry;
+    private VersionedRegistry<String, PreparedObject> scriptRegistry;
     private File baseClassLoaderDirectory;
+    private ClassLoaderCache classLoaderCache;
+    private CompiledScriptCache compiledScriptCache;
+    private Cache<String, PreparedScript> snippetCache;
+    private Map<String, Object> builtInServices;
+    private ScriptScheduler scriptScheduler;
+    private ShardedRegistry shardedRegistry;
+    private ExecutorService virtualThreadExecutor;
 
     /**
      * The reflective, field-based constructor for JSON/Yaml field-based bean access.
@@ -57,40 +124,90 @@ public class Scripter implements Initializable, Serializable {
         registryDirectory = DEFAULT_REGISTRY_DIRECTORY;
         transformers = emptyMap();
         configurers = emptyMap();
+        maxScriptVersions = VersionedRegistry.DEFAULT_MAX_VERSIONS;
+        scriptShards = 1;
+        useCatalogSnapshot = false;
+        nodeId = null;
+        replicationTransport = null;
+        scriptPlacement = null;
+        scriptCompilers = defaultScriptCompilers();
+        defaultExecutionMode = ExecutionMode.CALLER_THREAD;
+        clusterRing = null;
     }
 
     public Scripter(@NotNull File registryDirectory,
                     @NotNull Map<String, ScriptTransformer> transformers,
                     @NotNull Map<String, ScriptEngineConfigurer> configurers) {
+        this(builder()
+                .registryDirectory(registryDirectory)
+                .transformers(transformers)
+                .configurers(configurers));
+    }
 
-        if (registryDirectory != null) {
-            this.registryDirectory = registryDirectory;
+    private Scripter(@NotNull Builder builder) {
+
+        if (builder.registryDirectory != null) {
+            this.registryDirectory = builder.registryDirectory;
         } else {
             this.registryDirectory = DEFAULT_REGISTRY_DIRECTORY;
         }
 
-        if (transformers != null) {
-            this.transformers = transformers;
+        if (builder.transformers != null) {
+            this.transformers = builder.transformers;
         } else {
             this.transformers = emptyMap();
         }
 
-        if (configurers != null) {
-            this.configurers = configurers;
+        if (builder.configurers != null) {
+            this.configurers = builder.configurers;
         } else {
             this.configurers = emptyMap();
         }
 
+        this.maxScriptVersions = builder.maxScriptVersions;
+        this.scriptShards = builder.scriptShards;
+        this.useCatalogSnapshot = builder.useCatalogSnapshot;
+        this.nodeId = builder.nodeId;
+        this.replicationTransport = builder.replicationTransport;
+        this.scriptPlacement = builder.scriptPlacement;
+
+        if (builder.scriptCompilers != null) {
+            this.scriptCompilers = builder.scriptCompilers;
+        } else {
+            this.scriptCompilers = defaultScriptCompilers();
+        }
+
+        if (builder.defaultExecutionMode != null) {
+            this.defaultExecutionMode = builder.defaultExecutionMode;
+        } else {
+            this.defaultExecutionMode = ExecutionMode.CALLER_THREAD;
+        }
+
+        this.clusterRing = builder.clusterRing;
+
         initialize();
     }
 
+    /**
+     * Start building a scripter. Unset options take the same defaults as when loaded from Yaml.
+     *
+     * @return The scripter builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
     public Optional<String> addScript(@NotNull String scriptYaml) {
         return addScript(scriptYaml, false);
     }
 
     public Optional<String> addScript(@NotNull String scriptYaml, boolean replace) {
 
-        Script script = YAML.loadAs(scriptYaml, Script.class);
+        Script script = loadScript(scriptYaml);
+
+        if (!isLocal(script.getId())) {
+            return addRemoteScript(script, scriptYaml, replace);
+        }
 
         Optional<PreparedObject> previousScript = scriptRegistry.lookup(script.getId());
 
@@ -102,30 +219,300 @@ public class Scripter implements Initializable, Serializable {
 
         PreparedObject preparedObject = addScript(script, scriptYaml);
 
-        scriptRegistry.register(preparedObject.getScript().getId(), preparedObject);
+        // The previous script is already at hand: don't have it re-read and re-prepared
+        synchronized (catalogRegistry) {
+            scriptRegistry.put(preparedObject.getScript().getId(), preparedObject);
+        }
+        snapshotScript(script, scriptYaml);
+        updateSchedule(preparedObject.getScript());
 
         return previousScript.map(PreparedObject::getYamlString);
     }
 
-    public Optional<String> getScriptText(@NotNull String scriptId) {
-        return getScript(scriptId).map(Script::getScript);
+    /**
+     * Add a script placed on other nodes: it's prepared (for validation only) and then recorded
+     * in the catalog without being retained.
+     */
+    private Optional<String> addRemoteScript(@NotNull Script script,
+                                             @NotNull String scriptYaml,
+                                             boolean replace) {
+
+        Optional<String> previousScript = catalogRegistry.lookup(script.getId() + ".yaml");
+
+        if (previousScript.isPresent() && !replace) {
+            String errorMessage = "Can't replace script: " + script.getId();
+            logger.warn(errorMessage);
+            throw new IllegalArgumentException(errorMessage);
+        }
+
+        addScript(script, scriptYaml).retire();
+
+        logger.debug("Cataloging remote script '" + script.getId() + "'");
+        synchronized (catalogRegistry) {
+            catalogRegistry.put(script.getId() + ".yaml", scriptYaml);
+            scriptRegistry.refresh(script.getId(), null);
+        }
+        snapshotScript(script, scriptYaml);
+
+        return previousScript;
     }
 
-    public Object executeScript(@NotNull String scriptId, @Null Map<String, Object> variables) {
+    /**
+     * Determine whether the given script is placed on this node.
+     *
+     * @param scriptId The script id
+     * @return <code>true</code> unless a placement predicate assigns the script elsewhere
+     */
+    public boolean isLocal(@NotNull String scriptId) {
+        return scriptPlacement == null || scriptPlacement.test(scriptId);
+    }
 
-        Optional<PreparedObject> optPreparedObject = scriptRegistry.lookup(scriptId);
-        if (!optPreparedObject.isPresent()) {
+    /**
+     * Reinstate the previously prepared version of a script. No transformation, compilation or
+     * class loader creation takes place.
+     *
+     * @param scriptId The id of the script to roll back
+     * @return The yaml string of the reinstated version or empty if no previous version exists
+     */
+    public Optional<String> rollbackScript(@NotNull String scriptId) {
+
+        if (!scriptRegistry.lookup(scriptId).isPresent()) {
             String errorMessage = "Ignoring non-existent script '" + scriptId + "'";
             logger.warn(errorMessage);
             throw new IllegalArgumentException(errorMessage);
         }
 
-        return optPreparedObject
-                .filter(preparedObject -> preparedObject instanceof PreparedScript)
-                .map(preparedObject -> (PreparedScript) preparedObject)
-                .map(preparedScript ->
-                        preparedScript.executeScript(variables == null ? emptyMap() : variables))
-                .orElse(null);
+        final Optional<PreparedObject> reinstatedScript;
+        synchronized (catalogRegistry) {
+            reinstatedScript = scriptRegistry.rollback(scriptId);
+        }
+        if (!reinstatedScript.isPresent()) {
+            logger.warn("No previous version to roll back to for script '" + scriptId + "'");
+        }
+
+        reinstatedScript.map(PreparedObject::getYamlString)
+                .ifPresent(yamlString -> snapshotScript(loadScript(yamlString), yamlString));
+        reinstatedScript.map(PreparedObject::getScript).ifPresent(this::updateSchedule);
+
+        return reinstatedScript.map(PreparedObject::getYamlString);
+    }
+
+    public Optional<String> getScriptText(@NotNull String scriptId) {
+        Optional<Script> script = getScript(scriptId);
+        if (!script.isPresent() && !isLocal(scriptId)) {
+            script = catalogRegistry.lookup(scriptId + ".yaml").map(this::loadScript);
+        }
+        return script.map(Script::getScript);
+    }
+
+    /**
+     * Execute a script on the caller's thread, regardless of its execution mode. Callers wishing
+     * to honour <code>VIRTUAL_THREAD</code> use @see{executeScriptAsync} instead.
+     *
+     * @param scriptId  The id of the script to execute
+     * @param variables The invocation variables
+     * @return The script result
+     */
+    public Object executeScript(@NotNull String scriptId, @Null Map<String, Object> variables) {
+
+        PreparedObject preparedObject = acquirePreparedObject(scriptId);
+        try {
+            if (!(preparedObject instanceof PreparedScript)) {
+                return null;
+            }
+            return newExecution((PreparedScript) preparedObject, variables).get();
+        } finally {
+            preparedObject.release();
+        }
+    }
+
+    /**
+     * Execute a script without waiting for its result. Scripts in <code>VIRTUAL_THREAD</code>
+     * mode run on their own virtual thread, so that their blocking I/O holds no platform thread;
+     * other scripts (and all scripts on runtimes lacking virtual threads) run on the caller's
+     * thread and yield an already completed future.
+     *
+     * @param scriptId  The id of the script to execute
+     * @param variables The invocation variables
+     * @return The future script result
+     */
+    public CompletableFuture<Object> executeScriptAsync(@NotNull String scriptId,
+                                                        @Null Map<String, Object> variables) {
+
+        PreparedObject preparedObject = acquirePreparedObject(scriptId);
+        if (preparedObject instanceof PreparedScript) {
+            PreparedScript preparedScript = (PreparedScript) preparedObject;
+            ExecutionMode executionMode =
+                    preparedScript.getScript().getExecutionMode().orElse(defaultExecutionMode);
+            if (executionMode == ExecutionMode.VIRTUAL_THREAD && VirtualThreads.isSupported()) {
+                try {
+                    return CompletableFuture
+                            .supplyAsync(newExecution(preparedScript, variables),
+                                    virtualThreadExecutor())
+                            .whenComplete((result, error) -> preparedObject.release());
+                } catch (RuntimeException e) {
+                    preparedObject.release();
+                    throw e;
+                }
+            }
+        }
+
+        CompletableFuture<Object> futureResult = new CompletableFuture<>();
+        try {
+            Object result = null;
+            if (preparedObject instanceof PreparedScript) {
+                result = newExecution((PreparedScript) preparedObject, variables).get();
+            }
+            futureResult.complete(result);
+        } catch (RuntimeException e) {
+            futureResult.completeExceptionally(e);
+        } finally {
+            preparedObject.release();
+        }
+        return futureResult;
+    }
+
+    /**
+     * Build a script execution serving cached results and coalescing identical in-flight calls
+     * as configured for the script.
+     */
+    private Supplier<Object> newExecution(@NotNull PreparedScript preparedScript,
+                                          @Null Map<String, Object> variables) {
+
+        Map<String, Object> invocationVariables = variables == null ? emptyMap() : variables;
+        Supplier<Object> execution = () -> preparedScript.executeScript(invocationVariables);
+
+        // Cache hits are served without dispatching to the engine
+        Optional<ResultCache> resultCache = preparedScript.getResultCache();
+        if (resultCache.isPresent()) {
+            return () -> resultCache.get().get(invocationVariables, execution);
+        }
+
+        // Cached results are already coalesced; otherwise merge identical in-flight calls
+        Optional<SingleFlight<Map<String, Object>, Object>> singleFlight =
+                preparedScript.getSingleFlight();
+        if (singleFlight.isPresent()) {
+            return () -> singleFlight.get().execute(new HashMap<>(invocationVariables), execution);
+        }
+
+        return execution;
+    }
+
+    /**
+     * Evaluate an ad-hoc snippet without registering it as a script. Prepared snippets are kept
+     * in memory only, in an LRU cache keyed by language and source hash, so that repeated
+     * snippets skip compilation; they never touch the registry.
+     *
+     * @param language  The snippet language
+     * @param source    The snippet source
+     * @param variables The (optional) invocation variables
+     * @return The snippet's result
+     */
+    public Object evaluateSnippet(@NotNull String language,
+                                  @NotNull String source,
+                                  @Null Map<String, Object> variables) {
+        checkNotNull(language, "Language cannot be null");
+        checkNotNull(source, "Source cannot be null");
+
+        String key = Hashing.sha256().newHasher()
+                .putString(language, UTF_8).putByte((byte) 0)
+                .putString(source, UTF_8)
+                .hash().toString();
+
+        // Snippets evicted (and disposed of) before acquisition are simply prepared again
+        while (true) {
+            final PreparedScript snippet;
+            try {
+                snippet = snippetCache.get(key, () -> prepareSnippet(key, language, source));
+            } catch (ExecutionException | UncheckedExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalArgumentException(e.getCause());
+            }
+
+            if (snippet.acquire()) {
+                try {
+                    return snippet.executeScript(variables == null ? emptyMap() : variables);
+                } finally {
+                    snippet.release();
+                }
+            }
+        }
+    }
+
+    PreparedScript prepareSnippet(@NotNull String key,
+                                  @NotNull String language,
+                                  @NotNull String source) {
+
+        logger.debug("Preparing " + language + " snippet '" + key + "'");
+        Script script = tryAndTransform(new Script(
+                "snippet-" + key.substring(0, 16), // id
+                language, // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                null, // globalVariables
+                source)); // script
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ScriptEngine scriptEngine = createScriptEngine(script, classLoader);
+        ScriptExecutor scriptExecutor =
+                buildScriptExecutor(script, scriptEngine, classLoader, false);
+        return new PreparedScript(script, "", scriptExecutor,
+                () -> releaseResources(scriptEngine, Optional.empty()));
+    }
+
+    long getSnippetCacheSize() {
+        return snippetCache.size();
+    }
+
+    /**
+     * Acquire the current version of a prepared object for the duration of an execution. A
+     * version retired and disposed of between lookup and acquisition has already been superseded
+     * in the registry, so lookup is simply retried.
+     */
+    PreparedObject acquirePreparedObject(@NotNull String scriptId) {
+        while (true) {
+            Optional<PreparedObject> optPreparedObject = lookupPreparedObject(scriptId);
+            if (!optPreparedObject.isPresent()) {
+                String errorMessage = "Ignoring non-existent script '" + scriptId + "'";
+                logger.warn(errorMessage);
+                throw new IllegalArgumentException(errorMessage);
+            }
+
+            if (optPreparedObject.get().acquire()) {
+                return optPreparedObject.get();
+            }
+        }
+    }
+
+    /**
+     * Retrieve the prepared object for the given script, preparing scripts placed on other nodes
+     * on demand.
+     */
+    Optional<PreparedObject> lookupPreparedObject(@NotNull String scriptId) {
+
+        Optional<PreparedObject> preparedObject = scriptRegistry.lookup(scriptId);
+        if (preparedObject.isPresent() || isLocal(scriptId)) {
+            return preparedObject;
+        }
+
+        synchronized (catalogRegistry) {
+            preparedObject = scriptRegistry.lookup(scriptId);
+            if (!preparedObject.isPresent()) {
+                preparedObject = catalogRegistry.lookup(scriptId + ".yaml")
+                        .map(yamlString -> {
+                            logger.info("Preparing remote script '" + scriptId + "' on demand");
+                            PreparedObject remoteObject =
+                                    addScript(loadScript(yamlString), yamlString);
+                            scriptRegistry.refresh(scriptId, remoteObject);
+                            return remoteObject;
+                        });
+            }
+        }
+        return preparedObject;
     }
 
     public void removeScript(@NotNull String scriptId) {
@@ -134,16 +521,189 @@ public class Scripter implements Initializable, Serializable {
                 .filter(preparedObject -> preparedObject instanceof PreparedService)
                 .ifPresent(preparedObject -> checkForOrphanedDependants(scriptId));
 
-        scriptRegistry.deregister(scriptId);
+        synchronized (catalogRegistry) {
+            scriptRegistry.remove(scriptId);
+        }
+        scriptScheduler.unschedule(scriptId);
+
+        if (catalogSnapshot != null) {
+            catalogSnapshot.appendRemoval(scriptId);
+        }
+    }
+
+    /**
+     * Retrieve the time a scheduled script is next run at.
+     *
+     * @param scriptId The script id
+     * @return The next fire time, in epoch milliseconds, or empty if the script isn't scheduled
+     */
+    public Optional<Long> getNextFireTime(@NotNull String scriptId) {
+        return scriptScheduler.getNextFireTime(scriptId);
+    }
+
+    public Optional<ReplicatedRegistry<String, String>> getReplicatedRegistry() {
+        return Optional.ofNullable(replicatedRegistry);
+    }
+
+    /**
+     * Retrieve the class loaders of removed scripts that should have been garbage collected by
+     * now but are still reachable.
+     *
+     * @return The leaked class loader keys, possibly empty
+     */
+    public List<String> findLeakedClassLoaders() {
+        return classLoaderCache.findLeaks();
+    }
+
+    /**
+     * Pre-warm the engines of the given languages in the background so that the first script
+     * in each language doesn't pay engine bootstrap and JIT warm-up costs.
+     *
+     * @param languages The languages to pre-warm
+     * @return A future completed once all languages are pre-warmed
+     */
+    public static CompletableFuture<Void> prewarmLanguages(@NotNull Collection<String> languages) {
+        ExecutorService executor = Executors.newCachedThreadPool(PREWARM_THREAD_FACTORY);
+        CompletableFuture<Void> prewarming = scriptEngineFactories.prewarm(languages, executor);
+        prewarming.whenComplete((result, e) -> executor.shutdown());
+        return prewarming;
+    }
+
+    CompiledScriptCache getCompiledScriptCache() {
+        return compiledScriptCache;
+    }
+
+    static List<ScriptCompiler> defaultScriptCompilers() {
+        return Collections.singletonList(new GroovyScriptCompiler());
     }
 
     public Iterable<String> listScriptIds() {
 
         Set<String> set = new HashSet<>();
         scriptRegistry.list().iterator().forEachRemaining(entry -> set.add(entry.getKey()));
+        if (scriptPlacement != null) {
+            // Include scripts placed on other nodes
+            catalogRegistry.list().iterator().forEachRemaining(entry ->
+                    set.add(entry.getKey().substring(0, entry.getKey().length() - 5)));
+        }
         return set;
     }
 
+    /**
+     * Load a script definition from the catalog snapshot (if enabled) or else parse its yaml.
+     */
+    Script loadScript(@NotNull String scriptYaml) {
+        if (catalogSnapshot != null) {
+            Optional<Script> snapshottedScript = catalogSnapshot.lookup(scriptYaml);
+            if (snapshottedScript.isPresent()) {
+                return snapshottedScript.get();
+            }
+        }
+        return YAML.loadAs(scriptYaml, Script.class);
+    }
+
+    void snapshotScript(@NotNull Script script, @NotNull String scriptYaml) {
+        if (catalogSnapshot != null && !catalogSnapshot.contains(scriptYaml)) {
+            catalogSnapshot.append(script, scriptYaml);
+        }
+    }
+
+    /**
+     * Bring the in-memory registry in line with a script file replicated from another node.
+     * Notifications are delivered after the fact: one superseded in the meantime (by a local
+     * write or a later replicated change, itself notified in turn) is disregarded.
+     */
+    void applyReplicatedScript(@NotNull String filename, @NotNull Optional<String> scriptYaml) {
+        String scriptId = filename.substring(0, filename.length() - 5);
+        if (isSuperseded(filename, scriptYaml)) {
+            return;
+        }
+
+        if (scriptYaml.isPresent()) {
+            if (!isLocal(scriptId) && !scriptRegistry.lookup(scriptId).isPresent()) {
+                return;
+            }
+            logger.info("Applying replicated script '" + scriptId + "'");
+            try {
+                Script script = loadScript(scriptYaml.get());
+                PreparedObject preparedObject = addScript(script, scriptYaml.get());
+                synchronized (catalogRegistry) {
+                    // Local writes may have happened while preparing
+                    if (isSuperseded(filename, scriptYaml)) {
+                        preparedObject.retire();
+                        return;
+                    }
+                    scriptRegistry.refresh(scriptId, preparedObject);
+                }
+                snapshotScript(script, scriptYaml.get());
+                updateSchedule(preparedObject.getScript());
+            } catch (RuntimeException e) {
+                logger.error("Error preparing replicated script '" + scriptId + "': " + e, e);
+            }
+        } else {
+            logger.info("Removing replicated script '" + scriptId + "'");
+            synchronized (catalogRegistry) {
+                if (isSuperseded(filename, scriptYaml)) {
+                    return;
+                }
+                scriptRegistry.refresh(scriptId, null);
+            }
+            scriptScheduler.unschedule(scriptId);
+            if (catalogSnapshot != null) {
+                catalogSnapshot.appendRemoval(scriptId);
+            }
+        }
+    }
+
+    private boolean isSuperseded(@NotNull String filename, @NotNull Optional<String> scriptYaml) {
+        if (catalogRegistry.lookup(filename).equals(scriptYaml)) {
+            return false;
+        }
+        logger.debug("Disregarding superseded replication of '" + filename + "'");
+        return true;
+    }
+
+    /**
+     * Bring the scheduler in line with a (re)registered script. Only scripts this node is
+     * elected to run are run on schedule.
+     */
+    private void updateSchedule(@NotNull Script script) {
+        if (!isLocal(script.getId())) {
+            return;
+        }
+
+        Optional<ScriptSchedule> schedule = script.getSchedule();
+        if (schedule.isPresent() && !isScheduleRunner(script.getId())) {
+            scriptScheduler.unschedule(script.getId());
+        } else if (schedule.isPresent()) {
+            scriptScheduler.schedule(script.getId(), schedule.get());
+        } else {
+            scriptScheduler.unschedule(script.getId());
+        }
+    }
+
+    /**
+     * Determine whether this node runs the given scheduled script. With a cluster ring, the
+     * first owner of the script id does; otherwise, a replicated catalog requires a placement
+     * (assumed to place each script on a single node) lest every node run every schedule.
+     */
+    private boolean isScheduleRunner(@NotNull String scriptId) {
+        if (clusterRing != null) {
+            return clusterRing.owners(scriptId).get(0).equals(nodeId);
+        }
+        if (replicationTransport != null && scriptPlacement == null) {
+            logger.warn("Not scheduling script '" + scriptId + "': replicated catalogs require " +
+                    "a cluster ring or script placement to elect a single runner");
+            return false;
+        }
+        return true;
+    }
+
+    private void runScheduledScript(@NotNull String scriptId) {
+        // Honour the script's execution mode; the runner thread still awaits its completion
+        executeScriptAsync(scriptId, emptyMap()).join();
+    }
+
     private PreparedObject addScript(@NotNull Script sourceScript, @NotNull String scriptYaml) {
         Script script = tryAndTransform(sourceScript);
         return prepareObject(script, scriptYaml);
@@ -165,40 +725,82 @@ public class Scripter implements Initializable, Serializable {
 
     PreparedObject prepareObject(@NotNull Script script, @NotNull String yamlString) {
 
-        final ClassLoader classLoader =
+        // Scripts declaring identical jar and resource sets share a single class loader
+        final Optional<SharedClassLoader> sharedClassLoader =
                 script.getClassLoaderCreator()
-                        .map(creator -> {
-                            File classLoaderDirectory = new File(baseClassLoaderDirectory, script.getId());
-                            File resourceDirectory = new File(classLoaderDirectory, "resources");
-                            return creator.createClassLoader(
-                                    Thread.currentThread().getContextClassLoader(),
-                                    classLoaderDirectory,
-                                    resourceDirectory);
-                        })
-                        .orElse(Thread.currentThread().getContextClassLoader());
-
-        ScriptExecutor scriptExecutor = buildScriptExecutor(script, classLoader);
-
-        final PreparedObject preparedObject;
-        switch (script.getUsage()) {
-            case INVOCABLE_SCRIPT:
-                preparedObject = new PreparedScript(script, yamlString, scriptExecutor);
-                break;
-            case REUSABLE_SERVICE:
-                Object service = scriptExecutor.executeScript(emptyMap());
-                preparedObject = new PreparedService(script, yamlString, service);
-                break;
-            default:
-                throw new IllegalStateException("No such usage: " + script.getUsage());
+                        .map(creator -> classLoaderCache.acquire(creator,
+                                Thread.currentThread().getContextClassLoader()));
+        final ClassLoader classLoader = sharedClassLoader
+                .map(SharedClassLoader::getClassLoader)
+                .orElse(Thread.currentThread().getContextClassLoader());
+
+        final ScriptEngine scriptEngine;
+        try {
+            scriptEngine = createScriptEngine(script, classLoader);
+        } catch (RuntimeException e) {
+            sharedClassLoader.ifPresent(classLoaderCache::release);
+            throw e;
         }
 
-        return preparedObject;
+        try {
+            ScriptExecutor scriptExecutor = script.getUsage() == ScriptUsage.INVOCABLE_FUNCTION ?
+                    buildFunctionExecutor(script, scriptEngine, classLoader) :
+                    buildScriptExecutor(script, scriptEngine, classLoader);
+            AutoCloseable resources = () -> releaseResources(scriptEngine, sharedClassLoader);
+
+            final PreparedObject preparedObject;
+            switch (script.getUsage()) {
+                case INVOCABLE_SCRIPT:
+                case INVOCABLE_FUNCTION:
+                    preparedObject =
+                            new PreparedScript(script, yamlString, scriptExecutor, resources);
+                    break;
+                case REUSABLE_SERVICE:
+                    Object service = bindServiceInterface(script, scriptEngine, classLoader,
+                            scriptExecutor.executeScript(emptyMap()));
+                    preparedObject = new PreparedService(script, yamlString, service, resources);
+                    break;
+                default:
+                    throw new IllegalStateException("No such usage: " + script.getUsage());
+            }
+
+            return preparedObject;
+        } catch (RuntimeException e) {
+            // The engine may hold resources of its own (and the script's definitions)
+            releaseResources(scriptEngine, sharedClassLoader);
+            throw e;
+        }
     }
 
-    ScriptExecutor buildScriptExecutor(@NotNull Script script,
-                                       @NotNull ClassLoader scriptClassLoader) {
+    /**
+     * Release the engine and class loader of a retired script once no execution references it.
+     */
+    void releaseResources(@NotNull ScriptEngine scriptEngine,
+                          @NotNull Optional<SharedClassLoader> sharedClassLoader) {
 
-        ScriptEngineFactory factory = scriptEngineFactories.get(script.getLanguage());
+        Bindings engineBindings = scriptEngine.getBindings(ScriptContext.ENGINE_SCOPE);
+        if (engineBindings != null) {
+            engineBindings.clear();
+        }
+
+        // Some engines (e.g. compiler-backed ones) hold native or file resources
+        if (scriptEngine instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) scriptEngine).close();
+            } catch (Exception e) {
+                logger.warn("Error closing script engine: " + e, e);
+            }
+        }
+
+        // Shared class loaders are closed once no longer used by any script
+        sharedClassLoader.ifPresent(classLoaderCache::release);
+    }
+
+    ScriptEngine createScriptEngine(@NotNull Script script,
+                                    @NotNull ClassLoader scriptClassLoader) {
+
+        ScriptEngineFactory factory =
+                scriptEngineFactories.lookup(script.getLanguage()).orElse(null);
         if (factory == null) {
             String errorMessage = "No such language: " + script.getLanguage();
             logger.error(errorMessage);
@@ -216,39 +818,69 @@ public class Scripter implements Initializable, Serializable {
             configurers.get(script.getLanguage()).configureScriptEngine(scriptEngine);
         }
 
+        return scriptEngine;
+    }
+
+    ScriptExecutor buildScriptExecutor(@NotNull Script script,
+                                       @NotNull ScriptEngine scriptEngine,
+                                       @NotNull ClassLoader scriptClassLoader) {
+        return buildScriptExecutor(script, scriptEngine, scriptClassLoader, true);
+    }
+
+    ScriptExecutor buildScriptExecutor(@NotNull Script script,
+                                       @NotNull ScriptEngine scriptEngine,
+                                       @NotNull ClassLoader scriptClassLoader,
+                                       boolean persistCompiledScript) {
+
         try {
 
             if (scriptEngine instanceof Compilable) {
 
-                CompiledScript compiledScript = ((Compilable) scriptEngine).compile(script.getScript());
+                // Persisted bytecode, if supported, spares recompiling unchanged scripts
+                Optional<CompiledScript> cachedScript = !persistCompiledScript ?
+                        Optional.empty() :
+                        compiledScriptCache.compile(script.getLanguage(), script.getScript(),
+                                script.getClassLoaderCreator()
+                                        .map(ParentLastClassLoaderCreator::getContentHash)
+                                        .orElse(""),
+                                scriptEngine, scriptClassLoader);
+                CompiledScript compiledScript = cachedScript.isPresent() ?
+                        cachedScript.get() :
+                        ((Compilable) scriptEngine).compile(script.getScript());
 
                 return (invocationVariables) -> {
-                    Bindings invocationBindings = scriptEngine.createBindings();
-                    populateBindings(script, invocationVariables, invocationBindings);
+                    List<PreparedObject> acquiredServices = new ArrayList<>();
                     ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
                     try {
+                        Bindings invocationBindings = scriptEngine.createBindings();
+                        populateBindings(script, invocationVariables, invocationBindings,
+                                acquiredServices);
                         Thread.currentThread().setContextClassLoader(scriptClassLoader);
                         return compiledScript.eval(invocationBindings);
                     } catch (ScriptException e) {
                         throw new IllegalArgumentException(e);
                     } finally {
                         Thread.currentThread().setContextClassLoader(contextClassLoader);
+                        acquiredServices.forEach(PreparedObject::release);
                     }
                 };
 
             } else { // Not compilable
 
                 return (invocationVariables) -> {
-                    Bindings invocationBindings = scriptEngine.createBindings();
-                    populateBindings(script, invocationVariables, invocationBindings);
+                    List<PreparedObject> acquiredServices = new ArrayList<>();
                     ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
                     try {
+                        Bindings invocationBindings = scriptEngine.createBindings();
+                        populateBindings(script, invocationVariables, invocationBindings,
+                                acquiredServices);
                         Thread.currentThread().setContextClassLoader(scriptClassLoader);
                         return scriptEngine.eval(script.getScript(), invocationBindings);
                     } catch (ScriptException e) {
                         throw new IllegalArgumentException(e);
                     } finally {
                         Thread.currentThread().setContextClassLoader(contextClassLoader);
+                        acquiredServices.forEach(PreparedObject::release);
                     }
                 };
             }
@@ -257,13 +889,167 @@ public class Scripter implements Initializable, Serializable {
         }
     }
 
+    /**
+     * Evaluate the script once, in its engine's own scope, and return an executor invoking the
+     * script's entry point function with arguments taken from the invocation variables.
+     * <p>
+     * Service dependencies live in the engine's shared scope: invocations run concurrently under
+     * a read lock and an invocation that acquired newer service versions rebinds them under the
+     * write lock, so no invocation ever sees the scope change underneath it.
+     */
+    ScriptExecutor buildFunctionExecutor(@NotNull Script script,
+                                         @NotNull ScriptEngine scriptEngine,
+                                         @NotNull ClassLoader scriptClassLoader) {
+
+        if (!(scriptEngine instanceof Invocable)) {
+            String errorMessage = "Language '" + script.getLanguage() +
+                    "' doesn't support invocable functions";
+            logger.error(errorMessage);
+            throw new IllegalArgumentException(errorMessage);
+        }
+
+        String entryPoint = script.getEntryPoint().get();
+        Bindings engineBindings = scriptEngine.getBindings(ScriptContext.ENGINE_SCOPE);
+        ReadWriteLock bindingLock = new ReentrantReadWriteLock();
+        List<PreparedObject> evaluationServices = new ArrayList<>();
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        try {
+            populateBindings(script, emptyMap(), engineBindings, evaluationServices);
+            Thread.currentThread().setContextClassLoader(scriptClassLoader);
+            scriptEngine.eval(script.getScript());
+        } catch (ScriptException e) {
+            throw new IllegalArgumentException(e);
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+            evaluationServices.forEach(PreparedObject::release);
+        }
+        // The service versions currently bound; guarded by the binding lock
+        List<PreparedObject> boundServices = new ArrayList<>(evaluationServices);
+
+        return (invocationVariables) -> {
+            List<PreparedObject> acquiredServices = new ArrayList<>();
+            Map<String, Object> serviceDependencies =
+                    collectServiceDependencies(script, acquiredServices);
+
+            final Object[] arguments;
+            if (script.getParameters().isEmpty()) {
+                arguments = new Object[]{invocationVariables};
+            } else {
+                arguments = script.getParameters().stream()
+                        .map(parameter -> invocationVariables.containsKey(parameter) ?
+                                invocationVariables.get(parameter) :
+                                script.getGlobalVariables().get(parameter))
+                        .toArray();
+            }
+
+            ClassLoader callerClassLoader = Thread.currentThread().getContextClassLoader();
+            try {
+                // Pick up newer versions of the services this script depends on
+                bindingLock.readLock().lock();
+                if (!isSameServices(acquiredServices, boundServices)) {
+                    bindingLock.readLock().unlock();
+                    bindingLock.writeLock().lock();
+                    try {
+                        if (!isSameServices(acquiredServices, boundServices)) {
+                            engineBindings.putAll(serviceDependencies);
+                            boundServices.clear();
+                            boundServices.addAll(acquiredServices);
+                        }
+                        // Downgrade so that no other invocation rebinds before this one runs
+                        bindingLock.readLock().lock();
+                    } finally {
+                        bindingLock.writeLock().unlock();
+                    }
+                }
+                try {
+                    Thread.currentThread().setContextClassLoader(scriptClassLoader);
+                    return ((Invocable) scriptEngine).invokeFunction(entryPoint, arguments);
+                } finally {
+                    bindingLock.readLock().unlock();
+                }
+            } catch (ScriptException | NoSuchMethodException e) {
+                throw new IllegalArgumentException(e);
+            } finally {
+                Thread.currentThread().setContextClassLoader(callerClassLoader);
+                acquiredServices.forEach(PreparedObject::release);
+            }
+        };
+    }
+
+    private static boolean isSameServices(@NotNull List<PreparedObject> services,
+                                          @NotNull List<PreparedObject> otherServices) {
+        if (services.size() != otherServices.size()) {
+            return false;
+        }
+        for (int i = 0; i < services.size(); i++) {
+            if (services.get(i) != otherServices.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Expose a service through its declared Java interface, if any. Services already
+     * implementing it (such as Java or Groovy objects) are used as is; other engine objects are
+     * wrapped in an <code>Invocable.getInterface</code> proxy so that dependent scripts, in any
+     * language, call them through plain interface dispatch rather than dynamic member lookup.
+     */
+    Object bindServiceInterface(@NotNull Script script,
+                                @NotNull ScriptEngine scriptEngine,
+                                @NotNull ClassLoader scriptClassLoader,
+                                @Null Object service) {
+
+        if (!script.getServiceInterface().isPresent()) {
+            return service;
+        }
+
+        String interfaceName = script.getServiceInterface().get();
+        final Class<?> serviceInterface;
+        try {
+            serviceInterface = Class.forName(interfaceName, true, scriptClassLoader);
+        } catch (ClassNotFoundException e) {
+            String errorMessage = "No such service interface: " + interfaceName;
+            logger.error(errorMessage, e);
+            throw new IllegalArgumentException(errorMessage, e);
+        }
+
+        if (!serviceInterface.isInterface()) {
+            String errorMessage = "Not a service interface: " + interfaceName;
+            logger.error(errorMessage);
+            throw new IllegalArgumentException(errorMessage);
+        }
+
+        if (serviceInterface.isInstance(service)) {
+            return service;
+        }
+
+        Object proxy = null;
+        if (scriptEngine instanceof Invocable) {
+            // A null service means the script's top-level functions implement the interface
+            proxy = service == null ?
+                    ((Invocable) scriptEngine).getInterface(serviceInterface) :
+                    ((Invocable) scriptEngine).getInterface(service, serviceInterface);
+        }
+
+        if (proxy == null) {
+            String errorMessage = "Service '" + script.getId() + "' doesn't implement " +
+                    interfaceName;
+            logger.error(errorMessage);
+            throw new IllegalArgumentException(errorMessage);
+        }
+
+        return proxy;
+    }
+
     /**
      * Populates bindings in priority order. <ol> <li>Services</li> <li>Invocation Variables</li>
      * <li>Global Variables</li> </ol>
      */
     void populateBindings(@NotNull Script script,
                           @NotNull Map<String, Object> invocationVariables,
-                          @NotNull Bindings bindings) {
+                          @NotNull Bindings bindings,
+                          @NotNull List<PreparedObject> acquiredServices) {
 
         // Start with script's own, compile-time properties
         bindings.putAll(script.getGlobalVariables());
@@ -276,25 +1062,37 @@ public class Scripter implements Initializable, Serializable {
         }
 
         // Service references trump any clashing script variables
-        Map<String, Object> serviceDependencies = collectServiceDependencies(script);
+        Map<String, Object> serviceDependencies =
+                collectServiceDependencies(script, acquiredServices);
         logger.debug("serviceDependencies: " + serviceDependencies);
         bindings.putAll(serviceDependencies);
         logger.debug("Resulting bindings: " + bindings);
 
     }
 
-    Map<String, Object> collectServiceDependencies(@NotNull Script script) {
+    /**
+     * Resolve the services a script depends on. Each prepared service is acquired, so that it
+     * can't be disposed of while in use, and added to the given list; the caller must release
+     * the acquired services (even upon failure) once the execution completes.
+     */
+    Map<String, Object> collectServiceDependencies(@NotNull Script script,
+                                                   @NotNull List<PreparedObject> acquiredServices) {
 
         Map<Boolean, List<Entry<String, Optional<PreparedObject>>>> partition =
                 script.getServices().stream()
-                        .map(serviceName -> new SimpleEntry<>(serviceName, scriptRegistry.lookup(serviceName)))
+                        .map(serviceName ->
+                                new SimpleEntry<>(serviceName, acquireService(serviceName)))
                         .collect(partitioningBy(entry -> entry.getValue().isPresent()));
+        partition.get(true).forEach(entry -> acquiredServices.add(entry.getValue().get()));
 
+        // Scripts registered under a built-in service's name take precedence over it
         final List<String> nonExistentServicesNames = partition.get(false).stream()
-                .map(Entry::getKey).collect(toList());
+                .map(Entry::getKey)
+                .filter(serviceName -> !builtInServices.containsKey(serviceName))
+                .collect(toList());
 
         final List<String> nonServiceNameList = partition.get(true).stream()
-                .filter(entry -> !(scriptRegistry.lookup(entry.getKey()).get() instanceof PreparedService))
+                .filter(entry -> !(entry.getValue().get() instanceof PreparedService))
                 .map(Entry::getKey)
                 .collect(toList());
 
@@ -324,10 +1122,27 @@ public class Scripter implements Initializable, Serializable {
             throw new IllegalArgumentException(errorMessage);
         }
 
-        return partition.get(true).stream()
+        Map<String, Object> serviceDependencies = new HashMap<>(partition.get(true).stream()
                 .map(entry -> new SimpleEntry<>(entry.getKey(),
                         ((PreparedService) entry.getValue().get()).getService()))
-                .collect(toMap(Entry::getKey, Entry::getValue));
+                .collect(toMap(Entry::getKey, Entry::getValue)));
+        partition.get(false).forEach(entry ->
+                serviceDependencies.put(entry.getKey(), builtInServices.get(entry.getKey())));
+
+        return serviceDependencies;
+    }
+
+    /**
+     * Acquire the current version of a service, if it exists, retrying if it was disposed of
+     * between lookup and acquisition.
+     */
+    private Optional<PreparedObject> acquireService(@NotNull String serviceName) {
+        while (true) {
+            Optional<PreparedObject> service = lookupPreparedObject(serviceName);
+            if (!service.isPresent() || service.get().acquire()) {
+                return service;
+            }
+        }
     }
 
     void checkForOrphanedDependants(@NotNull String serviceId) {
@@ -351,11 +1166,48 @@ public class Scripter implements Initializable, Serializable {
 
     }
 
+    /**
+     * The virtual thread executor, created upon the first virtual thread execution.
+     */
+    private synchronized ExecutorService virtualThreadExecutor() {
+        if (virtualThreadExecutor == null) {
+            VirtualThreads.monitorPinnedThreads();
+            virtualThreadExecutor = VirtualThreads.newExecutor("script-");
+        }
+        return virtualThreadExecutor;
+    }
+
+    /**
+     * Stop the threads this scripter owns, in reverse order of creation: no scheduled script
+     * runs, no replicated change is applied and no virtual thread execution starts afterwards.
+     */
+    @Override
+    public void close() {
+        logger.info("Closing scripter");
+        scriptScheduler.close();
+        ((FanOutService) builtInServices.get(FAN_OUT_SERVICE_NAME)).close();
+        if (replicatedRegistry != null) {
+            replicatedRegistry.close();
+        }
+        if (shardedRegistry != null) {
+            shardedRegistry.close();
+        }
+        synchronized (this) {
+            if (virtualThreadExecutor != null) {
+                virtualThreadExecutor.shutdown();
+            }
+        }
+    }
+
     @Override
     public void initialize() {
 
         checkNotNull(registryDirectory, "Registry directory cannot be null");
 
+        checkArgument(maxScriptVersions > 0, "Max script versions must be positive");
+
+        checkArgument(scriptShards > 0, "Script shards must be positive");
+
         checkArgument(isValidDirectory(registryDirectory),
                 "Invalid registry directory: " + registryDirectory);
 
@@ -385,10 +1237,57 @@ public class Scripter implements Initializable, Serializable {
         baseClassLoaderDirectory = new File(registryDirectory, CLASS_LOADER_DIRECTORY_NAME);
         checkArgument(isValidDirectory(baseClassLoaderDirectory),
                 "Invalid class loader directory: " + baseClassLoaderDirectory);
+        ArtifactCache artifactCache =
+                new ArtifactCache(new File(registryDirectory, ARTIFACT_DIRECTORY_NAME));
+        classLoaderCache = new ClassLoaderCache(baseClassLoaderDirectory, artifactCache);
+        compiledScriptCache = new CompiledScriptCache(
+                new File(registryDirectory, COMPILED_SCRIPT_DIRECTORY_NAME), scriptCompilers);
+        snippetCache = CacheBuilder.newBuilder()
+                .maximumSize(DEFAULT_SNIPPET_CACHE_SIZE)
+                .<String, PreparedScript>removalListener(notification ->
+                        notification.getValue().retire())
+                .build();
+        builtInServices = Collections.singletonMap(FAN_OUT_SERVICE_NAME, new FanOutService());
+        scriptScheduler = new ScriptScheduler(new File(registryDirectory, SCHEDULE_STATE_FILENAME),
+                this::runScheduledScript);
+
+        if (useCatalogSnapshot) {
+            catalogSnapshot = new ScriptCatalogSnapshot(
+                    new File(registryDirectory, ScriptCatalogSnapshot.DEFAULT_FILENAME));
+        }
+
+        // Populate initial prepared script registry, spreading large catalogs over subdirectories
+        final Registry<String, String> localRegistry;
+        if (scriptShards > 1) {
+            shardedRegistry =
+                    new ShardedRegistry(scriptDirectory, scriptShards, SCRIPT_FILENAME_REGEX);
+            localRegistry = shardedRegistry;
+        } else {
+            localRegistry = new FileBasedRegistry(scriptDirectory, SCRIPT_FILENAME_REGEX);
+        }
+
+        checkArgument(clusterRing == null || clusterRing.getNodeIds().contains(nodeId),
+                "Node id not in cluster ring: " + nodeId);
+
+        // Share the catalog with other nodes, if clustered
+        if (replicationTransport != null) {
+            checkNotNull(nodeId, "Node id cannot be null when replicating");
+            replicatedRegistry =
+                    new ReplicatedRegistry<>(nodeId, localRegistry, replicationTransport,
+                            new File(registryDirectory, REPLICATION_STATE_FILENAME));
+            catalogRegistry = replicatedRegistry;
+        } else {
+            catalogRegistry = localRegistry;
+        }
 
-        // Populate initial prepared script registry
-        Registry<String, String> fileRegistry =
-                new FileBasedRegistry(scriptDirectory, "^[a-zA-Z][-_a-zA-Z0-9]*\\.yaml$");
+        // Only scripts placed on this node are prepared upfront
+        final Registry<String, String> fileRegistry;
+        if (scriptPlacement != null) {
+            fileRegistry = new FilteringRegistry<>(catalogRegistry,
+                    filename -> isLocal(filename.substring(0, filename.length() - 5)));
+        } else {
+            fileRegistry = catalogRegistry;
+        }
 
         Registry<String, PreparedObject> convertingRegistry = new ConvertingRegistry<>(
                 fileRegistry,
@@ -411,12 +1310,137 @@ public class Scripter implements Initializable, Serializable {
 
                     @Override
                     protected PreparedObject doBackward(@NotNull String yamlString) {
-                        Script script = YAML.loadAs(yamlString, Script.class);
-                        return addScript(script, yamlString);
+                        Script script = loadScript(yamlString);
+                        PreparedObject preparedObject = addScript(script, yamlString);
+                        snapshotScript(script, yamlString);
+                        return preparedObject;
                     }
                 }
         );
 
-        scriptRegistry = new CachingRegistry<>(convertingRegistry);
+        // Retired versions are released once their in-flight executions complete
+        scriptRegistry = new VersionedRegistry<>(convertingRegistry, maxScriptVersions,
+                PreparedObject::retire);
+
+        if (replicatedRegistry != null) {
+            replicatedRegistry.addReplicationListener(this::applyReplicatedScript);
+        }
+
+        // Resume the schedules of the scripts just loaded
+        scriptRegistry.list().forEach(entry -> updateSchedule(entry.getValue().getScript()));
+
+        // All registered scripts are compiled by now: the remaining entries are stale
+        int prunedCount = compiledScriptCache.prune();
+        if (prunedCount > 0) {
+            logger.info("Pruned " + prunedCount + " stale compiled scripts");
+        }
+    }
+
+    /**
+     * Scripter builder, so that optional settings need not be passed positionally.
+     */
+    public static class Builder {
+
+        private File registryDirectory;
+        private Map<String, ScriptTransformer> transformers;
+        private Map<String, ScriptEngineConfigurer> configurers;
+        private int maxScriptVersions = VersionedRegistry.DEFAULT_MAX_VERSIONS;
+        private int scriptShards = 1;
+        private boolean useCatalogSnapshot;
+        private String nodeId;
+        private ReplicationTransport<String, String> replicationTransport;
+        private Predicate<String> scriptPlacement;
+        private List<ScriptCompiler> scriptCompilers;
+        private ExecutionMode defaultExecutionMode;
+        private ConsistentHashRing clusterRing;
+
+        private Builder() {
+        }
+
+        public Builder registryDirectory(@Null File registryDirectory) {
+            this.registryDirectory = registryDirectory;
+            return this;
+        }
+
+        public Builder transformers(@Null Map<String, ScriptTransformer> transformers) {
+            this.transformers = transformers;
+            return this;
+        }
+
+        public Builder configurers(@Null Map<String, ScriptEngineConfigurer> configurers) {
+            this.configurers = configurers;
+            return this;
+        }
+
+        public Builder maxScriptVersions(int maxScriptVersions) {
+            this.maxScriptVersions = maxScriptVersions;
+            return this;
+        }
+
+        public Builder scriptShards(int scriptShards) {
+            this.scriptShards = scriptShards;
+            return this;
+        }
+
+        public Builder useCatalogSnapshot(boolean useCatalogSnapshot) {
+            this.useCatalogSnapshot = useCatalogSnapshot;
+            return this;
+        }
+
+        public Builder nodeId(@Null String nodeId) {
+            this.nodeId = nodeId;
+            return this;
+        }
+
+        /**
+         * Replicate the script catalog to (and from) all other nodes sharing the given transport.
+         * Requires a node id.
+         */
+        public Builder replicationTransport(
+                @Null ReplicationTransport<String, String> replicationTransport) {
+            this.replicationTransport = replicationTransport;
+            return this;
+        }
+
+        /**
+         * Prepare only the scripts the given placement predicate assigns to this node. Scripts
+         * placed elsewhere are kept in the (replicated) catalog and only prepared on demand, such
+         * as when a local script depends on them as services.
+         */
+        public Builder scriptPlacement(@Null Predicate<String> scriptPlacement) {
+            this.scriptPlacement = scriptPlacement;
+            return this;
+        }
+
+        /**
+         * Persist the bytecode of scripts compiled by the given compilers (the default ones if
+         * <code>null</code>, none if empty) so that only changed scripts are recompiled upon
+         * restart.
+         */
+        public Builder scriptCompilers(@Null List<ScriptCompiler> scriptCompilers) {
+            this.scriptCompilers = scriptCompilers;
+            return this;
+        }
+
+        /**
+         * Run executions, by default, in the given mode. Scripts may override it individually.
+         */
+        public Builder defaultExecutionMode(@Null ExecutionMode defaultExecutionMode) {
+            this.defaultExecutionMode = defaultExecutionMode;
+            return this;
+        }
+
+        /**
+         * Make the node aware of the cluster membership. Each scheduled script is run only by the
+         * first owner of its id on the given ring, however many nodes it's placed on.
+         */
+        public Builder clusterRing(@Null ConsistentHashRing clusterRing) {
+            this.clusterRing = clusterRing;
+            return this;
+        }
+
+        public Scripter build() {
+            return new Scripter(this);
+        }
     }
 }
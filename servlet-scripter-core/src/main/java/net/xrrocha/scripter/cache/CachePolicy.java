@@ -0,0 +1,90 @@
+package net.xrrocha.scripter.cache;
+
+import com.google.common.base.MoreObjects;
+import net.xrrocha.scripter.commons.Initializable;
+
+import javax.validation.constraints.Null;
+import java.io.Serializable;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Collections.emptyList;
+
+/**
+ * Opt-in result caching declared in a script's Yaml. Results are keyed by the values of the
+ * given invocation variables (all of them, if none are given) and expire a fixed time after
+ * being computed.
+ * <p>
+ * Only scripts whose results depend solely on their key variables (such as read-only lookups)
+ * should be cached.
+ */
+public class CachePolicy implements Initializable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final long DEFAULT_TTL_MILLIS = 60000L;
+    public static final long DEFAULT_MAX_ENTRIES = 1000L;
+
+    private final long ttlMillis;
+    private final long maxEntries;
+    private final List<String> keyVariables;
+
+    /**
+     * The reflective, field-based constructor for JSON/Yaml field-based bean access.
+     */
+    private CachePolicy() {
+        ttlMillis = DEFAULT_TTL_MILLIS;
+        maxEntries = DEFAULT_MAX_ENTRIES;
+        keyVariables = emptyList();
+    }
+
+    /**
+     * @param ttlMillis    The time results are served from cache for
+     * @param maxEntries   The maximum number of cached results
+     * @param keyVariables The names of the invocation variables results are keyed by
+     */
+    public CachePolicy(long ttlMillis, long maxEntries, @Null List<String> keyVariables) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+
+        if (keyVariables != null) {
+            this.keyVariables = keyVariables;
+        } else {
+            this.keyVariables = emptyList();
+        }
+
+        initialize();
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public List<String> getKeyVariables() {
+        return keyVariables == null ? emptyList() : keyVariables;
+    }
+
+    @Override
+    public void initialize() {
+        checkArgument(ttlMillis > 0, "Cache TTL must be positive");
+        checkArgument(maxEntries > 0, "Cache max entries must be positive");
+        if (keyVariables != null) {
+            checkArgument(keyVariables.stream().allMatch(name ->
+                            name != null && !name.trim().isEmpty()),
+                    "One or more cache key variable names are null or empty");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("ttlMillis", ttlMillis)
+                .add("maxEntries", maxEntries)
+                .add("keyVariables", keyVariables)
+                .toString();
+    }
+}
@@ -0,0 +1,100 @@
+package net.xrrocha.scripter.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The results of one script version, cached as per its @see{CachePolicy}.
+ * <p>
+ * Concurrent executions with the same key are coalesced: only the first one evaluates the
+ * script while the others wait for (and share) its result. Failures are propagated to all
+ * waiting callers but never cached.
+ */
+public class ResultCache {
+
+    private final CachePolicy policy;
+    private final Cache<List<Object>, Optional<Object>> results;
+
+    public ResultCache(@NotNull CachePolicy policy) {
+        checkNotNull(policy, "Cache policy cannot be null");
+        this.policy = policy;
+        results = CacheBuilder.newBuilder()
+                .expireAfterWrite(policy.getTtlMillis(), TimeUnit.MILLISECONDS)
+                .maximumSize(policy.getMaxEntries())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Retrieve the cached result for the given variables, executing the script if needed.
+     *
+     * @param invocationVariables The invocation variables the key is built from
+     * @param execution           The script execution
+     * @return The (possibly cached) execution result
+     */
+    public Object get(@NotNull Map<String, Object> invocationVariables,
+                      @NotNull Supplier<Object> execution) {
+        checkNotNull(execution, "Execution cannot be null");
+
+        List<Object> key = cacheKey(invocationVariables);
+        try {
+            return results.get(key, () -> Optional.ofNullable(execution.get())).orElse(null);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalArgumentException(e.getCause());
+        } catch (ExecutionError e) {
+            throw (Error) e.getCause();
+        }
+    }
+
+    List<Object> cacheKey(@NotNull Map<String, Object> invocationVariables) {
+        checkNotNull(invocationVariables, "Invocation variables cannot be null");
+
+        if (policy.getKeyVariables().isEmpty()) {
+            return Collections.singletonList(new HashMap<>(invocationVariables));
+        }
+
+        List<Object> key = new ArrayList<>(policy.getKeyVariables().size());
+        for (String keyVariable : policy.getKeyVariables()) {
+            key.add(invocationVariables.get(keyVariable));
+        }
+        return key;
+    }
+
+    public void invalidateAll() {
+        results.invalidateAll();
+    }
+
+    public long size() {
+        return results.size();
+    }
+
+    /**
+     * The hit, miss (i.e. evaluation) and eviction counts so far.
+     */
+    public CacheStats getStats() {
+        return results.stats();
+    }
+
+    public CachePolicy getPolicy() {
+        return policy;
+    }
+}
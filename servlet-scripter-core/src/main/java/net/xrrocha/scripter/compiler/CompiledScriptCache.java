@@ -0,0 +1,272 @@
+package net.xrrocha.scripter.compiler;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import net.xrrocha.scripter.commons.Initializable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.validation.constraints.NotNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static net.xrrocha.scripter.commons.io.FileUtils.isValidDirectory;
+import static net.xrrocha.scripter.commons.io.FileUtils.purge;
+
+/**
+ * Persistent cache of compiled script bytecode. Each compiled script is stored under a directory
+ * named after the hash of its language, engine name and version, class path and source so that,
+ * across restarts, only scripts that actually changed (or whose engine or dependencies were
+ * upgraded) get recompiled.
+ * <p>
+ * Entries not used since startup can be pruned once all registered scripts have been compiled.
+ * <p>
+ * Compilation itself is delegated to the first @see{ScriptCompiler} supporting the script's
+ * engine; scripts run by other engines are not cached.
+ */
+public class CompiledScriptCache implements Initializable {
+
+    public static final String MAIN_CLASS_FILENAME = "main-class";
+    public static final String CLASS_FILE_EXTENSION = ".class";
+
+    private static final Pattern ENTRY_DIRECTORY_PATTERN = Pattern.compile("^[0-9a-f]{64}$");
+
+    private static final Logger logger = LoggerFactory.getLogger(CompiledScriptCache.class);
+
+    private final File directory;
+    private final List<ScriptCompiler> compilers;
+
+    private final Set<String> usedKeys = ConcurrentHashMap.newKeySet();
+    private final AtomicLong compilationCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+
+    /**
+     * The reflective, field-based constructor for JSON/Yaml field-based bean access.
+     */
+    private CompiledScriptCache() {
+        directory = null;
+        compilers = null;
+    }
+
+    public CompiledScriptCache(@NotNull File directory, @NotNull List<ScriptCompiler> compilers) {
+        this.directory = directory;
+        this.compilers = compilers;
+        initialize();
+    }
+
+    /**
+     * Retrieve the compiled form of the given script, compiling and persisting it if needed.
+     *
+     * @param language      The script language
+     * @param source        The script source
+     * @param classPathHash The content hash of the script's class path (empty if none)
+     * @param scriptEngine  The engine running the script
+     * @param classLoader   The class loader resolving the script's dependencies
+     * @return The compiled script or empty if no compiler supports the engine
+     */
+    public Optional<CompiledScript> compile(@NotNull String language,
+                                            @NotNull String source,
+                                            @NotNull String classPathHash,
+                                            @NotNull ScriptEngine scriptEngine,
+                                            @NotNull ClassLoader classLoader) {
+
+        Optional<ScriptCompiler> compiler = compilers.stream()
+                .filter(candidate -> candidate.supports(scriptEngine))
+                .findFirst();
+        if (!compiler.isPresent()) {
+            return Optional.empty();
+        }
+
+        String key = cacheKey(language, source, classPathHash, scriptEngine);
+        File entryDirectory = new File(directory, key);
+        usedKeys.add(key);
+
+        Optional<Map<String, byte[]>> cachedClasses = readEntry(entryDirectory);
+        final Map<String, byte[]> classes;
+        final String mainClassName;
+        if (cachedClasses.isPresent()) {
+            logger.debug("Reusing compiled {} script '{}'", language, key);
+            loadCount.incrementAndGet();
+            classes = cachedClasses.get();
+            mainClassName = readMainClassName(entryDirectory);
+        } else {
+            logger.debug("Compiling {} script '{}'", language, key);
+            compilationCount.incrementAndGet();
+            mainClassName = "Script_" + key.substring(0, 16);
+            classes = compiler.get().compile(mainClassName, source, classLoader);
+            writeEntry(entryDirectory, mainClassName, classes);
+        }
+
+        try {
+            Class<?> scriptClass = new BytecodeClassLoader(classes, classLoader)
+                    .loadClass(mainClassName);
+            return Optional.of(compiler.get().load(scriptEngine, scriptClass));
+        } catch (ClassNotFoundException | LinkageError e) {
+            String errorMessage = "Error loading compiled script '" + key + "': " + e;
+            logger.error(errorMessage, e);
+            purge(entryDirectory);
+            throw new IllegalArgumentException(errorMessage, e);
+        }
+    }
+
+    static String cacheKey(@NotNull String language,
+                           @NotNull String source,
+                           @NotNull String classPathHash,
+                           @NotNull ScriptEngine scriptEngine) {
+        ScriptEngineFactory factory = scriptEngine.getFactory();
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putString(language, UTF_8).putByte((byte) 0)
+                .putString(String.valueOf(factory.getEngineName()), UTF_8).putByte((byte) 0)
+                .putString(String.valueOf(factory.getEngineVersion()), UTF_8).putByte((byte) 0)
+                .putString(classPathHash, UTF_8).putByte((byte) 0)
+                .putString(source, UTF_8);
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Delete the entries not compiled or reloaded since startup, as left behind by since changed
+     * or removed scripts. Meant to be called once all registered scripts have been prepared;
+     * pruned entries still in use elsewhere are merely recompiled.
+     *
+     * @return The number of entries deleted
+     */
+    public int prune() {
+        File[] entryDirectories = directory.listFiles(file -> file.isDirectory() &&
+                ENTRY_DIRECTORY_PATTERN.matcher(file.getName()).matches() &&
+                !usedKeys.contains(file.getName()));
+        if (entryDirectories == null) {
+            logger.warn("Error listing compiled scripts under '" + directory + "'");
+            return 0;
+        }
+
+        for (File entryDirectory : entryDirectories) {
+            logger.debug("Pruning unused compiled script '{}'", entryDirectory.getName());
+            purge(entryDirectory);
+        }
+        return entryDirectories.length;
+    }
+
+    private Optional<Map<String, byte[]>> readEntry(@NotNull File entryDirectory) {
+        File[] classFiles = entryDirectory.listFiles(
+                (dir, name) -> name.endsWith(CLASS_FILE_EXTENSION));
+        if (classFiles == null || !new File(entryDirectory, MAIN_CLASS_FILENAME).isFile()) {
+            return Optional.empty();
+        }
+
+        try {
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            for (File classFile : classFiles) {
+                String filename = classFile.getName();
+                String className =
+                        filename.substring(0, filename.length() - CLASS_FILE_EXTENSION.length());
+                classes.put(className, Files.readAllBytes(classFile.toPath()));
+            }
+            return Optional.of(classes);
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable compiled script '" + entryDirectory + "': " + e);
+            return Optional.empty();
+        }
+    }
+
+    private String readMainClassName(@NotNull File entryDirectory) {
+        try {
+            return new String(Files.readAllBytes(new File(entryDirectory, MAIN_CLASS_FILENAME)
+                    .toPath()), UTF_8).trim();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write the entry into a temporary directory and rename it so that readers (including other
+     * processes sharing the registry directory) never see a partial entry.
+     */
+    private void writeEntry(@NotNull File entryDirectory,
+                            @NotNull String mainClassName,
+                            @NotNull Map<String, byte[]> classes) {
+        File tempDirectory = null;
+        try {
+            tempDirectory = Files.createTempDirectory(directory.toPath(), "compile-").toFile();
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                Files.write(new File(tempDirectory, entry.getKey() + CLASS_FILE_EXTENSION).toPath(),
+                        entry.getValue());
+            }
+            Files.write(new File(tempDirectory, MAIN_CLASS_FILENAME).toPath(),
+                    mainClassName.getBytes(UTF_8));
+
+            purge(entryDirectory);
+            Files.move(tempDirectory.toPath(), entryDirectory.toPath(), ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Error persisting compiled script '" + entryDirectory + "': " + e);
+            if (tempDirectory != null) {
+                purge(tempDirectory);
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * The number of scripts compiled (rather than reloaded) so far.
+     */
+    public long getCompilationCount() {
+        return compilationCount.get();
+    }
+
+    /**
+     * The number of scripts reloaded from persisted bytecode so far.
+     */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    @Override
+    public void initialize() {
+        checkNotNull(directory, "Directory cannot be null");
+        checkNotNull(compilers, "Compilers cannot be null");
+        checkArgument(compilers.stream().allMatch(compiler -> compiler != null),
+                "Compilers cannot contain nulls");
+        checkArgument(isValidDirectory(directory),
+                "Invalid compiled script directory: " + directory);
+    }
+
+    /**
+     * Defines persisted classes on behalf of the script's own class loader.
+     */
+    static class BytecodeClassLoader extends ClassLoader {
+
+        private final Map<String, byte[]> classes;
+
+        BytecodeClassLoader(@NotNull Map<String, byte[]> classes, @NotNull ClassLoader parent) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(@NotNull String name) throws ClassNotFoundException {
+            byte[] bytecode = classes.get(name);
+            if (bytecode == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+}
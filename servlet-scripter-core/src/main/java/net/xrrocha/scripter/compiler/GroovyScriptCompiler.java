@@ -0,0 +1,55 @@
+package net.xrrocha.scripter.compiler;
+
+import groovy.lang.GroovyClassLoader;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.jsr223.GroovyCompiledScript;
+import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Groovy implementation of @see{ScriptCompiler}.
+ */
+public class GroovyScriptCompiler implements ScriptCompiler {
+
+    @Override
+    public boolean supports(@NotNull ScriptEngine scriptEngine) {
+        return scriptEngine instanceof GroovyScriptEngineImpl;
+    }
+
+    @Override
+    public Map<String, byte[]> compile(@NotNull String className,
+                                       @NotNull String source,
+                                       @NotNull ClassLoader classLoader) {
+
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        try (GroovyClassLoader groovyClassLoader =
+                     new GroovyClassLoader(classLoader, configuration)) {
+            CompilationUnit compilationUnit =
+                    new CompilationUnit(configuration, null, groovyClassLoader);
+            compilationUnit.addSource(className + ".groovy", source);
+            compilationUnit.compile(Phases.CLASS_GENERATION);
+
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            for (GroovyClass groovyClass : compilationUnit.getClasses()) {
+                classes.put(groovyClass.getName(), groovyClass.getBytes());
+            }
+            return classes;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public CompiledScript load(@NotNull ScriptEngine scriptEngine, @NotNull Class<?> scriptClass) {
+        return new GroovyCompiledScript((GroovyScriptEngineImpl) scriptEngine, scriptClass);
+    }
+}
@@ -0,0 +1,39 @@
+package net.xrrocha.scripter.compiler;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.validation.constraints.NotNull;
+import java.util.Map;
+
+/**
+ * Compile scripts to bytecode in a language-specific fashion so that the resulting classes can be
+ * persisted by a @see{CompiledScriptCache} and reloaded without recompiling.
+ */
+public interface ScriptCompiler {
+
+    /**
+     * Determine whether this compiler handles scripts run by the given engine.
+     */
+    boolean supports(@NotNull ScriptEngine scriptEngine);
+
+    /**
+     * Compile the given script source.
+     *
+     * @param className   The name to give the script's main class
+     * @param source      The script source
+     * @param classLoader The class loader resolving the script's dependencies
+     * @return The bytecode of all generated classes keyed by binary class name
+     */
+    Map<String, byte[]> compile(@NotNull String className,
+                                @NotNull String source,
+                                @NotNull ClassLoader classLoader);
+
+    /**
+     * Wrap a (previously compiled) script's main class as an engine compiled script.
+     *
+     * @param scriptEngine The engine running the script
+     * @param scriptClass  The script's main class
+     * @return The engine-specific compiled script
+     */
+    CompiledScript load(@NotNull ScriptEngine scriptEngine, @NotNull Class<?> scriptClass);
+}
@@ -0,0 +1,145 @@
+package net.xrrocha.scripter.schedule;
+
+import javax.validation.constraints.NotNull;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Classic five-field cron expression: <code>minute hour day-of-month month day-of-week</code>.
+ * <p>
+ * Each field accepts <code>*</code>, single values, ranges (<code>1-5</code>), steps
+ * (<code>*&#47;15</code>, <code>0-30/10</code>) and comma-separated lists thereof. Day of week
+ * ranges from 0 (Sunday) to 7 (Sunday again). As in Vixie cron, when both day of month and day of
+ * week are restricted, a day matching either of them fires.
+ */
+public class CronExpression {
+
+    /**
+     * Upper bound for searching the next fire time, so that impossible expressions (such as
+     * February 30th) fail rather than loop forever.
+     */
+    private static final int MAX_SEARCH_YEARS = 5;
+
+    private final String expression;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+
+    public CronExpression(@NotNull String expression) {
+        checkNotNull(expression, "Cron expression cannot be null");
+        this.expression = expression.trim();
+
+        String[] fields = this.expression.split("\\s+");
+        checkArgument(fields.length == 5,
+                "Cron expression requires 5 fields: " + expression);
+
+        minutes = parseField(fields[0], 0, 59);
+        hours = parseField(fields[1], 0, 23);
+        daysOfMonth = parseField(fields[2], 1, 31);
+        months = parseField(fields[3], 1, 12);
+        daysOfWeek = parseField(fields[4], 0, 7);
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+        }
+
+        // As in Vixie cron, starred fields (even stepped, such as */2) count as unrestricted
+        anyDayOfMonth = fields[2].startsWith("*");
+        anyDayOfWeek = fields[4].startsWith("*");
+    }
+
+    /**
+     * Compute the first time, strictly after the given one, matching this expression.
+     *
+     * @param after The reference time
+     * @return The next matching time, truncated to the minute
+     */
+    public ZonedDateTime next(@NotNull ZonedDateTime after) {
+        checkNotNull(after, "Reference time cannot be null");
+
+        ZonedDateTime limit = after.plusYears(MAX_SEARCH_YEARS);
+        ZonedDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        while (time.isBefore(limit)) {
+            if (!months.get(time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!matchesDay(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time;
+            }
+        }
+
+        throw new IllegalArgumentException("Cron expression never fires: " + expression);
+    }
+
+    private boolean matchesDay(@NotNull ZonedDateTime time) {
+        boolean dayOfMonthMatches = daysOfMonth.get(time.getDayOfMonth());
+        // java.time numbers Monday through Sunday as 1 through 7
+        boolean dayOfWeekMatches = daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+        if (anyDayOfMonth || anyDayOfWeek) {
+            return dayOfMonthMatches && dayOfWeekMatches;
+        }
+        return dayOfMonthMatches || dayOfWeekMatches;
+    }
+
+    static BitSet parseField(@NotNull String field, int min, int max) {
+        BitSet values = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            String range = part;
+            int step = 1;
+
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                range = part.substring(0, slash);
+                step = parseValue(part.substring(slash + 1), 1, max, part);
+            }
+
+            final int from;
+            final int to;
+            if (range.equals("*")) {
+                from = min;
+                to = max;
+            } else if (range.contains("-")) {
+                String[] bounds = range.split("-", 2);
+                from = parseValue(bounds[0], min, max, part);
+                to = parseValue(bounds[1], min, max, part);
+                checkArgument(from <= to, "Invalid cron range: " + part);
+            } else {
+                from = parseValue(range, min, max, part);
+                to = slash >= 0 ? max : from;
+            }
+
+            for (int value = from; value <= to; value += step) {
+                values.set(value);
+            }
+        }
+        return values;
+    }
+
+    private static int parseValue(@NotNull String value, int min, int max, @NotNull String part) {
+        try {
+            int number = Integer.parseInt(value);
+            checkArgument(number >= min && number <= max,
+                    "Cron value out of range [" + min + ", " + max + "]: " + part);
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cron field: " + part, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,16 @@
+package net.xrrocha.scripter.schedule;
+
+/**
+ * What to do about fire times missed while the scripter was down or while a previous run
+ * overran.
+ */
+public enum MisfirePolicy {
+    /**
+     * Run once right away, however many fire times were missed.
+     */
+    FIRE_ONCE,
+    /**
+     * Drop missed fire times and wait for the next one.
+     */
+    SKIP
+}
@@ -0,0 +1,157 @@
+package net.xrrocha.scripter.schedule;
+
+import com.google.common.base.MoreObjects;
+import net.xrrocha.scripter.commons.Initializable;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.io.Serializable;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Recurring execution trigger declared in a script's Yaml: either a @see{CronExpression} or a
+ * fixed rate, plus an optional random jitter (spreading runs of many scripts sharing the same
+ * trigger) and the policy applied to missed fire times.
+ */
+public class ScriptSchedule implements Initializable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String cron;
+    private final long fixedRateMillis;
+    private final long jitterMillis;
+    private final MisfirePolicy misfirePolicy;
+    private final String timeZone;
+
+    private transient CronExpression cronExpression;
+
+    /**
+     * The reflective, field-based constructor for JSON/Yaml field-based bean access.
+     */
+    private ScriptSchedule() {
+        cron = null;
+        fixedRateMillis = 0L;
+        jitterMillis = 0L;
+        misfirePolicy = MisfirePolicy.FIRE_ONCE;
+        timeZone = null;
+    }
+
+    /**
+     * @param cron            The cron expression, if not running at a fixed rate
+     * @param fixedRateMillis The interval between fire times, if not a cron schedule
+     * @param jitterMillis    The maximum random delay added to each fire time
+     * @param misfirePolicy   The policy applied to missed fire times
+     * @param timeZone        The time zone cron expressions are evaluated in (default: system)
+     */
+    public ScriptSchedule(@Null String cron,
+                          long fixedRateMillis,
+                          long jitterMillis,
+                          @Null MisfirePolicy misfirePolicy,
+                          @Null String timeZone) {
+        this.cron = cron;
+        this.fixedRateMillis = fixedRateMillis;
+        this.jitterMillis = jitterMillis;
+
+        if (misfirePolicy != null) {
+            this.misfirePolicy = misfirePolicy;
+        } else {
+            this.misfirePolicy = MisfirePolicy.FIRE_ONCE;
+        }
+
+        this.timeZone = timeZone;
+
+        initialize();
+    }
+
+    public static ScriptSchedule cron(@NotNull String cron) {
+        return new ScriptSchedule(cron, 0L, 0L, null, null);
+    }
+
+    public static ScriptSchedule fixedRate(long fixedRateMillis) {
+        return new ScriptSchedule(null, fixedRateMillis, 0L, null, null);
+    }
+
+    /**
+     * Compute the first fire time strictly after the given one.
+     *
+     * @param afterMillis The reference time, in epoch milliseconds
+     * @return The next fire time, in epoch milliseconds
+     */
+    public long nextFireTime(long afterMillis) {
+        if (cron == null) {
+            return afterMillis + fixedRateMillis;
+        }
+
+        if (cronExpression == null) {
+            cronExpression = new CronExpression(cron);
+        }
+        return cronExpression.next(Instant.ofEpochMilli(afterMillis).atZone(getZoneId()))
+                .toInstant().toEpochMilli();
+    }
+
+    /**
+     * A textual rendition of what triggers this schedule. Persisted fire times computed for a
+     * different trigger are disregarded.
+     */
+    public String getTrigger() {
+        if (cron != null) {
+            return "cron:" + cron.trim() + "@" + getZoneId();
+        }
+        return "rate:" + fixedRateMillis;
+    }
+
+    public Optional<String> getCron() {
+        return Optional.ofNullable(cron);
+    }
+
+    public long getFixedRateMillis() {
+        return fixedRateMillis;
+    }
+
+    public long getJitterMillis() {
+        return jitterMillis;
+    }
+
+    public MisfirePolicy getMisfirePolicy() {
+        return misfirePolicy == null ? MisfirePolicy.FIRE_ONCE : misfirePolicy;
+    }
+
+    public ZoneId getZoneId() {
+        return timeZone == null ? ZoneId.systemDefault() : ZoneId.of(timeZone);
+    }
+
+    @Override
+    public void initialize() {
+        checkArgument(cron != null ^ fixedRateMillis > 0,
+                "Schedule requires either a cron expression or a positive fixed rate");
+        checkArgument(jitterMillis >= 0, "Jitter cannot be negative");
+
+        if (cron != null) {
+            cronExpression = new CronExpression(cron);
+        }
+        if (timeZone != null) {
+            try {
+                ZoneId.of(timeZone);
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException("Invalid time zone: " + timeZone, e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .omitNullValues()
+                .add("cron", cron)
+                .add("fixedRateMillis", cron == null ? fixedRateMillis : null)
+                .add("jitterMillis", jitterMillis)
+                .add("misfirePolicy", misfirePolicy)
+                .add("timeZone", timeZone)
+                .toString();
+    }
+}
@@ -0,0 +1,358 @@
+package net.xrrocha.scripter.schedule;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.xrrocha.scripter.commons.Initializable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.NotNull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Runs scripts on their @see{ScriptSchedule}s. All scripts share a small scheduled thread pool
+ * that only triggers runs: the runs themselves are handed to a separate, bounded pool so that
+ * long-running scripts can't delay the triggering of others. No script holds a thread of its own
+ * between runs.
+ * <p>
+ * A script never runs concurrently with itself: the next fire time is only armed once a run
+ * completes and fire times reached while a previous run (even of a since replaced schedule) is
+ * still in progress are treated as missed. Next fire times are persisted so that, upon restart,
+ * schedules resume where they left off and fire times missed while down are subject to each
+ * schedule's @see{MisfirePolicy}.
+ */
+public class ScriptScheduler implements Initializable, AutoCloseable {
+
+    public static final int DEFAULT_THREAD_COUNT = 2;
+    public static final int DEFAULT_RUN_THREAD_COUNT = 4;
+
+    /**
+     * The maximum number of triggered runs waiting for a run thread; beyond it runs are skipped.
+     */
+    static final int RUN_QUEUE_CAPACITY = 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(ScriptScheduler.class);
+
+    private final File stateFile;
+    private final int threadCount;
+    private final int runThreadCount;
+    private final Consumer<String> runner;
+    private final Clock clock;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Map<String, AtomicBoolean> runFlags = new ConcurrentHashMap<>();
+    private final Properties state = new Properties();
+    private ScheduledExecutorService executor;
+    private ExecutorService runExecutor;
+
+    public ScriptScheduler(@NotNull File stateFile, @NotNull Consumer<String> runner) {
+        this(stateFile, DEFAULT_THREAD_COUNT, DEFAULT_RUN_THREAD_COUNT, runner, Clock.systemUTC());
+    }
+
+    public ScriptScheduler(@NotNull File stateFile,
+                           int threadCount,
+                           @NotNull Consumer<String> runner,
+                           @NotNull Clock clock) {
+        this(stateFile, threadCount, DEFAULT_RUN_THREAD_COUNT, runner, clock);
+    }
+
+    /**
+     * @param stateFile      The file next fire times are persisted to
+     * @param threadCount    The number of threads triggering runs of all scheduled scripts
+     * @param runThreadCount The number of threads running all scheduled scripts
+     * @param runner         The script runner, given the script id
+     * @param clock          The clock fire times are reckoned by
+     */
+    public ScriptScheduler(@NotNull File stateFile,
+                           int threadCount,
+                           int runThreadCount,
+                           @NotNull Consumer<String> runner,
+                           @NotNull Clock clock) {
+        this.stateFile = stateFile;
+        this.threadCount = threadCount;
+        this.runThreadCount = runThreadCount;
+        this.runner = runner;
+        this.clock = clock;
+        initialize();
+    }
+
+    /**
+     * Schedule (or reschedule) a script. A persisted fire time for the same trigger is honored
+     * so that restarts don't reset the schedule.
+     *
+     * @param scriptId The script id
+     * @param schedule The script schedule
+     */
+    public void schedule(@NotNull String scriptId, @NotNull ScriptSchedule schedule) {
+        checkNotNull(scriptId, "Script id cannot be null");
+        checkNotNull(schedule, "Schedule cannot be null");
+
+        long now = clock.millis();
+        long fireTime = readFireTime(scriptId, schedule)
+                .map(persistedTime -> persistedTime > now ?
+                        persistedTime : misfire(scriptId, schedule, now))
+                .orElseGet(() -> schedule.nextFireTime(now));
+
+        Job job = new Job(scriptId, schedule);
+        Job previousJob = jobs.put(scriptId, job);
+        if (previousJob != null) {
+            previousJob.cancel();
+        }
+
+        logger.info("Scheduling script '" + scriptId + "': " + schedule);
+        job.arm(fireTime);
+    }
+
+    /**
+     * Stop running a script on schedule, if scheduled, and forget its persisted fire time.
+     *
+     * @param scriptId The script id
+     */
+    public void unschedule(@NotNull String scriptId) {
+        Job job = jobs.remove(scriptId);
+        if (job != null) {
+            logger.info("Unscheduling script '" + scriptId + "'");
+            job.cancel();
+        }
+        removeFireTime(scriptId);
+    }
+
+    public Optional<Long> getNextFireTime(@NotNull String scriptId) {
+        return Optional.ofNullable(jobs.get(scriptId)).map(job -> job.fireTime);
+    }
+
+    public Set<String> listScheduled() {
+        return jobs.keySet();
+    }
+
+    /**
+     * Determine the fire time replacing a missed one as per the schedule's misfire policy.
+     */
+    private long misfire(@NotNull String scriptId, @NotNull ScriptSchedule schedule, long now) {
+        logger.warn("Script '" + scriptId + "' missed its fire time; applying " +
+                schedule.getMisfirePolicy());
+        if (schedule.getMisfirePolicy() == MisfirePolicy.FIRE_ONCE) {
+            return now;
+        }
+        return schedule.nextFireTime(now);
+    }
+
+    private Optional<Long> readFireTime(@NotNull String scriptId,
+                                        @NotNull ScriptSchedule schedule) {
+        final String entry;
+        synchronized (state) {
+            entry = state.getProperty(scriptId);
+        }
+        if (entry == null) {
+            return Optional.empty();
+        }
+
+        // Entries read "<fire time> <trigger>"
+        String[] fields = entry.split(" ", 2);
+        if (fields.length < 2 || !fields[1].equals(schedule.getTrigger())) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Long.parseLong(fields[0]));
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring invalid fire time for script '" + scriptId + "': " + entry);
+            return Optional.empty();
+        }
+    }
+
+    private void writeFireTime(@NotNull String scriptId,
+                               @NotNull ScriptSchedule schedule,
+                               long fireTime) {
+        synchronized (state) {
+            state.setProperty(scriptId, fireTime + " " + schedule.getTrigger());
+            saveState();
+        }
+    }
+
+    private void removeFireTime(@NotNull String scriptId) {
+        synchronized (state) {
+            if (state.remove(scriptId) != null) {
+                saveState();
+            }
+        }
+    }
+
+    /**
+     * Write the state into a temporary file and rename it so that a crash never leaves a
+     * truncated state file behind.
+     */
+    private void saveState() {
+        File tempFile = new File(stateFile.getPath() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempFile.toPath())) {
+            state.store(out, "Script next fire times");
+        } catch (IOException e) {
+            logger.warn("Error persisting schedule state: " + e);
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), stateFile.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Error persisting schedule state: " + e);
+        }
+    }
+
+    private void loadState() {
+        if (!stateFile.isFile()) {
+            return;
+        }
+        try (InputStream in = Files.newInputStream(stateFile.toPath())) {
+            state.load(in);
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable schedule state '" + stateFile + "': " + e);
+        }
+    }
+
+    public File getStateFile() {
+        return stateFile;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public int getRunThreadCount() {
+        return runThreadCount;
+    }
+
+    @Override
+    public void close() {
+        jobs.values().forEach(Job::cancel);
+        jobs.clear();
+        executor.shutdownNow();
+        runExecutor.shutdownNow();
+    }
+
+    @Override
+    public void initialize() {
+        checkNotNull(stateFile, "State file cannot be null");
+        checkArgument(threadCount > 0, "Thread count must be positive");
+        checkArgument(runThreadCount > 0, "Run thread count must be positive");
+        checkNotNull(runner, "Runner cannot be null");
+        checkNotNull(clock, "Clock cannot be null");
+
+        loadState();
+        executor = Executors.newScheduledThreadPool(threadCount, new ThreadFactoryBuilder()
+                .setNameFormat("script-scheduler-%d")
+                .setDaemon(true)
+                .build());
+        runExecutor = new ThreadPoolExecutor(runThreadCount, runThreadCount,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(RUN_QUEUE_CAPACITY),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("script-runner-%d")
+                        .setDaemon(true)
+                        .build());
+    }
+
+    /**
+     * A scheduled script. Each (re)scheduling creates a new job; the run flag is shared by all
+     * jobs of the same script and stays set from the trigger until the run completes on its run
+     * thread.
+     */
+    private final class Job implements Runnable {
+
+        private final String scriptId;
+        private final ScriptSchedule schedule;
+        private final AtomicBoolean running;
+
+        private volatile long fireTime;
+        private ScheduledFuture<?> future;
+        private boolean cancelled;
+
+        Job(@NotNull String scriptId, @NotNull ScriptSchedule schedule) {
+            this.scriptId = scriptId;
+            this.schedule = schedule;
+            this.running = runFlags.computeIfAbsent(scriptId, id -> new AtomicBoolean());
+        }
+
+        synchronized void arm(long fireTime) {
+            if (cancelled) {
+                return;
+            }
+
+            this.fireTime = fireTime;
+            writeFireTime(scriptId, schedule, fireTime);
+
+            long delay = Math.max(0L, fireTime - clock.millis());
+            if (schedule.getJitterMillis() > 0) {
+                delay += ThreadLocalRandom.current().nextLong(schedule.getJitterMillis() + 1);
+            }
+            future = executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        /**
+         * Trigger a run on the run pool; the next fire time is armed once the run completes.
+         */
+        @Override
+        public void run() {
+            if (!running.compareAndSet(false, true)) {
+                logger.warn("Script '" + scriptId + "' still running; not overlapping it");
+                rearm();
+                return;
+            }
+
+            try {
+                runExecutor.execute(this::runScript);
+            } catch (RejectedExecutionException e) {
+                running.set(false);
+                logger.warn("Too many scheduled runs pending; skipping script '" + scriptId + "'");
+                rearm();
+            }
+        }
+
+        private void runScript() {
+            try {
+                logger.debug("Running scheduled script '" + scriptId + "'");
+                runner.accept(scriptId);
+            } catch (RuntimeException e) {
+                logger.error("Error running scheduled script '" + scriptId + "': " + e, e);
+            } finally {
+                running.set(false);
+            }
+            rearm();
+        }
+
+        private void rearm() {
+            long now = clock.millis();
+            long nextFireTime = schedule.nextFireTime(fireTime);
+            arm(nextFireTime > now ? nextFireTime : misfire(scriptId, schedule, now));
+        }
+    }
+}
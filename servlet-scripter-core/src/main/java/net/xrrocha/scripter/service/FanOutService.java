@@ -0,0 +1,100 @@
+package net.xrrocha.scripter.service;
+
+import net.xrrocha.scripter.commons.Initializable;
+import net.xrrocha.scripter.commons.concurrent.FanOut;
+import net.xrrocha.scripter.commons.concurrent.FanOutResult;
+
+import javax.validation.constraints.NotNull;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Built-in service letting scripts parallelize blocking work (such as SSH calls to many hosts)
+ * on bounded, named @see{FanOut} executors rather than on the common fork-join pool, which is
+ * sized for CPU-bound work and shared by all scripts.
+ * <p>
+ * Scripts sharing a fan-out name share its threads so that, say, all scripts talking to the
+ * same fleet are collectively bounded.
+ */
+public class FanOutService implements Initializable, AutoCloseable {
+
+    public static final String DEFAULT_FAN_OUT_NAME = "default";
+
+    private final int parallelism;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+
+    private final Map<String, FanOut> fanOuts = new ConcurrentHashMap<>();
+
+    /**
+     * Create a service using the @see{FanOut} defaults.
+     */
+    public FanOutService() {
+        this(FanOut.DEFAULT_PARALLELISM, FanOut.DEFAULT_QUEUE_CAPACITY,
+                FanOut.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param parallelism   The parallelism of fan-outs created without an explicit one
+     * @param queueCapacity The queue capacity of all fan-outs
+     * @param timeoutMillis The default per-task timeout of all fan-outs
+     */
+    public FanOutService(int parallelism, int queueCapacity, long timeoutMillis) {
+        this.parallelism = parallelism;
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeoutMillis;
+        initialize();
+    }
+
+    /**
+     * Apply the given task to all items on the default fan-out.
+     */
+    public <T, R> FanOutResult<T, R> map(@NotNull Collection<T> items,
+                                         @NotNull Function<? super T, ? extends R> task) {
+        return named(DEFAULT_FAN_OUT_NAME).map(items, task);
+    }
+
+    /**
+     * Apply the given task to all items on the default fan-out with the given per-task timeout.
+     */
+    public <T, R> FanOutResult<T, R> map(@NotNull Collection<T> items,
+                                         @NotNull Function<? super T, ? extends R> task,
+                                         long timeoutMillis) {
+        return named(DEFAULT_FAN_OUT_NAME).map(items, task, timeoutMillis);
+    }
+
+    /**
+     * Retrieve (creating it on first use) the fan-out with the given name.
+     */
+    public FanOut named(@NotNull String name) {
+        return named(name, parallelism);
+    }
+
+    /**
+     * Retrieve (creating it on first use) the fan-out with the given name. The parallelism only
+     * applies upon creation.
+     */
+    public FanOut named(@NotNull String name, int parallelism) {
+        checkNotNull(name, "Name cannot be null");
+        return fanOuts.computeIfAbsent(name, fanOutName ->
+                new FanOut(fanOutName, parallelism, queueCapacity, timeoutMillis));
+    }
+
+    @Override
+    public void close() {
+        fanOuts.values().forEach(FanOut::close);
+        fanOuts.clear();
+    }
+
+    @Override
+    public void initialize() {
+        checkArgument(parallelism > 0, "Parallelism must be positive");
+        checkArgument(queueCapacity > 0, "Queue capacity must be positive");
+        checkArgument(timeoutMillis > 0, "Timeout must be positive");
+    }
+}
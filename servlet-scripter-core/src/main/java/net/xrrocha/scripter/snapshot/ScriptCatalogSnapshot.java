@@ -0,0 +1,576 @@
+package net.xrrocha.scripter.snapshot;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import net.xrrocha.scripter.ExecutionMode;
+import net.xrrocha.scripter.Script;
+import net.xrrocha.scripter.ScriptUsage;
+import net.xrrocha.scripter.cache.CachePolicy;
+import net.xrrocha.scripter.commons.Initializable;
+import net.xrrocha.scripter.commons.classloader.ParentLastClassLoaderCreator;
+import net.xrrocha.scripter.schedule.ScriptSchedule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.constraints.NotNull;
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Compact, binary snapshot of all script definitions in a catalog. Loading a script from the
+ * snapshot avoids Yaml parsing altogether: the file is memory-mapped at startup and script bodies
+ * are decoded straight from read-only slices of the mapping.
+ * <p>
+ * The snapshot is an append-only log of <code>PUT</code> and <code>REMOVE</code> records so that
+ * each registration or deregistration costs a single append. Entries are keyed by a hash of the
+ * script's Yaml text: a Yaml file edited behind the snapshot's back simply misses and is parsed
+ * as usual. Superseded records are compacted away at startup.
+ * <p>
+ * Scripts whose global variables or class loader creator aren't serializable are not
+ * snapshotted. Only Yaml-like values and scripter classes are deserialized back: entries holding
+ * any other class are ignored.
+ */
+public class ScriptCatalogSnapshot implements Initializable {
+
+    public static final String DEFAULT_FILENAME = "catalog.snapshot";
+
+    private static final int MAGIC = 0x53435331; // "SCS1"
+    private static final int HEADER_LENGTH = 4;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final int NULL_LENGTH = -1;
+    private static final int COMPACTION_SLACK = 16;
+
+    /**
+     * The classes, besides those of the scripter itself, that snapshotted extras may hold: those
+     * yielded by Yaml for global variables, the immutable collections programmatically built
+     * scripts commonly hold and the enums of pluggable openers.
+     */
+    static final Set<String> DESERIALIZABLE_CLASSES = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList(
+                    "java.lang.Boolean", "java.lang.Byte", "java.lang.Character",
+                    "java.lang.Double", "java.lang.Enum", "java.lang.Float", "java.lang.Integer",
+                    "java.lang.Long", "java.lang.Number", "java.lang.Object", "java.lang.Short",
+                    "java.lang.String",
+                    "java.math.BigDecimal", "java.math.BigInteger",
+                    "java.util.ArrayList", "java.util.Date", "java.util.HashMap",
+                    "java.util.HashSet", "java.util.LinkedHashMap", "java.util.LinkedHashSet",
+                    "java.util.LinkedList",
+                    "java.util.Collections$EmptyList", "java.util.Collections$EmptyMap",
+                    "java.util.Collections$EmptySet", "java.util.Collections$SingletonList",
+                    "java.util.Collections$SingletonMap", "java.util.Collections$SingletonSet",
+                    "java.util.Collections$UnmodifiableCollection",
+                    "java.util.Collections$UnmodifiableList",
+                    "java.util.Collections$UnmodifiableMap",
+                    "java.util.Collections$UnmodifiableRandomAccessList",
+                    "java.util.Collections$UnmodifiableSet",
+                    "com.google.common.collect.ImmutableList$SerializedForm",
+                    "com.google.common.collect.ImmutableMap$SerializedForm",
+                    "com.google.common.collect.ImmutableSet$SerializedForm",
+                    "com.amazonaws.regions.Regions")));
+    static final String DESERIALIZABLE_PACKAGE_PREFIX = "net.xrrocha.scripter.";
+
+    private static final Logger logger = LoggerFactory.getLogger(ScriptCatalogSnapshot.class);
+
+    private final File file;
+    private final Map<HashCode, Entry> entriesByHash = new ConcurrentHashMap<>();
+    private final Map<String, HashCode> hashesById = new ConcurrentHashMap<>();
+    private int recordCount;
+
+    public ScriptCatalogSnapshot(@NotNull File file) {
+        this.file = file;
+        initialize();
+    }
+
+    /**
+     * Retrieve the script corresponding to the given Yaml text without parsing it.
+     *
+     * @param yamlString The script's Yaml text
+     * @return The snapshotted script, if any
+     */
+    public Optional<Script> lookup(@NotNull String yamlString) {
+        Entry entry = entriesByHash.get(hash(yamlString));
+        if (entry == null) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(entry.toScript());
+        } catch (Exception e) {
+            logger.warn("Ignoring unreadable snapshot entry for '" + entry.id + "': " + e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Determine whether the script corresponding to the given Yaml text is snapshotted.
+     *
+     * @param yamlString The script's Yaml text
+     * @return Whether the script is snapshotted
+     */
+    public boolean contains(@NotNull String yamlString) {
+        return entriesByHash.containsKey(hash(yamlString));
+    }
+
+    /**
+     * Record a newly registered script.
+     *
+     * @param script     The (untransformed) script
+     * @param yamlString The script's Yaml text
+     */
+    public synchronized void append(@NotNull Script script, @NotNull String yamlString) {
+        checkNotNull(script, "Script cannot be null");
+        checkNotNull(yamlString, "Yaml string cannot be null");
+
+        HashCode hash = hash(yamlString);
+        final byte[] record;
+        try {
+            record = encodePut(script, hash);
+        } catch (NotSerializableException e) {
+            logger.debug("Not snapshotting script '{}': {}", script.getId(), e.toString());
+            appendRemoval(script.getId());
+            return;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        writeRecord(record);
+        index(decodeEntry(ByteBuffer.wrap(record, 1, record.length - 1).slice()));
+    }
+
+    /**
+     * Record a deregistered script.
+     *
+     * @param scriptId The script id
+     */
+    public synchronized void appendRemoval(@NotNull String scriptId) {
+        checkNotNull(scriptId, "Script id cannot be null");
+
+        if (!hashesById.containsKey(scriptId)) {
+            return;
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeByte(REMOVE);
+            writeString(out, scriptId);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        writeRecord(baos.toByteArray());
+        unindex(scriptId);
+    }
+
+    public int size() {
+        return entriesByHash.size();
+    }
+
+    @Override
+    public void initialize() {
+        checkNotNull(file, "Snapshot file cannot be null");
+
+        if (file.isFile()) {
+            load();
+            if (recordCount > 2 * entriesByHash.size() + COMPACTION_SLACK) {
+                compact();
+            }
+        } else {
+            rewrite(Collections.emptyList());
+        }
+    }
+
+    void load() {
+
+        final long validLength;
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC) {
+                logger.warn("Discarding unrecognized catalog snapshot: " + file);
+                rewrite(Collections.emptyList());
+                return;
+            }
+
+            long position = buffer.position();
+            try {
+                while (buffer.hasRemaining()) {
+                    byte type = buffer.get();
+                    if (type == PUT) {
+                        index(decodeEntry(buffer));
+                    } else if (type == REMOVE) {
+                        unindex(readString(buffer));
+                    } else {
+                        throw new IllegalStateException("Bad record type: " + type);
+                    }
+                    recordCount++;
+                    position = buffer.position();
+                }
+            } catch (BufferUnderflowException | IllegalStateException e) {
+                logger.warn("Truncating catalog snapshot after incomplete record at " + position);
+            }
+            validLength = position;
+
+            logger.debug("Loaded {} snapshotted scripts from {} records", entriesByHash.size(),
+                    recordCount);
+        } catch (IOException e) {
+            String errorMessage = "Error loading catalog snapshot '" + file + "': " + e;
+            logger.error(errorMessage, e);
+            throw new IllegalArgumentException(errorMessage, e);
+        }
+
+        if (validLength < file.length()) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), WRITE)) {
+                channel.truncate(validLength);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    synchronized void compact() {
+        logger.debug("Compacting catalog snapshot: {} records, {} live", recordCount,
+                entriesByHash.size());
+
+        List<byte[]> records = new ArrayList<>();
+        for (Entry entry : entriesByHash.values()) {
+            records.add(entry.toRecord());
+        }
+        rewrite(records);
+
+        // Re-map compacted file so entries no longer reference the old mapping
+        entriesByHash.clear();
+        hashesById.clear();
+        recordCount = 0;
+        load();
+    }
+
+    private void rewrite(@NotNull List<byte[]> records) {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out =
+                     new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            for (byte[] record : records) {
+                out.write(record);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException e) {
+            String errorMessage = "Error writing catalog snapshot '" + file + "': " + e;
+            logger.error(errorMessage, e);
+            throw new IllegalArgumentException(errorMessage, e);
+        }
+    }
+
+    private void writeRecord(@NotNull byte[] record) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), WRITE, APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            recordCount++;
+        } catch (IOException e) {
+            String errorMessage = "Error appending to catalog snapshot '" + file + "': " + e;
+            logger.error(errorMessage, e);
+            throw new IllegalArgumentException(errorMessage, e);
+        }
+    }
+
+    private void index(@NotNull Entry entry) {
+        unindex(entry.id);
+        entriesByHash.put(entry.hash, entry);
+        hashesById.put(entry.id, entry.hash);
+    }
+
+    private void unindex(@NotNull String scriptId) {
+        HashCode previousHash = hashesById.remove(scriptId);
+        if (previousHash != null) {
+            entriesByHash.remove(previousHash);
+        }
+    }
+
+    static HashCode hash(@NotNull String yamlString) {
+        return Hashing.murmur3_128().hashString(yamlString, UTF_8);
+    }
+
+    static byte[] encodePut(@NotNull Script script, @NotNull HashCode hash) throws IOException {
+
+        ByteArrayOutputStream extras = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(extras)) {
+            out.writeObject(new HashMap<>(script.getGlobalVariables()));
+            out.writeObject(script.getClassLoaderCreator().orElse(null));
+            out.writeObject(encodeAttributes(script));
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeByte(PUT);
+            writeString(out, script.getId());
+            out.write(hash.asBytes());
+            writeString(out, script.getLanguage());
+            writeString(out, script.getUsage().name());
+            writeString(out, script.getDescription().orElse(null));
+            out.writeInt(script.getServices().size());
+            for (String service : script.getServices()) {
+                writeString(out, service);
+            }
+            writeBytes(out, extras.toByteArray());
+            writeBytes(out, script.getScript().getBytes(UTF_8));
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Collect the optional script attributes, keyed by name so that new ones can be added
+     * without changing the record layout.
+     */
+    static Map<String, Object> encodeAttributes(@NotNull Script script) {
+        Map<String, Object> attributes = new HashMap<>();
+        script.getEntryPoint().ifPresent(entryPoint -> attributes.put("entryPoint", entryPoint));
+        if (!script.getParameters().isEmpty()) {
+            attributes.put("parameters", new ArrayList<>(script.getParameters()));
+        }
+        script.getServiceInterface().ifPresent(serviceInterface ->
+                attributes.put("serviceInterface", serviceInterface));
+        script.getExecutionMode().ifPresent(executionMode ->
+                attributes.put("executionMode", executionMode));
+        script.getSchedule().ifPresent(schedule -> attributes.put("schedule", schedule));
+        script.getCache().ifPresent(cache -> attributes.put("cache", cache));
+        if (script.isCoalesce()) {
+            attributes.put("coalesce", true);
+        }
+        return attributes;
+    }
+
+    static Entry decodeEntry(@NotNull ByteBuffer buffer) {
+        String id = readString(buffer);
+        byte[] hashBytes = new byte[16];
+        buffer.get(hashBytes);
+        String language = readString(buffer);
+        String usage = readString(buffer);
+        String description = readString(buffer);
+        int serviceCount = buffer.getInt();
+        Set<String> services = new LinkedHashSet<>();
+        for (int i = 0; i < serviceCount; i++) {
+            services.add(readString(buffer));
+        }
+        ByteBuffer extras = readSlice(buffer);
+        ByteBuffer body = readSlice(buffer);
+        return new Entry(id, HashCode.fromBytes(hashBytes), language, usage, description,
+                services, extras, body);
+    }
+
+    static boolean isDeserializable(@NotNull String className) {
+        // Arrays: primitive ones are harmless, object ones are checked by element type
+        String elementName = className.replaceFirst("^\\[+", "");
+        if (elementName.length() == 1) {
+            return true;
+        }
+        if (elementName.length() < className.length()) {
+            elementName = elementName.substring(1, elementName.length() - 1);
+        }
+        return DESERIALIZABLE_CLASSES.contains(elementName) ||
+                elementName.startsWith(DESERIALIZABLE_PACKAGE_PREFIX);
+    }
+
+    private static void writeString(@NotNull DataOutputStream out, String string)
+            throws IOException {
+        if (string == null) {
+            out.writeInt(NULL_LENGTH);
+        } else {
+            writeBytes(out, string.getBytes(UTF_8));
+        }
+    }
+
+    private static void writeBytes(@NotNull DataOutputStream out, @NotNull byte[] bytes)
+            throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(@NotNull ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static ByteBuffer readSlice(@NotNull ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    /**
+     * Snapshotted script whose serialized extras and body remain views over the snapshot.
+     */
+    static class Entry {
+
+        private final String id;
+        private final HashCode hash;
+        private final String language;
+        private final String usage;
+        private final String description;
+        private final Set<String> services;
+        private final ByteBuffer extras;
+        private final ByteBuffer body;
+
+        Entry(String id, HashCode hash, String language, String usage, String description,
+              Set<String> services, ByteBuffer extras, ByteBuffer body) {
+            this.id = id;
+            this.hash = hash;
+            this.language = language;
+            this.usage = usage;
+            this.description = description;
+            this.services = services;
+            this.extras = extras;
+            this.body = body;
+        }
+
+        @SuppressWarnings("unchecked")
+        Script toScript() throws IOException, ClassNotFoundException {
+
+            final Map<String, Object> globalVariables;
+            final ParentLastClassLoaderCreator classLoaderCreator;
+            Map<String, Object> attributes;
+            try (ObjectInputStream in =
+                         new AllowListObjectInputStream(new ByteBufferInputStream(extras))) {
+                globalVariables = (Map<String, Object>) in.readObject();
+                classLoaderCreator = (ParentLastClassLoaderCreator) in.readObject();
+                try {
+                    attributes = (Map<String, Object>) in.readObject();
+                } catch (EOFException e) {
+                    // Recorded before optional attributes were snapshotted
+                    attributes = Collections.emptyMap();
+                }
+            }
+
+            return Script.builder()
+                    .id(id)
+                    .language(language)
+                    .usage(ScriptUsage.valueOf(usage))
+                    .description(description)
+                    .classLoaderCreator(classLoaderCreator)
+                    .services(services)
+                    .globalVariables(globalVariables)
+                    .script(UTF_8.decode(body.duplicate()).toString())
+                    .entryPoint((String) attributes.get("entryPoint"))
+                    .parameters((List<String>) attributes.get("parameters"))
+                    .serviceInterface((String) attributes.get("serviceInterface"))
+                    .executionMode((ExecutionMode) attributes.get("executionMode"))
+                    .schedule((ScriptSchedule) attributes.get("schedule"))
+                    .cache((CachePolicy) attributes.get("cache"))
+                    .coalesce(Boolean.TRUE.equals(attributes.get("coalesce")))
+                    .build();
+        }
+
+        byte[] toRecord() {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(baos)) {
+                out.writeByte(PUT);
+                writeString(out, id);
+                out.write(hash.asBytes());
+                writeString(out, language);
+                writeString(out, usage);
+                writeString(out, description);
+                out.writeInt(services.size());
+                for (String service : services) {
+                    writeString(out, service);
+                }
+                writeBuffer(out, extras);
+                writeBuffer(out, body);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+            return baos.toByteArray();
+        }
+
+        private static void writeBuffer(@NotNull DataOutputStream out, @NotNull ByteBuffer buffer)
+                throws IOException {
+            ByteBuffer duplicate = buffer.duplicate();
+            byte[] bytes = new byte[duplicate.remaining()];
+            duplicate.get(bytes);
+            writeBytes(out, bytes);
+        }
+    }
+
+    /**
+     * <code>ObjectInputStream</code> refusing to resolve classes (and proxies) not explicitly
+     * allowed, so that a tampered snapshot can't instantiate arbitrary serializable classes.
+     */
+    static class AllowListObjectInputStream extends ObjectInputStream {
+
+        AllowListObjectInputStream(@NotNull InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(@NotNull ObjectStreamClass description)
+                throws IOException, ClassNotFoundException {
+            if (!isDeserializable(description.getName())) {
+                throw new InvalidClassException(description.getName(),
+                        "Class not allowed in catalog snapshot");
+            }
+            return super.resolveClass(description);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(@NotNull String[] interfaces)
+                throws IOException {
+            throw new InvalidClassException(Arrays.toString(interfaces),
+                    "Proxy not allowed in catalog snapshot");
+        }
+    }
+
+    /**
+     * <code>InputStream</code> view of a <code>ByteBuffer</code>.
+     */
+    static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(@NotNull ByteBuffer buffer) {
+            this.buffer = buffer.duplicate();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(@NotNull byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -110,16 +110,8 @@ public abstract class TranspilingScriptTransformer implements ScriptTransformer,
 
         if (sourceLanguageName.trim().equalsIgnoreCase(script.getLanguage().trim())) {
 
-            return new Script(
-                    script.getId(),
-                    targetLanguageName,
-                    script.getUsage(),
-                    script.getDescription().orElse(null),
-                    script.getClassLoaderCreator().orElse(null),
-                    script.getServices(),
-                    script.getGlobalVariables(),
-                    getTranspiler().apply(script.getScript())
-            );
+            return script.withSource(targetLanguageName,
+                    getTranspiler().apply(script.getScript()));
         }
 
         return script;
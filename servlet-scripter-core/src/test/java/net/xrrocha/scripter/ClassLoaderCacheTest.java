@@ -0,0 +1,188 @@
+package net.xrrocha.scripter;
+
+import com.google.common.collect.ImmutableSet;
+import net.xrrocha.scripter.ClassLoaderCache.SharedClassLoader;
+import net.xrrocha.scripter.commons.classloader.ClassLoaderLeakDetector;
+import net.xrrocha.scripter.commons.classloader.ParentLastClassLoaderCreator;
+import net.xrrocha.scripter.commons.io.InputStreamFileCreator;
+import net.xrrocha.scripter.commons.io.InputStreamOpener;
+import net.xrrocha.scripter.commons.io.StringInputStreamOpener;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static net.xrrocha.scripter.commons.io.FileUtils.purge;
+import static org.junit.Assert.*;
+
+public class ClassLoaderCacheTest {
+
+    private final File directory = new File(System.getProperty("java.io.tmpdir"),
+            "class-loaders-" + System.currentTimeMillis());
+    private final ClassLoader parentClassLoader = Thread.currentThread().getContextClassLoader();
+
+    @Before
+    public void purgeDirectory() {
+        purge(directory);
+    }
+
+    @Test
+    public void sharesClassLoadersForIdenticalSets() {
+        ClassLoaderCache cache = new ClassLoaderCache(directory, null);
+
+        SharedClassLoader classLoader1 = cache.acquire(newCreator("greeting"), parentClassLoader);
+        SharedClassLoader classLoader2 = cache.acquire(newCreator("greeting"), parentClassLoader);
+        SharedClassLoader otherClassLoader = cache.acquire(newCreator("other"), parentClassLoader);
+
+        assertSame(classLoader1, classLoader2);
+        assertNotSame(classLoader1, otherClassLoader);
+        assertEquals(2, cache.size());
+        assertNotNull(classLoader1.getClassLoader().getResource("greeting.txt"));
+
+        File[] sharedDirectories =
+                new File(directory, ClassLoaderCache.SHARED_DIRECTORY_NAME).listFiles();
+        assertNotNull(sharedDirectories);
+        assertEquals(2, sharedDirectories.length);
+
+        cache.release(classLoader1);
+        assertEquals(2, cache.size());
+        cache.release(classLoader2);
+        assertEquals(1, cache.size());
+        // The last user's release deletes its directory
+        assertEquals(1, new File(directory, ClassLoaderCache.SHARED_DIRECTORY_NAME)
+                .listFiles().length);
+
+        // Released sets are recreated on demand
+        assertNotSame(classLoader1, cache.acquire(newCreator("greeting"), parentClassLoader));
+    }
+
+    @Test
+    public void doesNotShareRecreatedSets() {
+        ClassLoaderCache cache = new ClassLoaderCache(directory, null);
+
+        SharedClassLoader classLoader = cache.acquire(newCreator("greeting"), parentClassLoader);
+        ParentLastClassLoaderCreator recreatingCreator = new ParentLastClassLoaderCreator(
+                new StringInputStreamOpener(), // opener
+                null, // jarUrls
+                ImmutableSet.of(new InputStreamFileCreator("greeting.txt", "greeting",
+                        true)) // resourceUrls
+        );
+        assertEquals(newCreator("greeting").getContentHash(), recreatingCreator.getContentHash());
+
+        SharedClassLoader recreatedClassLoader1 =
+                cache.acquire(recreatingCreator, parentClassLoader);
+        SharedClassLoader recreatedClassLoader2 =
+                cache.acquire(recreatingCreator, parentClassLoader);
+        assertNotSame(classLoader, recreatedClassLoader1);
+        assertNotSame(recreatedClassLoader1, recreatedClassLoader2);
+        assertNotNull(recreatedClassLoader1.getClassLoader().getResource("greeting.txt"));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void createsClassLoadersOutsideLock() throws Exception {
+        ClassLoaderCache cache = new ClassLoaderCache(directory, null);
+
+        CountDownLatch downloading = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        InputStreamOpener slowOpener = location -> {
+            downloading.countDown();
+            try {
+                proceed.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return new ByteArrayInputStream(location.getBytes());
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<SharedClassLoader> slowClassLoader1 =
+                    executor.submit(() -> cache.acquire(newCreator(slowOpener, "slow"),
+                            parentClassLoader));
+            assertTrue(downloading.await(30, TimeUnit.SECONDS));
+            Future<SharedClassLoader> slowClassLoader2 =
+                    executor.submit(() -> cache.acquire(newCreator(slowOpener, "slow"),
+                            parentClassLoader));
+
+            // Other sets aren't held up by a creation in progress
+            SharedClassLoader otherClassLoader =
+                    cache.acquire(newCreator("other"), parentClassLoader);
+            assertNotNull(otherClassLoader.getClassLoader().getResource("other.txt"));
+            assertFalse(slowClassLoader1.isDone());
+
+            proceed.countDown();
+            assertSame(slowClassLoader1.get(30, TimeUnit.SECONDS),
+                    slowClassLoader2.get(30, TimeUnit.SECONDS));
+            assertEquals(2, cache.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void separatesClassLoadersByParent() throws Exception {
+        ClassLoaderCache cache = new ClassLoaderCache(directory, null);
+
+        try (URLClassLoader otherParentClassLoader =
+                     new URLClassLoader(new URL[0], parentClassLoader)) {
+            SharedClassLoader classLoader1 =
+                    cache.acquire(newCreator("greeting"), parentClassLoader);
+            SharedClassLoader classLoader2 =
+                    cache.acquire(newCreator("greeting"), otherParentClassLoader);
+
+            assertNotSame(classLoader1, classLoader2);
+            assertSame(otherParentClassLoader, classLoader2.getClassLoader().getParent());
+            assertNotNull(classLoader2.getClassLoader().getResource("greeting.txt"));
+            assertEquals(2, cache.size());
+
+            cache.release(classLoader2);
+            assertEquals(1, cache.size());
+            // The directory is still used by the other parent's class loader
+            assertNotNull(classLoader1.getClassLoader().getResource("greeting.txt"));
+            assertNotNull(classLoader1.getClassLoader().getResourceAsStream("greeting.txt"));
+        }
+    }
+
+    @Test
+    public void tearsDownReleasedClassLoaders() {
+        ClassLoaderCache cache =
+                new ClassLoaderCache(directory, null, new ClassLoaderLeakDetector(0L));
+
+        SharedClassLoader sharedClassLoader =
+                cache.acquire(newCreator("teardown"), parentClassLoader);
+        ClassLoader classLoader = sharedClassLoader.getClassLoader();
+
+        Thread.currentThread().setContextClassLoader(classLoader);
+        try {
+            cache.release(sharedClassLoader);
+            assertSame(parentClassLoader, Thread.currentThread().getContextClassLoader());
+        } finally {
+            Thread.currentThread().setContextClassLoader(parentClassLoader);
+        }
+
+        // Still referenced from this test, hence reported
+        assertEquals(1, cache.findLeaks().size());
+        assertNotNull(classLoader);
+    }
+
+    private ParentLastClassLoaderCreator newCreator(String name) {
+        return newCreator(new StringInputStreamOpener(), name);
+    }
+
+    private ParentLastClassLoaderCreator newCreator(InputStreamOpener opener, String name) {
+        return new ParentLastClassLoaderCreator(
+                opener, // opener
+                null, // jarUrls
+                ImmutableSet.of(new InputStreamFileCreator(name + ".txt", name)) // resourceUrls
+        );
+    }
+}
@@ -0,0 +1,153 @@
+package net.xrrocha.scripter;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class ScriptEngineFactoryIndexTest {
+
+    @Test
+    public void discoversFactoriesLazily() throws Exception {
+        File directory = Files.createTempDirectory("factories").toFile();
+        File servicesFile =
+                new File(directory, "META-INF/services/" + ScriptEngineFactory.class.getName());
+        servicesFile.getParentFile().mkdirs();
+        Files.write(servicesFile.toPath(), (FirstFactory.class.getName() + "\n" +
+                SecondFactory.class.getName() + "\n").getBytes(UTF_8));
+
+        FirstFactory.instances.set(0);
+        SecondFactory.instances.set(0);
+        ScriptEngineFactoryIndex index = new ScriptEngineFactoryIndex(
+                new URLClassLoader(new URL[]{directory.toURI().toURL()},
+                        getClass().getClassLoader()));
+
+        assertTrue(index.lookup("first").get() instanceof FirstFactory);
+        assertEquals(1, FirstFactory.instances.get());
+        assertEquals(0, SecondFactory.instances.get());
+
+        assertTrue(index.lookup("second-alias").get() instanceof SecondFactory);
+        assertSame(index.lookup("second").get(), index.lookup("second-alias").get());
+        assertEquals(1, FirstFactory.instances.get());
+        assertEquals(1, SecondFactory.instances.get());
+
+        assertFalse(index.lookup("nonexistent").isPresent());
+    }
+
+    @Test
+    public void findsInstalledLanguages() {
+        ScriptEngineFactoryIndex index =
+                new ScriptEngineFactoryIndex(Thread.currentThread().getContextClassLoader());
+        assertTrue(index.lookup("groovy").isPresent());
+        assertTrue(index.lookup("javascript").isPresent());
+    }
+
+    @Test
+    public void prewarmsLanguages() throws Exception {
+        ScriptEngineFactoryIndex index =
+                new ScriptEngineFactoryIndex(Thread.currentThread().getContextClassLoader());
+        index.prewarm(ImmutableList.of("groovy", "nonexistent"), Executors.newCachedThreadPool())
+                .get(60, TimeUnit.SECONDS);
+        assertTrue(index.lookup("groovy").isPresent());
+    }
+
+    public static class FirstFactory extends StubFactory {
+        static final AtomicInteger instances = new AtomicInteger();
+
+        public FirstFactory() {
+            super(Collections.singletonList("first"));
+            instances.incrementAndGet();
+        }
+    }
+
+    public static class SecondFactory extends StubFactory {
+        static final AtomicInteger instances = new AtomicInteger();
+
+        public SecondFactory() {
+            super(ImmutableList.of("second", "second-alias"));
+            instances.incrementAndGet();
+        }
+    }
+
+    abstract static class StubFactory implements ScriptEngineFactory {
+
+        private final List<String> names;
+
+        StubFactory(List<String> names) {
+            this.names = names;
+        }
+
+        @Override
+        public List<String> getNames() {
+            return names;
+        }
+
+        @Override
+        public String getEngineName() {
+            return names.get(0);
+        }
+
+        @Override
+        public String getEngineVersion() {
+            return "1.0";
+        }
+
+        @Override
+        public List<String> getExtensions() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<String> getMimeTypes() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String getLanguageName() {
+            return names.get(0);
+        }
+
+        @Override
+        public String getLanguageVersion() {
+            return "1.0";
+        }
+
+        @Override
+        public Object getParameter(String key) {
+            return null;
+        }
+
+        @Override
+        public String getMethodCallSyntax(String obj, String m, String... args) {
+            return null;
+        }
+
+        @Override
+        public String getOutputStatement(String toDisplay) {
+            return null;
+        }
+
+        @Override
+        public String getProgram(String... statements) {
+            return null;
+        }
+
+        @Override
+        public ScriptEngine getScriptEngine() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -369,6 +369,45 @@ public class ScriptTest {
         assertEquals("groovy", script.getLanguage());
     }
 
+    @Test
+    public void buildsScriptsWithDefaults() {
+        Script script = Script.builder()
+                .script("print('Hello world!')")
+                .build();
+        assertFalse(script.getId().isEmpty());
+        assertEquals("javascript", script.getLanguage());
+        assertEquals(ScriptUsage.INVOCABLE_SCRIPT, script.getUsage());
+        assertTrue(script.getServices().isEmpty());
+        assertTrue(script.getGlobalVariables().isEmpty());
+        assertTrue(script.getParameters().isEmpty());
+        assertFalse(script.getExecutionMode().isPresent());
+        assertFalse(script.isCoalesce());
+
+        // Transpiled copies keep all other attributes
+        Script copy = Script.builder()
+                .id("cached")
+                .language("typescript")
+                .script("1 + 1")
+                .executionMode(ExecutionMode.VIRTUAL_THREAD)
+                .coalesce(true)
+                .build()
+                .withSource("javascript", "2");
+        assertEquals("cached", copy.getId());
+        assertEquals("javascript", copy.getLanguage());
+        assertEquals("2", copy.getScript());
+        assertEquals(Optional.of(ExecutionMode.VIRTUAL_THREAD), copy.getExecutionMode());
+        assertTrue(copy.isCoalesce());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvocableFunctionWithoutEntryPoint() {
+        Script.builder()
+                .language("javascript")
+                .usage(ScriptUsage.INVOCABLE_FUNCTION)
+                .script("function main() {}")
+                .build();
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void rejectsEmptyLanguage() {
         new Script(
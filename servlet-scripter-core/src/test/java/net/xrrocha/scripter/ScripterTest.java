@@ -1,17 +1,37 @@
 package net.xrrocha.scripter;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import net.xrrocha.scripter.cache.ResultCache;
+import net.xrrocha.scripter.commons.cluster.ConsistentHashRing;
+import net.xrrocha.scripter.commons.concurrent.SingleFlight;
+import net.xrrocha.scripter.commons.concurrent.VirtualThreads;
+import net.xrrocha.scripter.commons.registry.replication.LoopbackReplicationTransport;
+import net.xrrocha.scripter.schedule.ScriptSchedule;
+import net.xrrocha.scripter.snapshot.ScriptCatalogSnapshot;
 import net.xrrocha.scripter.transformer.ScriptTransformer;
 import org.junit.Before;
 import org.junit.Test;
 
 import javax.script.Bindings;
+import javax.script.ScriptEngine;
 import javax.script.SimpleBindings;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static java.util.Collections.emptyMap;
 import static net.xrrocha.scripter.commons.YamlUtils.YAML;
@@ -131,6 +151,57 @@ public class ScripterTest {
         assertFalse(iterator.hasNext());
     }
 
+    @Test
+    public void invokesEntryPointFunction() {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        Script script = Script.builder()
+                .id("function")
+                .language("javascript")
+                .usage(ScriptUsage.INVOCABLE_FUNCTION)
+                .globalVariables(ImmutableMap.of("greeting", "Hello"))
+                .script("var evaluations = (this.evaluations || 0) + 1;\n" +
+                        "function greet(name, punctuation) {\n" +
+                        "  return greeting + ', ' + name + punctuation + ' ' + evaluations;\n" +
+                        "}")
+                .entryPoint("greet")
+                .parameters(ImmutableList.of("name", "punctuation"))
+                .build();
+        scripter.addScript(YAML.dump(script));
+
+        assertEquals("Hello, world! 1", scripter.executeScript("function",
+                ImmutableMap.of("name", "world", "punctuation", "!")));
+        // The script body is evaluated only once
+        assertEquals("Hello, there? 1", scripter.executeScript("function",
+                ImmutableMap.of("name", "there", "punctuation", "?")));
+    }
+
+    @Test
+    public void passesVariablesToParameterlessEntryPoint() {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        Script script = Script.builder()
+                .id("mapFunction")
+                .language("groovy")
+                .usage(ScriptUsage.INVOCABLE_FUNCTION)
+                .script("def sum(variables) { variables.a + variables.b }")
+                .entryPoint("sum")
+                .build();
+        scripter.addScript(YAML.dump(script));
+
+        assertEquals(5, scripter.executeScript("mapFunction", ImmutableMap.of("a", 2, "b", 3)));
+    }
+
     @Test
     public void registersAndProvidesServiceScript() {
 
@@ -179,6 +250,273 @@ public class ScripterTest {
         assertEquals("Scripter rocks!", result.toString());
     }
 
+    @Test
+    public void exposesServiceThroughInterface() {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        Script serviceScript = Script.builder()
+                .id("doubler")
+                .language("javascript")
+                .usage(ScriptUsage.REUSABLE_SERVICE)
+                .script("({apply: function(n) { return n * 2; }})")
+                .serviceInterface(Function.class.getName())
+                .build();
+        scripter.addScript(YAML.dump(serviceScript));
+
+        Object service =
+                ((PreparedService) scripter.lookupPreparedObject("doubler").get()).getService();
+        assertTrue(service instanceof Function);
+
+        Script dependentScript = new Script(
+                "quadrupler", // id,
+                "groovy", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                ImmutableSet.of("doubler"), // services
+                null, // variables
+                "doubler.apply(doubler.apply(number)).intValue()" // script
+        );
+        scripter.addScript(YAML.dump(dependentScript));
+
+        assertEquals(20, scripter.executeScript("quadrupler", ImmutableMap.of("number", 5)));
+    }
+
+    @Test
+    public void injectsBuiltInFanOutService() {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        Script script = new Script(
+                "fanOutHosts", // id,
+                "groovy", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                ImmutableSet.of(Scripter.FAN_OUT_SERVICE_NAME), // services
+                ImmutableMap.of("hosts", ImmutableList.of("alpha", "beta")), // variables
+                "fanOut.named('hosts', 2)\n" +
+                        "    .map(hosts, { host -> Thread.currentThread().name })\n" +
+                        "    .results" // script
+        );
+        scripter.addScript(YAML.dump(script));
+
+        Map<?, ?> results = (Map<?, ?>) scripter.executeScript("fanOutHosts", null);
+        assertEquals(ImmutableSet.of("alpha", "beta"), results.keySet());
+        results.values().forEach(threadName ->
+                assertTrue(threadName.toString().startsWith("fan-out-hosts-")));
+    }
+
+    @Test
+    public void servesCachedResults() {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        String scriptYaml = "id: lookup\n" +
+                "language: groovy\n" +
+                "cache:\n" +
+                "  ttlMillis: 60000\n" +
+                "  maxEntries: 10\n" +
+                "  keyVariables: [ key ]\n" +
+                "script: key + ':' + System.nanoTime()\n";
+        scripter.addScript(scriptYaml);
+
+        Object result = scripter.executeScript("lookup", ImmutableMap.of("key", "a"));
+        assertEquals(result, scripter.executeScript("lookup",
+                ImmutableMap.of("key", "a", "ignored", true)));
+        assertNotEquals(result, scripter.executeScript("lookup", ImmutableMap.of("key", "b")));
+
+        ResultCache resultCache =
+                ((PreparedScript) scripter.lookupPreparedObject("lookup").get())
+                        .getResultCache().get();
+        assertEquals(1L, resultCache.getStats().hitCount());
+        assertEquals(2L, resultCache.getStats().missCount());
+
+        // A new version starts afresh
+        scripter.addScript(scriptYaml.replace("60000", "30000"), true);
+        assertNotEquals(result, scripter.executeScript("lookup", ImmutableMap.of("key", "a")));
+    }
+
+    @Test
+    public void coalescesConcurrentIdenticalExecutions() throws Exception {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        scripter.addScript("id: dashboard\n" +
+                "language: groovy\n" +
+                "coalesce: true\n" +
+                "script: |\n" +
+                "  Thread.sleep(500)\n" +
+                "  panel + ':' + System.nanoTime()\n");
+        SingleFlight<Map<String, Object>, Object> singleFlight =
+                ((PreparedScript) scripter.lookupPreparedObject("dashboard").get())
+                        .getSingleFlight().get();
+
+        int callerCount = 6;
+        ExecutorService executor = Executors.newFixedThreadPool(callerCount);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < callerCount; i++) {
+                futures.add(executor.submit(() ->
+                        scripter.executeScript("dashboard", ImmutableMap.of("panel", "cpu"))));
+            }
+
+            Set<Object> results = new HashSet<>();
+            for (Future<Object> future : futures) {
+                results.add(future.get(30, TimeUnit.SECONDS));
+            }
+            // Callers arriving after the first evaluation completed start a new one
+            assertEquals(singleFlight.getExecutionCount(), results.size());
+            assertEquals(callerCount,
+                    singleFlight.getExecutionCount() + singleFlight.getCoalescedCount());
+            assertTrue(singleFlight.getCoalescedCount() > 0);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Scripts are never coalesced unless they say so
+        scripter.addScript("id: sideEffect\nlanguage: groovy\nscript: 'done'\n");
+        assertFalse(((PreparedScript) scripter.lookupPreparedObject("sideEffect").get())
+                .getSingleFlight().isPresent());
+    }
+
+    @Test
+    public void runsScriptsInRequestedExecutionMode() throws Exception {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        Script script = Script.builder()
+                .id("threadName")
+                .language("groovy")
+                .usage(ScriptUsage.INVOCABLE_SCRIPT)
+                .script("prefix + Thread.currentThread().name")
+                .executionMode(ExecutionMode.VIRTUAL_THREAD)
+                .build();
+        scripter.addScript(YAML.dump(script));
+
+        String threadName = (String) scripter
+                .executeScriptAsync("threadName", ImmutableMap.of("prefix", ">"))
+                .get(10, TimeUnit.SECONDS);
+        if (VirtualThreads.isSupported()) {
+            assertTrue(threadName.startsWith(">script-"));
+        } else {
+            // Falls back to running on the caller's thread
+            assertEquals(">" + Thread.currentThread().getName(), threadName);
+        }
+
+        // Synchronous executions don't hop threads
+        assertEquals(">" + Thread.currentThread().getName(),
+                scripter.executeScript("threadName", ImmutableMap.of("prefix", ">")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownServiceInterface() {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        Script serviceScript = Script.builder()
+                .id("unknown")
+                .language("javascript")
+                .usage(ScriptUsage.REUSABLE_SERVICE)
+                .script("({})")
+                .serviceInterface("no.such.Interface")
+                .build();
+        scripter.addScript(YAML.dump(serviceScript));
+    }
+
+    @Test
+    public void releasesEngineOfFailedPreparation() {
+
+        List<ScriptEngine> releasedEngines = new ArrayList<>();
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        ) {
+            @Override
+            void releaseResources(ScriptEngine scriptEngine,
+                                  Optional<ClassLoaderCache.SharedClassLoader> sharedClassLoader) {
+                releasedEngines.add(scriptEngine);
+                super.releaseResources(scriptEngine, sharedClassLoader);
+            }
+        };
+
+        Script serviceScript = Script.builder()
+                .id("unknown")
+                .language("javascript")
+                .usage(ScriptUsage.REUSABLE_SERVICE)
+                .script("({})")
+                .serviceInterface("no.such.Interface")
+                .build();
+        try {
+            scripter.addScript(YAML.dump(serviceScript));
+            fail("Unknown service interface accepted");
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, releasedEngines.size());
+        }
+    }
+
+    @Test
+    public void evaluatesSnippetsWithoutRegistering() {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        assertEquals(5, ((Number) scripter.evaluateSnippet("javascript", "a + b",
+                ImmutableMap.of("a", 2, "b", 3))).intValue());
+        assertEquals(9, ((Number) scripter.evaluateSnippet("javascript", "a + b",
+                ImmutableMap.of("a", 4, "b", 5))).intValue());
+        assertEquals("HELLO", scripter.evaluateSnippet("groovy", "'hello'.toUpperCase()", null));
+        assertEquals(2L, scripter.getSnippetCacheSize());
+
+        assertFalse(scripter.listScriptIds().iterator().hasNext());
+        File[] compiledScripts =
+                new File(getRegistryDirectory(), Scripter.COMPILED_SCRIPT_DIRECTORY_NAME)
+                        .listFiles();
+        assertNotNull(compiledScripts);
+        assertEquals(0, compiledScripts.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSnippetInUnknownLanguage() {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        scripter.evaluateSnippet("cobol", "DISPLAY 'HELLO'.", null);
+    }
+
     @Test
     public void replacesScriptWithSameId() {
 
@@ -227,6 +565,620 @@ public class ScripterTest {
         assertEquals("acme sucks!", scripter.executeScript(script1.getId(), null));
     }
 
+    @Test
+    public void rollsBackReplacedScript() {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        String scriptId = "script";
+        Script script1 = new Script(
+                scriptId, // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                null, // variables
+                "'version 1'" // script
+        );
+        String scriptYaml1 = YAML.dump(script1);
+        scripter.addScript(scriptYaml1);
+
+        Script script2 = new Script(
+                scriptId, // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                null, // variables
+                "'version 2'" // script
+        );
+        scripter.addScript(YAML.dump(script2), true);
+        assertEquals("version 2", scripter.executeScript(scriptId, null));
+
+        assertEquals(Optional.of(scriptYaml1), scripter.rollbackScript(scriptId));
+        assertEquals("version 1", scripter.executeScript(scriptId, null));
+        assertEquals(Optional.empty(), scripter.rollbackScript(scriptId));
+
+        Scripter restartedScripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+        assertEquals("version 1", restartedScripter.executeScript(scriptId, null));
+    }
+
+    @Test
+    public void disposesReplacedScriptAfterInFlightExecutions() {
+
+        Scripter scripter = Scripter.builder()
+                .registryDirectory(getRegistryDirectory())
+                .maxScriptVersions(1)
+                .build();
+
+        String scriptId = "script";
+        Script script1 = new Script(
+                scriptId, // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                null, // variables
+                "'version 1'" // script
+        );
+        scripter.addScript(YAML.dump(script1));
+
+        PreparedObject inFlightVersion = scripter.acquirePreparedObject(scriptId);
+
+        Script script2 = new Script(
+                scriptId, // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                null, // variables
+                "'version 2'" // script
+        );
+        scripter.addScript(YAML.dump(script2), true);
+
+        assertFalse(inFlightVersion.isDisposed());
+        assertEquals("version 1", ((PreparedScript) inFlightVersion).executeScript(null));
+        assertEquals("version 2", scripter.executeScript(scriptId, null));
+
+        inFlightVersion.release();
+        assertTrue(inFlightVersion.isDisposed());
+        assertFalse(inFlightVersion.acquire());
+        assertEquals("version 2", scripter.executeScript(scriptId, null));
+    }
+
+    @Test
+    public void disposesReplacedServiceAfterDependentExecutions() {
+
+        Scripter scripter = Scripter.builder()
+                .registryDirectory(getRegistryDirectory())
+                .maxScriptVersions(1)
+                .build();
+
+        Script service1 = new Script(
+                "greeter", // id,
+                "javascript", // language
+                ScriptUsage.REUSABLE_SERVICE, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                null, // variables
+                "({greet: function(name){return 'Hello, ' + name}})" // script
+        );
+        scripter.addScript(YAML.dump(service1));
+        PreparedObject serviceVersion1 = scripter.lookupPreparedObject("greeter").get();
+
+        Script script = new Script(
+                "greeting", // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                ImmutableSet.of("greeter"), // services
+                null, // variables
+                "greeter.greet(name)" // script
+        );
+        scripter.addScript(YAML.dump(script));
+
+        // An in-flight execution of the dependent script holds the service
+        List<PreparedObject> acquiredServices = new ArrayList<>();
+        scripter.collectServiceDependencies(script, acquiredServices);
+        assertEquals(ImmutableList.of(serviceVersion1), acquiredServices);
+
+        Script service2 = new Script(
+                "greeter", // id,
+                "javascript", // language
+                ScriptUsage.REUSABLE_SERVICE, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                null, // variables
+                "({greet: function(name){return 'Hi, ' + name}})" // script
+        );
+        scripter.addScript(YAML.dump(service2), true);
+
+        assertFalse(serviceVersion1.isDisposed());
+        assertEquals("Hi, world",
+                scripter.executeScript("greeting", ImmutableMap.of("name", "world")));
+
+        acquiredServices.forEach(PreparedObject::release);
+        assertTrue(serviceVersion1.isDisposed());
+    }
+
+    @Test
+    public void keepsFunctionServicesBoundThroughoutInvocations() throws Exception {
+
+        Scripter scripter = Scripter.builder()
+                .registryDirectory(getRegistryDirectory())
+                .maxScriptVersions(1)
+                .build();
+
+        Function<Integer, Script> greeterVersion = version -> new Script(
+                "greeter", // id,
+                "javascript", // language
+                ScriptUsage.REUSABLE_SERVICE, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                null, // variables
+                "({greet: function(name){return 'Hello #" + version + ", ' + name}})" // script
+        );
+        scripter.addScript(YAML.dump(greeterVersion.apply(0)));
+
+        Script script = Script.builder()
+                .id("greeting")
+                .language("javascript")
+                .usage(ScriptUsage.INVOCABLE_FUNCTION)
+                .services(ImmutableSet.of("greeter"))
+                .script("function greet(name) {\n" +
+                        "  var boundGreeter = greeter;\n" +
+                        "  for (var i = 0; i < 5000; i++) {\n" +
+                        "    if (greeter !== boundGreeter) return 'rebound';\n" +
+                        "  }\n" +
+                        "  return boundGreeter.greet(name);\n" +
+                        "}")
+                .entryPoint("greet")
+                .parameters(ImmutableList.of("name"))
+                .build();
+        scripter.addScript(YAML.dump(script));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit(() ->
+                        scripter.executeScript("greeting", ImmutableMap.of("name", "world"))));
+                if (i % 10 == 0) {
+                    scripter.addScript(YAML.dump(greeterVersion.apply(i)), true);
+                }
+            }
+            for (Future<Object> result : results) {
+                assertTrue(result.get().toString().startsWith("Hello #"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Newer service versions are still picked up
+        scripter.addScript(YAML.dump(greeterVersion.apply(1000)), true);
+        assertEquals("Hello #1000, world",
+                scripter.executeScript("greeting", ImmutableMap.of("name", "world")));
+    }
+
+    @Test
+    public void reloadsShardedScripts() {
+
+        Scripter scripter = Scripter.builder()
+                .registryDirectory(getRegistryDirectory())
+                .maxScriptVersions(1)
+                .scriptShards(4)
+                .build();
+
+        for (int i = 0; i < 8; i++) {
+            Script script = new Script(
+                    "script" + i, // id,
+                    "javascript", // language
+                    ScriptUsage.INVOCABLE_SCRIPT, // usage
+                    null, // description
+                    null, // classLoaderCreator
+                    null, // services
+                    null, // variables
+                    "'script #" + i + "'" // script
+            );
+            scripter.addScript(YAML.dump(script));
+        }
+
+        Scripter restartedScripter = Scripter.builder()
+                .registryDirectory(getRegistryDirectory())
+                .maxScriptVersions(1)
+                .scriptShards(4)
+                .build();
+        assertEquals(8, Iterables.size(restartedScripter.listScriptIds()));
+        assertEquals("script #5", restartedScripter.executeScript("script5", null));
+    }
+
+    @Test
+    public void reloadsScriptsFromCatalogSnapshot() {
+
+        Scripter scripter = Scripter.builder()
+                .registryDirectory(getRegistryDirectory())
+                .maxScriptVersions(1)
+                .useCatalogSnapshot(true)
+                .build();
+
+        Script script = new Script(
+                "snapshotted", // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                ImmutableMap.of("greeting", "hello"), // variables
+                "greeting + ' world'" // script
+        );
+        scripter.addScript(YAML.dump(script));
+
+        assertTrue(new File(getRegistryDirectory(), ScriptCatalogSnapshot.DEFAULT_FILENAME)
+                .isFile());
+
+        Scripter restartedScripter = Scripter.builder()
+                .registryDirectory(getRegistryDirectory())
+                .maxScriptVersions(1)
+                .useCatalogSnapshot(true)
+                .build();
+        assertEquals("hello world", restartedScripter.executeScript("snapshotted", null));
+
+        restartedScripter.removeScript("snapshotted");
+        assertFalse(restartedScripter.listScriptIds().iterator().hasNext());
+    }
+
+    @Test
+    public void reusesCompiledScriptsAcrossRestarts() {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        Script script = new Script(
+                "compiled", // id,
+                "groovy", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                ImmutableMap.of("greeting", "hello"), // variables
+                "[1, 2, 3].collect { it * 2 }.join(',') + ' ' + greeting" // script
+        );
+        scripter.addScript(YAML.dump(script));
+        assertEquals("2,4,6 hello", scripter.executeScript("compiled", null));
+        assertEquals(1L, scripter.getCompiledScriptCache().getCompilationCount());
+
+        Scripter restartedScripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+        assertEquals("2,4,6 hello", restartedScripter.executeScript("compiled", null));
+        assertEquals(0L, restartedScripter.getCompiledScriptCache().getCompilationCount());
+        assertEquals(1L, restartedScripter.getCompiledScriptCache().getLoadCount());
+    }
+
+    @Test
+    public void runsScheduledScriptsAcrossRestarts() throws Exception {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        File marker = new File(getRegistryDirectory(), "heartbeat.txt");
+        Script heartbeat = Script.builder()
+                .id("heartbeat")
+                .language("groovy")
+                .usage(ScriptUsage.INVOCABLE_SCRIPT)
+                .globalVariables(ImmutableMap.of("markerPath", marker.getAbsolutePath()))
+                .script("new File(markerPath).text = 'beat'")
+                .schedule(ScriptSchedule.fixedRate(50L))
+                .build();
+        scripter.addScript(YAML.dump(heartbeat));
+
+        for (int i = 0; i < 200 && !marker.isFile(); i++) {
+            Thread.sleep(50L);
+        }
+        assertTrue(marker.isFile());
+
+        scripter.removeScript("heartbeat");
+        assertFalse(scripter.getNextFireTime("heartbeat").isPresent());
+
+        Script hourly = Script.builder()
+                .id("hourly")
+                .language("groovy")
+                .usage(ScriptUsage.INVOCABLE_SCRIPT)
+                .script("'tick'")
+                .schedule(ScriptSchedule.cron("0 * * * *"))
+                .build();
+        scripter.addScript(YAML.dump(hourly));
+        Optional<Long> nextFireTime = scripter.getNextFireTime("hourly");
+        assertTrue(nextFireTime.isPresent());
+        scripter.close();
+
+        Scripter restartedScripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+        assertEquals(nextFireTime, restartedScripter.getNextFireTime("hourly"));
+        assertFalse(restartedScripter.getNextFireTime("heartbeat").isPresent());
+    }
+
+    @Test
+    public void runsReplicatedScheduleOnSingleNode() throws Exception {
+
+        LoopbackReplicationTransport<String, String> transport =
+                new LoopbackReplicationTransport<>();
+        ConsistentHashRing clusterRing =
+                new ConsistentHashRing(ImmutableList.of("node1", "node2"), 2);
+        Function<String, Scripter> newNode = nodeId -> Scripter.builder()
+                .registryDirectory(new File(getRegistryDirectory(), nodeId))
+                .maxScriptVersions(1)
+                .nodeId(nodeId)
+                .replicationTransport(transport)
+                .clusterRing(clusterRing)
+                .build();
+        Scripter node1 = newNode.apply("node1");
+        Scripter node2 = newNode.apply("node2");
+
+        File marker = new File(getRegistryDirectory(), "heartbeat.txt");
+        Script heartbeat = Script.builder()
+                .id("heartbeat")
+                .language("groovy")
+                .usage(ScriptUsage.INVOCABLE_SCRIPT)
+                .globalVariables(ImmutableMap.of("markerPath", marker.getAbsolutePath()))
+                .script("new File(markerPath).text = 'beat'")
+                .schedule(ScriptSchedule.fixedRate(50L))
+                .build();
+        node1.addScript(YAML.dump(heartbeat));
+        assertTrue(node2.getReplicatedRegistry().get().awaitNotifications(5, TimeUnit.SECONDS));
+
+        // Both nodes hold the script but only its first owner runs it
+        assertTrue(node1.getScript("heartbeat").isPresent());
+        assertTrue(node2.getScript("heartbeat").isPresent());
+        Scripter runner = clusterRing.owners("heartbeat").get(0).equals("node1") ? node1 : node2;
+        Scripter standby = runner == node1 ? node2 : node1;
+        assertTrue(runner.getNextFireTime("heartbeat").isPresent());
+        assertFalse(standby.getNextFireTime("heartbeat").isPresent());
+
+        for (int i = 0; i < 200 && !marker.isFile(); i++) {
+            Thread.sleep(50L);
+        }
+        assertTrue(marker.isFile());
+
+        runner.removeScript("heartbeat");
+        assertTrue(standby.getReplicatedRegistry().get().awaitNotifications(5, TimeUnit.SECONDS));
+        assertFalse(runner.getNextFireTime("heartbeat").isPresent());
+        assertFalse(standby.getNextFireTime("heartbeat").isPresent());
+    }
+
+    @Test
+    public void disregardsReplicationsSupersededByLocalWrites() throws Exception {
+
+        LoopbackReplicationTransport<String, String> transport =
+                new LoopbackReplicationTransport<>();
+        Function<String, Scripter> newNode = nodeId -> Scripter.builder()
+                .registryDirectory(new File(getRegistryDirectory(), nodeId))
+                .maxScriptVersions(1)
+                .nodeId(nodeId)
+                .replicationTransport(transport)
+                .build();
+        Scripter node1 = newNode.apply("node1");
+        Scripter node2 = newNode.apply("node2");
+        Function<String, String> newScriptYaml = body -> YAML.dump(new Script(
+                "contended", // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                null, // variables
+                body // script
+        ));
+
+        // Hold node2's notifications back behind an unrelated script's
+        CountDownLatch notificationsHeld = new CountDownLatch(1);
+        CountDownLatch notificationsReleased = new CountDownLatch(1);
+        node2.getReplicatedRegistry().get().addReplicationListener((filename, yaml) -> {
+            if (filename.equals("blocker.yaml")) {
+                notificationsHeld.countDown();
+                try {
+                    notificationsReleased.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        node1.addScript(YAML.dump(new Script(
+                "blocker", // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                null, // variables
+                "'blocker'" // script
+        )));
+        assertTrue(notificationsHeld.await(5, TimeUnit.SECONDS));
+
+        // The remote version is applied to node2's catalog but its notification stays queued
+        node1.addScript(newScriptYaml.apply("'remote'"));
+        node2.addScript(newScriptYaml.apply("'local'"), true);
+        notificationsReleased.countDown();
+        assertTrue(node2.getReplicatedRegistry().get().awaitNotifications(5, TimeUnit.SECONDS));
+
+        assertEquals("local", node2.executeScript("contended", null));
+        assertTrue(node1.getReplicatedRegistry().get().awaitNotifications(5, TimeUnit.SECONDS));
+        assertEquals("local", node1.executeScript("contended", null));
+    }
+
+    @Test
+    public void stopsOwnedThreadsOnClose() {
+
+        LoopbackReplicationTransport<String, String> transport =
+                new LoopbackReplicationTransport<>();
+        Scripter node1 = Scripter.builder()
+                .registryDirectory(new File(getRegistryDirectory(), "node1"))
+                .maxScriptVersions(1)
+                .scriptShards(4)
+                .nodeId("node1")
+                .replicationTransport(transport)
+                .clusterRing(new ConsistentHashRing(ImmutableList.of("node1"), 2))
+                .build();
+        Scripter node2 = Scripter.builder()
+                .registryDirectory(new File(getRegistryDirectory(), "node2"))
+                .maxScriptVersions(1)
+                .nodeId("node2")
+                .replicationTransport(transport)
+                .build();
+
+        Script hourly = Script.builder()
+                .id("hourly")
+                .language("groovy")
+                .usage(ScriptUsage.INVOCABLE_SCRIPT)
+                .script("'tick'")
+                .schedule(ScriptSchedule.cron("0 * * * *"))
+                .build();
+        node1.addScript(YAML.dump(hourly));
+        assertTrue(node1.getNextFireTime("hourly").isPresent());
+
+        node1.close();
+        assertFalse(node1.getNextFireTime("hourly").isPresent());
+
+        // Changes replicated once closed are no longer applied
+        Script script = new Script(
+                "replicated", // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                null, // variables
+                "'replicated'" // script
+        );
+        node2.addScript(YAML.dump(script));
+        assertEquals(0L, node1.getReplicatedRegistry().get().getAppliedEventCount());
+        assertFalse(node1.getScript("replicated").isPresent());
+        node2.close();
+    }
+
+    @Test
+    public void replicatesScriptsAcrossNodes() {
+
+        LoopbackReplicationTransport<String, String> transport =
+                new LoopbackReplicationTransport<>();
+        Scripter node1 = Scripter.builder()
+                .registryDirectory(new File(getRegistryDirectory(), "node1"))
+                .maxScriptVersions(1)
+                .nodeId("node1")
+                .replicationTransport(transport)
+                .build();
+        Scripter node2 = Scripter.builder()
+                .registryDirectory(new File(getRegistryDirectory(), "node2"))
+                .maxScriptVersions(1)
+                .nodeId("node2")
+                .replicationTransport(transport)
+                .build();
+
+        Script script = new Script(
+                "replicated", // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                null, // variables
+                "'replicated'" // script
+        );
+        node1.addScript(YAML.dump(script));
+        assertTrue(node2.getReplicatedRegistry().get().awaitNotifications(5, TimeUnit.SECONDS));
+
+        assertEquals("replicated", node2.executeScript("replicated", null));
+        assertEquals(1L, node2.getReplicatedRegistry().get().getAppliedEventCount());
+
+        node2.removeScript("replicated");
+        assertTrue(node1.getReplicatedRegistry().get().awaitNotifications(5, TimeUnit.SECONDS));
+        assertFalse(node1.listScriptIds().iterator().hasNext());
+    }
+
+    @Test
+    public void preparesOnlyPlacedScripts() {
+
+        LoopbackReplicationTransport<String, String> transport =
+                new LoopbackReplicationTransport<>();
+
+        Scripter node1 = Scripter.builder()
+                .registryDirectory(new File(getRegistryDirectory(), "node1"))
+                .maxScriptVersions(1)
+                .nodeId("node1")
+                .replicationTransport(transport)
+                .scriptPlacement(scriptId -> scriptId.startsWith("local"))
+                .build();
+        Scripter node2 = Scripter.builder()
+                .registryDirectory(new File(getRegistryDirectory(), "node2"))
+                .maxScriptVersions(1)
+                .nodeId("node2")
+                .replicationTransport(transport)
+                .scriptPlacement(scriptId -> !scriptId.startsWith("local"))
+                .build();
+
+        Script remoteScript = new Script(
+                "remote", // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                null, // variables
+                "'remote'" // script
+        );
+        node1.addScript(YAML.dump(remoteScript));
+        assertTrue(node2.getReplicatedRegistry().get().awaitNotifications(5, TimeUnit.SECONDS));
+
+        assertFalse(node1.isLocal("remote"));
+        assertFalse(node1.getScript("remote").isPresent());
+        assertTrue(Iterables.contains(node1.listScriptIds(), "remote"));
+        assertTrue(node2.getScript("remote").isPresent());
+        assertEquals("remote", node2.executeScript("remote", null));
+
+        // Scripts placed elsewhere are prepared on demand
+        assertEquals("remote", node1.executeScript("remote", null));
+        assertTrue(node1.getScript("remote").isPresent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRollbackOfNonExistentScript() {
+
+        Scripter scripter = new Scripter(
+                getRegistryDirectory(),
+                emptyMap(),
+                emptyMap()
+        );
+
+        scripter.rollbackScript("nonExistent");
+    }
+
     @Test
     public void removesScript() {
 
@@ -419,8 +1371,9 @@ public class ScripterTest {
         scripter.addScript(YAML.dump(sourceScript));
         Script registeredScript = scripter.getScript(sourceScript.getId()).get();
 
+        List<PreparedObject> acquiredServices = new ArrayList<>();
         Bindings bindings1 = new SimpleBindings();
-        scripter.populateBindings(registeredScript, null, bindings1);
+        scripter.populateBindings(registeredScript, null, bindings1, acquiredServices);
         assertTrue(bindings1.containsKey("normalizer"));
         assertNotNull(bindings1.get("normalizer"));
         assertTrue(bindings1.containsKey("name"));
@@ -429,12 +1382,17 @@ public class ScripterTest {
 
         Bindings bindings2 = new SimpleBindings();
         Map<String, Object> invocationVariables = ImmutableMap.of("name", "xrrocha.net");
-        scripter.populateBindings(registeredScript, invocationVariables, bindings2);
+        scripter.populateBindings(registeredScript, invocationVariables, bindings2,
+                acquiredServices);
         assertTrue(bindings2.containsKey("normalizer"));
         assertNotNull(bindings2.get("normalizer"));
         assertTrue(bindings2.containsKey("name"));
         assertNotNull(bindings2.get("name"));
         assertEquals("xrrocha.net", bindings2.get("name").toString());
+
+        // Services stay acquired until released by the caller
+        assertEquals(2, acquiredServices.size());
+        acquiredServices.forEach(PreparedObject::release);
     }
 
     @Test
@@ -0,0 +1,117 @@
+package net.xrrocha.scripter.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.*;
+
+public class ResultCacheTest {
+
+    @Test
+    public void keysResultsByGivenVariables() {
+        ResultCache cache =
+                new ResultCache(new CachePolicy(60000L, 100L, ImmutableList.of("sku")));
+        AtomicInteger evaluations = new AtomicInteger();
+
+        assertEquals("sku1:1", cache.get(ImmutableMap.of("sku", "sku1", "traceId", "a"),
+                () -> "sku1:" + evaluations.incrementAndGet()));
+        // Non-key variables don't partake of the key
+        assertEquals("sku1:1", cache.get(ImmutableMap.of("sku", "sku1", "traceId", "b"),
+                () -> "sku1:" + evaluations.incrementAndGet()));
+        assertEquals("sku2:2", cache.get(ImmutableMap.of("sku", "sku2"),
+                () -> "sku2:" + evaluations.incrementAndGet()));
+
+        assertEquals(2, evaluations.get());
+        assertEquals(1L, cache.getStats().hitCount());
+    }
+
+    @Test
+    public void keysResultsByAllVariablesByDefault() {
+        ResultCache cache = new ResultCache(new CachePolicy(60000L, 100L, null));
+        AtomicInteger evaluations = new AtomicInteger();
+
+        cache.get(ImmutableMap.of("a", 1, "b", 2), evaluations::incrementAndGet);
+        cache.get(ImmutableMap.of("b", 2, "a", 1), evaluations::incrementAndGet);
+        cache.get(ImmutableMap.of("a", 1), evaluations::incrementAndGet);
+
+        assertEquals(2, evaluations.get());
+    }
+
+    @Test
+    public void expiresResultsAndCachesNulls() throws Exception {
+        ResultCache cache = new ResultCache(new CachePolicy(50L, 100L, emptyList()));
+        AtomicInteger evaluations = new AtomicInteger();
+
+        assertNull(cache.get(ImmutableMap.of(), () -> {
+            evaluations.incrementAndGet();
+            return null;
+        }));
+        assertNull(cache.get(ImmutableMap.of(), () -> evaluations.incrementAndGet()));
+        assertEquals(1, evaluations.get());
+
+        Thread.sleep(100L);
+        assertEquals(2, cache.get(ImmutableMap.of(), evaluations::incrementAndGet));
+    }
+
+    @Test
+    public void doesNotCacheFailures() {
+        ResultCache cache = new ResultCache(new CachePolicy(60000L, 100L, null));
+        try {
+            cache.get(ImmutableMap.of(), () -> {
+                throw new IllegalStateException("Backend down");
+            });
+            fail("Failure not propagated");
+        } catch (IllegalStateException e) {
+            assertEquals("Backend down", e.getMessage());
+        }
+
+        assertEquals("up", cache.get(ImmutableMap.of(), () -> "up"));
+    }
+
+    @Test
+    public void coalescesConcurrentIdenticalCalls() throws Exception {
+        int callerCount = 8;
+        ResultCache cache = new ResultCache(new CachePolicy(60000L, 100L, null));
+        AtomicInteger evaluations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(callerCount);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < callerCount; i++) {
+                futures.add(executor.submit(() -> cache.get(ImmutableMap.of("id", 42), () -> {
+                    evaluations.incrementAndGet();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return "shared";
+                })));
+            }
+
+            // Let all callers reach the cache before the evaluation completes
+            Thread.sleep(200L);
+            release.countDown();
+
+            for (Future<Object> future : futures) {
+                assertEquals("shared", future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, evaluations.get());
+    }
+}
@@ -0,0 +1,118 @@
+package net.xrrocha.scripter.compiler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.SimpleBindings;
+import java.io.File;
+import java.util.Collections;
+import java.util.Optional;
+
+import static java.util.Collections.singletonMap;
+import static net.xrrocha.scripter.commons.io.FileUtils.purge;
+import static org.junit.Assert.*;
+
+public class CompiledScriptCacheTest {
+
+    private final File directory = new File(System.getProperty("java.io.tmpdir"),
+            "compiled-" + System.currentTimeMillis());
+    private final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    private final ScriptEngineManager scriptEngineManager = new ScriptEngineManager();
+
+    @Before
+    public void purgeDirectory() {
+        purge(directory);
+    }
+
+    @Test
+    public void compilesOnlyChangedScripts() throws Exception {
+        ScriptEngine scriptEngine = scriptEngineManager.getEngineByName("groovy");
+        String source = "'Hello, ' + name";
+
+        CompiledScriptCache cache = newCache();
+        CompiledScript compiledScript =
+                cache.compile("groovy", source, "", scriptEngine, classLoader).get();
+        assertEquals("Hello, world",
+                compiledScript.eval(new SimpleBindings(singletonMap("name", "world"))));
+        assertEquals(1L, cache.getCompilationCount());
+
+        // Restarted: reloaded from persisted bytecode
+        CompiledScriptCache restartedCache = newCache();
+        CompiledScript reloadedScript =
+                restartedCache.compile("groovy", source, "", scriptEngine, classLoader).get();
+        assertEquals("Hello, there",
+                reloadedScript.eval(new SimpleBindings(singletonMap("name", "there"))));
+        assertEquals(0L, restartedCache.getCompilationCount());
+        assertEquals(1L, restartedCache.getLoadCount());
+
+        // Changed: recompiled
+        restartedCache.compile("groovy", "'Bye, ' + name", "", scriptEngine, classLoader);
+        assertEquals(1L, restartedCache.getCompilationCount());
+    }
+
+    @Test
+    public void recompilesIncompleteEntries() throws Exception {
+        ScriptEngine scriptEngine = scriptEngineManager.getEngineByName("groovy");
+        String source = "6 * 7";
+
+        newCache().compile("groovy", source, "", scriptEngine, classLoader);
+        File entryDirectory = new File(directory,
+                CompiledScriptCache.cacheKey("groovy", source, "", scriptEngine));
+        assertTrue(new File(entryDirectory, CompiledScriptCache.MAIN_CLASS_FILENAME).delete());
+
+        CompiledScriptCache cache = newCache();
+        assertEquals(42, cache.compile("groovy", source, "", scriptEngine, classLoader).get()
+                .eval(new SimpleBindings()));
+        assertEquals(1L, cache.getCompilationCount());
+    }
+
+    @Test
+    public void ignoresUnsupportedEngines() {
+        ScriptEngine scriptEngine = scriptEngineManager.getEngineByName("javascript");
+
+        Optional<CompiledScript> compiledScript =
+                newCache().compile("javascript", "1 + 1", "", scriptEngine, classLoader);
+        assertFalse(compiledScript.isPresent());
+    }
+
+    @Test
+    public void keysOnEngineClassPathAndSource() {
+        ScriptEngine groovyEngine = scriptEngineManager.getEngineByName("groovy");
+        ScriptEngine javascriptEngine = scriptEngineManager.getEngineByName("javascript");
+
+        String key = CompiledScriptCache.cacheKey("groovy", "1 + 1", "", groovyEngine);
+        assertEquals(key, CompiledScriptCache.cacheKey("groovy", "1 + 1", "", groovyEngine));
+        assertNotEquals(key, CompiledScriptCache.cacheKey("groovy", "1 + 2", "", groovyEngine));
+        assertNotEquals(key,
+                CompiledScriptCache.cacheKey("groovy", "1 + 1", "", javascriptEngine));
+        assertNotEquals(key,
+                CompiledScriptCache.cacheKey("groovy", "1 + 1", "0123abcd", groovyEngine));
+    }
+
+    @Test
+    public void prunesEntriesUnusedSinceStartup() throws Exception {
+        ScriptEngine scriptEngine = scriptEngineManager.getEngineByName("groovy");
+
+        CompiledScriptCache cache = newCache();
+        cache.compile("groovy", "6 * 7", "", scriptEngine, classLoader);
+        cache.compile("groovy", "6 * 9", "", scriptEngine, classLoader);
+        assertEquals(0, cache.prune());
+
+        // Restarted with only one of the scripts still registered
+        CompiledScriptCache restartedCache = newCache();
+        restartedCache.compile("groovy", "6 * 7", "", scriptEngine, classLoader);
+        assertEquals(1, restartedCache.prune());
+        assertTrue(new File(directory,
+                CompiledScriptCache.cacheKey("groovy", "6 * 7", "", scriptEngine)).isDirectory());
+        assertFalse(new File(directory,
+                CompiledScriptCache.cacheKey("groovy", "6 * 9", "", scriptEngine)).exists());
+    }
+
+    private CompiledScriptCache newCache() {
+        return new CompiledScriptCache(directory,
+                Collections.singletonList(new GroovyScriptCompiler()));
+    }
+}
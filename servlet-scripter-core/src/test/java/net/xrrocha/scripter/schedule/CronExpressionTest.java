@@ -0,0 +1,63 @@
+package net.xrrocha.scripter.schedule;
+
+import org.junit.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.Assert.*;
+
+public class CronExpressionTest {
+
+    private static final ZonedDateTime NOW =
+            ZonedDateTime.of(2020, 1, 15, 10, 30, 45, 0, ZoneOffset.UTC); // Wednesday
+
+    @Test
+    public void computesNextMinute() {
+        assertEquals(NOW.withMinute(31).withSecond(0),
+                new CronExpression("* * * * *").next(NOW));
+    }
+
+    @Test
+    public void honorsStepsAndRanges() {
+        assertEquals(NOW.withMinute(45).withSecond(0),
+                new CronExpression("*/15 * * * *").next(NOW));
+        assertEquals(NOW.plusDays(1).withHour(9).withMinute(0).withSecond(0),
+                new CronExpression("0 9-17/4 * * *").next(NOW.withHour(17)));
+    }
+
+    @Test
+    public void rollsOverMonthsAndYears() {
+        assertEquals(ZonedDateTime.of(2021, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC),
+                new CronExpression("0 0 1 1 *").next(NOW));
+        assertEquals(ZonedDateTime.of(2020, 2, 29, 12, 0, 0, 0, ZoneOffset.UTC),
+                new CronExpression("0 12 29 2 *").next(NOW));
+    }
+
+    @Test
+    public void matchesEitherRestrictedDay() {
+        // The 20th or any Sunday, whichever comes first
+        assertEquals(ZonedDateTime.of(2020, 1, 19, 0, 0, 0, 0, ZoneOffset.UTC),
+                new CronExpression("0 0 20 * 0").next(NOW));
+        // Sunday may also be written as 7
+        assertEquals(ZonedDateTime.of(2020, 1, 19, 8, 0, 0, 0, ZoneOffset.UTC),
+                new CronExpression("0 8 * * 7").next(NOW));
+    }
+
+    @Test
+    public void matchesBothDaysWhenOneIsStarred() {
+        // An odd day of the month that's also a Monday
+        assertEquals(ZonedDateTime.of(2020, 1, 27, 0, 0, 0, 0, ZoneOffset.UTC),
+                new CronExpression("0 0 */2 * 1").next(NOW));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOutOfRangeValues() {
+        new CronExpression("60 * * * *");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsImpossibleDates() {
+        new CronExpression("0 0 30 2 *").next(NOW);
+    }
+}
@@ -0,0 +1,163 @@
+package net.xrrocha.scripter.schedule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.xrrocha.scripter.commons.io.FileUtils.purge;
+import static org.junit.Assert.*;
+
+public class ScriptSchedulerTest {
+
+    private File directory;
+    private File stateFile;
+
+    @Before
+    public void createStateDirectory() throws Exception {
+        directory = Files.createTempDirectory("scheduler-").toFile();
+        stateFile = new File(directory, "schedule.properties");
+    }
+
+    @After
+    public void deleteStateDirectory() {
+        purge(directory);
+    }
+
+    @Test
+    public void runsAtFixedRate() throws Exception {
+        CountDownLatch runs = new CountDownLatch(3);
+        List<String> runThreads = new CopyOnWriteArrayList<>();
+        try (ScriptScheduler scheduler = new ScriptScheduler(stateFile, scriptId -> {
+            runThreads.add(Thread.currentThread().getName());
+            runs.countDown();
+        })) {
+            scheduler.schedule("ticker", ScriptSchedule.fixedRate(20L));
+            assertTrue(runs.await(10, TimeUnit.SECONDS));
+
+            scheduler.unschedule("ticker");
+            assertFalse(scheduler.getNextFireTime("ticker").isPresent());
+        }
+
+        assertTrue(runThreads.stream().allMatch(name -> name.startsWith("script-runner-")));
+    }
+
+    @Test
+    public void slowRunsDontDelayOtherScripts() throws Exception {
+        CountDownLatch slowRelease = new CountDownLatch(1);
+        CountDownLatch fastRuns = new CountDownLatch(3);
+        try (ScriptScheduler scheduler = new ScriptScheduler(stateFile, 1, 2, scriptId -> {
+            if (scriptId.equals("slow")) {
+                try {
+                    slowRelease.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            } else {
+                fastRuns.countDown();
+            }
+        }, Clock.systemUTC())) {
+            scheduler.schedule("slow", ScriptSchedule.fixedRate(5L));
+            scheduler.schedule("fast", ScriptSchedule.fixedRate(5L));
+
+            // The single trigger thread keeps firing while the slow script holds its run thread
+            assertTrue(fastRuns.await(10, TimeUnit.SECONDS));
+            slowRelease.countDown();
+        }
+    }
+
+    @Test
+    public void neverOverlapsRuns() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch runs = new CountDownLatch(5);
+        try (ScriptScheduler scheduler = new ScriptScheduler(stateFile, 4, scriptId -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(30L);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+                runs.countDown();
+            }
+        }, Clock.systemUTC())) {
+            scheduler.schedule("slow", ScriptSchedule.fixedRate(5L));
+            // Replacing the schedule mid-run doesn't overlap runs either
+            scheduler.schedule("slow", new ScriptSchedule(null, 1L, 0L, null, null));
+            assertTrue(runs.await(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void persistsNextFireTimes() {
+        ScriptSchedule hourly = ScriptSchedule.cron("0 * * * *");
+        long nextFireTime;
+        try (ScriptScheduler scheduler = new ScriptScheduler(stateFile, scriptId -> {
+        })) {
+            scheduler.schedule("hourly", hourly);
+            nextFireTime = scheduler.getNextFireTime("hourly").get();
+            assertEquals(hourly.nextFireTime(System.currentTimeMillis()), nextFireTime);
+        }
+        assertTrue(stateFile.isFile());
+
+        // A clock at the next fire time would compute the following one: the persisted one wins
+        Clock laterClock = Clock.offset(Clock.systemUTC(), Duration.ofMinutes(1));
+        try (ScriptScheduler scheduler = new ScriptScheduler(stateFile, 1, scriptId -> {
+        }, laterClock)) {
+            scheduler.schedule("hourly", hourly);
+            assertEquals(Long.valueOf(nextFireTime), scheduler.getNextFireTime("hourly").get());
+
+            // Persisted fire times of a different trigger are disregarded
+            ScriptSchedule daily = ScriptSchedule.cron("0 0 * * *");
+            scheduler.schedule("hourly", daily);
+            assertEquals(Long.valueOf(daily.nextFireTime(laterClock.millis())),
+                    scheduler.getNextFireTime("hourly").get());
+        }
+    }
+
+    @Test
+    public void appliesMisfirePolicies() throws Exception {
+        ScriptSchedule fireOnce = ScriptSchedule.cron("0 0 1 1 *");
+        ScriptSchedule skip = new ScriptSchedule("0 0 1 1 *", 0L, 0L, MisfirePolicy.SKIP, null);
+        try (ScriptScheduler scheduler = new ScriptScheduler(stateFile, scriptId -> {
+        })) {
+            scheduler.schedule("fireOnce", fireOnce);
+            scheduler.schedule("skip", skip);
+        }
+
+        // Restart a year and a day later: both missed their fire time while down
+        Clock laterClock = Clock.offset(Clock.systemUTC(), Duration.ofDays(367));
+        List<String> runScriptIds = new CopyOnWriteArrayList<>();
+        CountDownLatch runs = new CountDownLatch(1);
+        try (ScriptScheduler scheduler = new ScriptScheduler(stateFile, 1, scriptId -> {
+            runScriptIds.add(scriptId);
+            runs.countDown();
+        }, laterClock)) {
+            scheduler.schedule("fireOnce", fireOnce);
+            scheduler.schedule("skip", skip);
+
+            assertTrue(runs.await(10, TimeUnit.SECONDS));
+            assertTrue(scheduler.getNextFireTime("skip").get() > laterClock.millis());
+        }
+
+        assertEquals("fireOnce", runScriptIds.get(0));
+        assertFalse(runScriptIds.contains("skip"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAmbiguousSchedules() {
+        new ScriptSchedule("0 * * * *", 1000L, 0L, null, null);
+    }
+}
@@ -0,0 +1,218 @@
+package net.xrrocha.scripter.snapshot;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import net.xrrocha.scripter.ExecutionMode;
+import net.xrrocha.scripter.Script;
+import net.xrrocha.scripter.ScriptUsage;
+import net.xrrocha.scripter.cache.CachePolicy;
+import net.xrrocha.scripter.commons.classloader.ParentLastClassLoaderCreator;
+import net.xrrocha.scripter.commons.io.InputStreamFileCreator;
+import net.xrrocha.scripter.commons.io.UrlInputStreamOpener;
+import net.xrrocha.scripter.schedule.ScriptSchedule;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.time.ZoneId;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.xrrocha.scripter.commons.YamlUtils.YAML;
+import static net.xrrocha.scripter.snapshot.ScriptCatalogSnapshot.isDeserializable;
+import static org.junit.Assert.*;
+
+public class ScriptCatalogSnapshotTest {
+
+    private final File file = new File(System.getProperty("java.io.tmpdir"),
+            "catalog-" + System.currentTimeMillis() + ".snapshot");
+
+    @Before
+    public void deleteSnapshotFile() {
+        file.delete();
+        file.deleteOnExit();
+    }
+
+    @Test
+    public void loadsScriptsWithoutYamlParsing() {
+        Script script = newScript("script", "name.toUpperCase()");
+        String yamlString = YAML.dump(script);
+
+        ScriptCatalogSnapshot snapshot = new ScriptCatalogSnapshot(file);
+        assertFalse(snapshot.lookup(yamlString).isPresent());
+        snapshot.append(script, yamlString);
+
+        ScriptCatalogSnapshot reloadedSnapshot = new ScriptCatalogSnapshot(file);
+        assertTrue(reloadedSnapshot.contains(yamlString));
+        Script snapshottedScript = reloadedSnapshot.lookup(yamlString).get();
+        assertEquals(script.getId(), snapshottedScript.getId());
+        assertEquals(script.getLanguage(), snapshottedScript.getLanguage());
+        assertEquals(script.getUsage(), snapshottedScript.getUsage());
+        assertEquals(script.getDescription(), snapshottedScript.getDescription());
+        assertEquals(script.getServices(), snapshottedScript.getServices());
+        assertEquals(script.getGlobalVariables(), snapshottedScript.getGlobalVariables());
+        assertEquals(script.getScript(), snapshottedScript.getScript());
+    }
+
+    @Test
+    public void preservesOptionalAttributes() {
+        Script script = Script.builder()
+                .id("function")
+                .language("javascript")
+                .usage(ScriptUsage.INVOCABLE_FUNCTION)
+                .script("function greet(name) { return 'Hello, ' + name; }")
+                .entryPoint("greet")
+                .parameters(ImmutableList.of("name"))
+                .executionMode(ExecutionMode.VIRTUAL_THREAD)
+                .schedule(ScriptSchedule.cron("0 * * * *"))
+                .cache(new CachePolicy(1000L, 10L, ImmutableList.of("name")))
+                .coalesce(true)
+                .build();
+        String yamlString = YAML.dump(script);
+
+        new ScriptCatalogSnapshot(file).append(script, yamlString);
+
+        Script snapshottedScript = new ScriptCatalogSnapshot(file).lookup(yamlString).get();
+        assertEquals(Optional.of("greet"), snapshottedScript.getEntryPoint());
+        assertEquals(ImmutableList.of("name"), snapshottedScript.getParameters());
+        assertEquals(Optional.of(ExecutionMode.VIRTUAL_THREAD),
+                snapshottedScript.getExecutionMode());
+        assertEquals("cron:0 * * * *@" + ZoneId.systemDefault(),
+                snapshottedScript.getSchedule().get().getTrigger());
+        assertEquals(ImmutableList.of("name"),
+                snapshottedScript.getCache().get().getKeyVariables());
+        assertTrue(snapshottedScript.isCoalesce());
+    }
+
+    @Test
+    public void missesOnChangedYaml() {
+        Script script = newScript("script", "name.toUpperCase()");
+        ScriptCatalogSnapshot snapshot = new ScriptCatalogSnapshot(file);
+        snapshot.append(script, YAML.dump(script));
+
+        assertFalse(snapshot.lookup(YAML.dump(newScript("script", "name.toLowerCase()")))
+                .isPresent());
+    }
+
+    @Test
+    public void appliesReplacementsAndRemovals() {
+        Script script1 = newScript("script", "'version 1'");
+        Script script2 = newScript("script", "'version 2'");
+        Script otherScript = newScript("other", "'other'");
+
+        ScriptCatalogSnapshot snapshot = new ScriptCatalogSnapshot(file);
+        snapshot.append(script1, YAML.dump(script1));
+        snapshot.append(script2, YAML.dump(script2));
+        snapshot.append(otherScript, YAML.dump(otherScript));
+        snapshot.appendRemoval("other");
+
+        ScriptCatalogSnapshot reloadedSnapshot = new ScriptCatalogSnapshot(file);
+        assertEquals(1, reloadedSnapshot.size());
+        assertFalse(reloadedSnapshot.contains(YAML.dump(script1)));
+        assertTrue(reloadedSnapshot.contains(YAML.dump(script2)));
+        assertFalse(reloadedSnapshot.contains(YAML.dump(otherScript)));
+    }
+
+    @Test
+    public void compactsSupersededRecords() {
+        ScriptCatalogSnapshot snapshot = new ScriptCatalogSnapshot(file);
+        for (int i = 0; i < 64; i++) {
+            Script script = newScript("script", "'version " + i + "'");
+            snapshot.append(script, YAML.dump(script));
+        }
+        long uncompactedLength = file.length();
+
+        ScriptCatalogSnapshot reloadedSnapshot = new ScriptCatalogSnapshot(file);
+        assertTrue(file.length() < uncompactedLength);
+        assertEquals(1, reloadedSnapshot.size());
+        assertEquals("'version 63'", reloadedSnapshot.lookup(
+                YAML.dump(newScript("script", "'version 63'"))).get().getScript());
+    }
+
+    @Test
+    public void truncatesIncompleteRecord() throws Exception {
+        Script script1 = newScript("script1", "'script 1'");
+        Script script2 = newScript("script2", "'script 2'");
+
+        ScriptCatalogSnapshot snapshot = new ScriptCatalogSnapshot(file);
+        snapshot.append(script1, YAML.dump(script1));
+        long validLength = file.length();
+        snapshot.append(script2, YAML.dump(script2));
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(file.length() - 3);
+        }
+
+        ScriptCatalogSnapshot reloadedSnapshot = new ScriptCatalogSnapshot(file);
+        assertEquals(validLength, file.length());
+        assertTrue(reloadedSnapshot.contains(YAML.dump(script1)));
+        assertFalse(reloadedSnapshot.contains(YAML.dump(script2)));
+    }
+
+    @Test
+    public void skipsNonSerializableScripts() {
+        Script script = new Script(
+                "script", // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                new ParentLastClassLoaderCreator(
+                        new UrlInputStreamOpener(),
+                        ImmutableSet.of(new InputStreamFileCreator("lib.jar", "file:lib.jar")),
+                        null), // classLoaderCreator
+                null, // services
+                null, // variables
+                "'script'" // script
+        );
+
+        ScriptCatalogSnapshot snapshot = new ScriptCatalogSnapshot(file);
+        snapshot.append(script, YAML.dump(script));
+        assertEquals(0, snapshot.size());
+    }
+
+    @Test
+    public void ignoresEntriesHoldingUnexpectedClasses() {
+        Script script = new Script(
+                "script", // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                null, // description
+                null, // classLoaderCreator
+                null, // services
+                ImmutableMap.of("counter", new AtomicLong(42L)), // variables
+                "counter.get()" // script
+        );
+        String yamlString = YAML.dump(script);
+
+        new ScriptCatalogSnapshot(file).append(script, yamlString);
+
+        ScriptCatalogSnapshot reloadedSnapshot = new ScriptCatalogSnapshot(file);
+        assertTrue(reloadedSnapshot.contains(yamlString));
+        assertFalse(reloadedSnapshot.lookup(yamlString).isPresent());
+    }
+
+    @Test
+    public void allowsOnlyYamlValuesAndScripterClasses() {
+        assertTrue(isDeserializable("java.util.LinkedHashMap"));
+        assertTrue(isDeserializable(ScriptSchedule.class.getName()));
+        assertTrue(isDeserializable("[B"));
+        assertTrue(isDeserializable("[[Ljava.lang.String;"));
+        assertFalse(isDeserializable("java.util.PriorityQueue"));
+        assertFalse(isDeserializable("[Ljava.lang.Runnable;"));
+    }
+
+    private Script newScript(String scriptId, String body) {
+        return new Script(
+                scriptId, // id,
+                "javascript", // language
+                ScriptUsage.INVOCABLE_SCRIPT, // usage
+                "A test script", // description
+                null, // classLoaderCreator
+                ImmutableSet.of("normalizer"), // services
+                ImmutableMap.of("name", "scripter", "count", 42), // variables
+                body // script
+        );
+    }
+}